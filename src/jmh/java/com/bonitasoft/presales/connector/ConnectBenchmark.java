@@ -0,0 +1,59 @@
+package com.bonitasoft.presales.connector;
+
+import com.bonitasoft.presales.gdrive.DriveServiceRegistry;
+import com.bonitasoft.presales.gdrive.TestCredentials;
+import com.google.api.services.drive.Drive;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link AbstractGoogleDriveConnector#connect()}, with the Drive client already cached by
+ * {@link DriveServiceRegistry} and when it has to be built from the credentials. No request is
+ * sent: the access token is only fetched by the first Drive call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectBenchmark {
+
+  private GoogleDriveUpload connector;
+
+  @Setup
+  public void setUp() {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(AbstractGoogleDriveConnector.INPUT_NAME_DRIVE_ID, "driveId");
+    parameters.put(
+        AbstractGoogleDriveConnector.INPUT_NAME_CREDENTIALS_JSON,
+        TestCredentials.serviceAccountJson("benchmark@test-project.iam.gserviceaccount.com"));
+    connector = new GoogleDriveUpload();
+    connector.setInputParameters(parameters);
+  }
+
+  @Benchmark
+  public Drive connectCached() throws ConnectorException {
+    connector.connect();
+    return connector.driveService;
+  }
+
+  @Benchmark
+  public Drive connectCold() throws ConnectorException {
+    DriveServiceRegistry.getInstance().clear();
+    connector.connect();
+    return connector.driveService;
+  }
+}
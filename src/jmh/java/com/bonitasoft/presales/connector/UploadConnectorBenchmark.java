@@ -0,0 +1,115 @@
+package com.bonitasoft.presales.connector;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.bonitasoft.presales.gdrive.FakeDriveServer;
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bonitasoft.engine.api.APIAccessor;
+import org.bonitasoft.engine.api.ProcessAPI;
+import org.bonitasoft.engine.bpm.document.Document;
+import org.bonitasoft.engine.connector.EngineExecutionContext;
+import org.bonitasoft.engine.search.impl.SearchResultImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end execution of {@link GoogleDriveUpload}: folder creation, document resolution and
+ * upload of every attachment, against {@link FakeDriveServer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// every execution uploads the same content, measure uploads rather than server side copies
+@Fork(value = 1, jvmArgsAppend = "-Dgdrive.copyCache.maxSize=0")
+public class UploadConnectorBenchmark {
+
+  private static final long PROCESS_INSTANCE_ID = 1L;
+
+  @Param({"20"})
+  int attachmentCount;
+
+  @Param({"65536"})
+  int attachmentSize;
+
+  @Param({"1", "4"})
+  int maxParallelUploads;
+
+  private FakeDriveServer server;
+  private GoogleDriveUpload connector;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    server = FakeDriveServer.start();
+    // stub only mocks do not record invocations, which would grow for the whole run
+    ProcessAPI processAPI = mock(ProcessAPI.class, withSettings().stubOnly());
+    APIAccessor apiAccessor = mock(APIAccessor.class, withSettings().stubOnly());
+    EngineExecutionContext context = mock(EngineExecutionContext.class, withSettings().stubOnly());
+    when(apiAccessor.getProcessAPI()).thenReturn(processAPI);
+    when(context.getProcessInstanceId()).thenReturn(PROCESS_INSTANCE_ID);
+    byte[] content = new byte[attachmentSize];
+    new Random(42).nextBytes(content);
+    List<String> attachments = new ArrayList<>();
+    List<Document> documents = new ArrayList<>();
+    for (int i = 0; i < attachmentCount; i++) {
+      Document document = mock(Document.class, withSettings().stubOnly());
+      when(document.getName()).thenReturn("document" + i);
+      when(document.getContentFileName()).thenReturn("document" + i + ".bin");
+      when(document.getContentMimeType()).thenReturn("application/octet-stream");
+      when(document.getContentStorageId()).thenReturn("storage" + i);
+      when(document.getIndex()).thenReturn(-1);
+      when(processAPI.getLastDocument(PROCESS_INSTANCE_ID, "document" + i)).thenReturn(document);
+      when(processAPI.getDocumentContent("storage" + i)).thenReturn(content);
+      attachments.add("document" + i);
+      documents.add(document);
+    }
+    when(processAPI.searchDocuments(any()))
+        .thenReturn(new SearchResultImpl<>(documents.size(), documents));
+
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_DRIVE_ID, "driveId");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, attachments);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, "benchmark");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_MAX_PARALLEL_UPLOADS, maxParallelUploads);
+    connector = new GoogleDriveUpload();
+    connector.setInputParameters(parameters);
+    connector.setAPIAccessor(apiAccessor);
+    connector.setExecutionContext(context);
+    connector.validateInputParameters();
+    connector.gDriveUtils = new GDriveUtils();
+    connector.driveService = server.drive(connector.gDriveUtils.getTransportSettings());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public Map<String, Object> execute() throws Exception {
+    return connector.execute();
+  }
+}
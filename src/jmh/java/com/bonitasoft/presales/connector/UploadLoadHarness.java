@@ -0,0 +1,257 @@
+package com.bonitasoft.presales.connector;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.bonitasoft.presales.gdrive.DriveMetrics;
+import com.bonitasoft.presales.gdrive.FakeDriveServer;
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.bonitasoft.engine.api.APIAccessor;
+import org.bonitasoft.engine.api.ProcessAPI;
+import org.bonitasoft.engine.bpm.document.Document;
+import org.bonitasoft.engine.connector.EngineExecutionContext;
+import org.bonitasoft.engine.search.impl.SearchResultImpl;
+
+/**
+ * Load and fault injection harness: runs many {@link GoogleDriveUpload} executions concurrently, as
+ * a burst of cases would, against a {@link FakeDriveServer} injecting latency, 429s, 503s and
+ * dropped connections.
+ *
+ * <p>Reports throughput, latency percentiles of the executions, failure rate by cause, heap high
+ * water mark and the retries counted by {@link DriveMetrics}. Arguments are {@code key=value}
+ * pairs, see {@link #DEFAULTS}; {@code gdrive.*} arguments are set as system properties, e.g.
+ * {@code gdrive.retry.initialDelayMillis=50}.
+ */
+public class UploadLoadHarness {
+
+  private static final Map<String, String> DEFAULTS = new TreeMap<>();
+
+  static {
+    DEFAULTS.put("cases", "200");
+    DEFAULTS.put("workers", "32");
+    DEFAULTS.put("attachments", "5");
+    DEFAULTS.put("attachmentSize", "65536");
+    DEFAULTS.put("maxParallelUploads", "2");
+    DEFAULTS.put("latencyMillis", "20");
+    DEFAULTS.put("latencyJitterMillis", "30");
+    DEFAULTS.put("rateLimitRate", "0.02");
+    DEFAULTS.put("serverErrorRate", "0.01");
+    DEFAULTS.put("dropRate", "0.005");
+  }
+
+  private static final long PROCESS_INSTANCE_ID = 1L;
+
+  private final Map<String, String> settings;
+  private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+  private ProcessAPI processAPI;
+  private List<String> attachments;
+
+  UploadLoadHarness(Map<String, String> settings) {
+    this.settings = settings;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> settings = new TreeMap<>(DEFAULTS);
+    // every case uploads the same content, measure uploads rather than server side copies
+    System.setProperty("gdrive.copyCache.maxSize", "0");
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator < 0) {
+        throw new IllegalArgumentException("expected key=value, got " + arg);
+      }
+      String key = arg.substring(0, separator);
+      String value = arg.substring(separator + 1);
+      if (key.startsWith("gdrive.")) {
+        System.setProperty(key, value);
+      } else if (DEFAULTS.containsKey(key)) {
+        settings.put(key, value);
+      } else {
+        throw new IllegalArgumentException(
+            "unknown setting " + key + ", expected " + DEFAULTS.keySet());
+      }
+    }
+    // connectors log each uploaded file
+    java.util.logging.Logger.getLogger("").setLevel(Level.WARNING);
+    new UploadLoadHarness(settings).run();
+    // the pools of the connectors are not daemon threads
+    System.exit(0);
+  }
+
+  private int intSetting(String key) {
+    return Integer.parseInt(settings.get(key));
+  }
+
+  private double doubleSetting(String key) {
+    return Double.parseDouble(settings.get(key));
+  }
+
+  void run() throws Exception {
+    mockDocuments(intSetting("attachments"), intSetting("attachmentSize"));
+    int cases = intSetting("cases");
+    FakeDriveServer.Faults faults =
+        new FakeDriveServer.Faults()
+            .latency(
+                Long.parseLong(settings.get("latencyMillis")),
+                Long.parseLong(settings.get("latencyJitterMillis")))
+            .rateLimitRate(doubleSetting("rateLimitRate"))
+            .serverErrorRate(doubleSetting("serverErrorRate"))
+            .dropRate(doubleSetting("dropRate"));
+    System.out.println("settings: " + settings);
+    System.out.println("faults: " + faults);
+
+    try (FakeDriveServer server = FakeDriveServer.start()) {
+      GDriveUtils gDriveUtils = new GDriveUtils();
+      server.setFaults(faults);
+      List<MemoryPoolMXBean> heapPools = heapPools();
+      heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+      long retriesBefore = DriveMetrics.getInstance().getRetryCount();
+      long rateLimitedBefore = DriveMetrics.getInstance().getRateLimitedCount();
+      long budgetWaitsBefore = DriveMetrics.getInstance().getUploadMemoryBudgetWaitCount();
+
+      ExecutorService workers = Executors.newFixedThreadPool(intSetting("workers"));
+      long[] latencies = new long[cases];
+      long start = System.nanoTime();
+      try {
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < cases; i++) {
+          int caseIndex = i;
+          results.add(
+              workers.submit(
+                  () -> latencies[caseIndex] = executeCase(caseIndex, gDriveUtils, server)));
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+      } finally {
+        workers.shutdownNow();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      long failed = failures.values().stream().mapToLong(AtomicLong::get).sum();
+      Arrays.sort(latencies);
+      System.out.printf(
+          "cases: %d in %.1f s, %.1f cases/s, %.1f MB/s uploaded%n",
+          cases, seconds, cases / seconds, server.getBytesReceived() / seconds / 1024 / 1024);
+      System.out.printf(
+          "latency ms: p50=%d p95=%d p99=%d max=%d%n",
+          percentile(latencies, 0.50),
+          percentile(latencies, 0.95),
+          percentile(latencies, 0.99),
+          TimeUnit.NANOSECONDS.toMillis(latencies[cases - 1]));
+      System.out.printf("failures: %d (%.2f%%) %s%n", failed, failed * 100d / cases, failures);
+      System.out.printf(
+          "requests: %d, injected 429=%d 503=%d dropped=%d%n",
+          server.getRequestCount(),
+          server.getRateLimitedCount(),
+          server.getServerErrorCount(),
+          server.getDroppedCount());
+      System.out.printf(
+          "client: retries=%d rate limited=%d memory budget waits=%d%n",
+          DriveMetrics.getInstance().getRetryCount() - retriesBefore,
+          DriveMetrics.getInstance().getRateLimitedCount() - rateLimitedBefore,
+          DriveMetrics.getInstance().getUploadMemoryBudgetWaitCount() - budgetWaitsBefore);
+      System.out.printf(
+          "heap high water mark: %.1f MB (max %.1f MB)%n",
+          heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() / 1024d / 1024,
+          Runtime.getRuntime().maxMemory() / 1024d / 1024);
+    }
+  }
+
+  /** Runs one connector execution and returns its duration in nanoseconds. */
+  private long executeCase(int caseIndex, GDriveUtils gDriveUtils, FakeDriveServer server) {
+    long start = System.nanoTime();
+    try {
+      GoogleDriveUpload connector = newConnector(caseIndex);
+      connector.gDriveUtils = gDriveUtils;
+      connector.driveService = server.connectorDrive(gDriveUtils.getTransportSettings());
+      connector.execute();
+    } catch (Exception e) {
+      Throwable cause = e;
+      while (cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      failures
+          .computeIfAbsent(cause.getClass().getSimpleName(), k -> new AtomicLong())
+          .incrementAndGet();
+    }
+    return System.nanoTime() - start;
+  }
+
+  private GoogleDriveUpload newConnector(int caseIndex) throws Exception {
+    APIAccessor apiAccessor = mock(APIAccessor.class, withSettings().stubOnly());
+    EngineExecutionContext context = mock(EngineExecutionContext.class, withSettings().stubOnly());
+    when(apiAccessor.getProcessAPI()).thenReturn(processAPI);
+    when(context.getProcessInstanceId()).thenReturn(PROCESS_INSTANCE_ID);
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_DRIVE_ID, "driveId");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, attachments);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, "case" + caseIndex);
+    parameters.put(
+        GoogleDriveUpload.INPUT_NAME_MAX_PARALLEL_UPLOADS, intSetting("maxParallelUploads"));
+    GoogleDriveUpload connector = new GoogleDriveUpload();
+    connector.setInputParameters(parameters);
+    connector.setAPIAccessor(apiAccessor);
+    connector.setExecutionContext(context);
+    connector.validateInputParameters();
+    return connector;
+  }
+
+  private void mockDocuments(int count, int size) throws Exception {
+    // stub only mocks do not record invocations, which would grow for the whole run
+    processAPI = mock(ProcessAPI.class, withSettings().stubOnly());
+    byte[] content = new byte[size];
+    new Random(42).nextBytes(content);
+    attachments = new ArrayList<>();
+    List<Document> documents = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Document document = mock(Document.class, withSettings().stubOnly());
+      when(document.getName()).thenReturn("document" + i);
+      when(document.getContentFileName()).thenReturn("document" + i + ".bin");
+      when(document.getContentMimeType()).thenReturn("application/octet-stream");
+      when(document.getContentStorageId()).thenReturn("storage" + i);
+      when(document.getIndex()).thenReturn(-1);
+      when(processAPI.getLastDocument(PROCESS_INSTANCE_ID, "document" + i)).thenReturn(document);
+      when(processAPI.getDocumentContent("storage" + i)).thenReturn(content);
+      attachments.add("document" + i);
+      documents.add(document);
+    }
+    when(processAPI.searchDocuments(any()))
+        .thenReturn(new SearchResultImpl<>(documents.size(), documents));
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    List<MemoryPoolMXBean> pools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pools.add(pool);
+      }
+    }
+    return pools;
+  }
+
+  private static long percentile(long[] sorted, double quantile) {
+    int index = (int) Math.ceil(quantile * sorted.length) - 1;
+    return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+  }
+}
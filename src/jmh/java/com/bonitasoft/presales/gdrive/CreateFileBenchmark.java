@@ -0,0 +1,68 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link GDriveUtils#createFile} against {@link FakeDriveServer}. Sizes below the
+ * resumable threshold go through a multipart upload, bigger ones through a chunked resumable
+ * upload. Run with {@code -prof gc} to get the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateFileBenchmark {
+
+  @Param({"1024", "262144", "8388608"})
+  int fileSize;
+
+  private FakeDriveServer server;
+  private Drive drive;
+  private GDriveUtils gDriveUtils;
+  private byte[] content;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, GeneralSecurityException {
+    server = FakeDriveServer.start();
+    gDriveUtils = new GDriveUtils();
+    drive = server.drive(gDriveUtils.getTransportSettings());
+    content = new byte[fileSize];
+    new Random(42).nextBytes(content);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public File createFile() throws IOException {
+    return gDriveUtils.createFile(
+        drive,
+        "driveId",
+        "folderId",
+        "benchmark.bin",
+        new ByteArrayContent("application/octet-stream", content));
+  }
+}
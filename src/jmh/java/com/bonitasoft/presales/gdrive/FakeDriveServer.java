@@ -0,0 +1,286 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process HTTP endpoint answering the subset of the Drive API used by the connectors: file and
+ * folder creation (multipart and resumable uploads), listing and deletion. Request bodies are read
+ * and discarded, so that the client side costs are measured without network access.
+ *
+ * <p>{@link Faults} make the server slow or unreliable: extra latency, 429 rate limit errors, 503
+ * server errors and connections closed without response.
+ */
+public class FakeDriveServer implements AutoCloseable {
+
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicLong ids = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rateLimited = new AtomicLong();
+  private final AtomicLong serverErrors = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile Faults faults = new Faults();
+
+  /** Faults injected in responses, each rate being the probability applied to every request. */
+  public static class Faults {
+    long latencyMillis;
+    long latencyJitterMillis;
+    double rateLimitRate;
+    double serverErrorRate;
+    double dropRate;
+
+    /** Delay added to each response, plus a uniformly distributed jitter. */
+    public Faults latency(long latencyMillis, long latencyJitterMillis) {
+      this.latencyMillis = latencyMillis;
+      this.latencyJitterMillis = latencyJitterMillis;
+      return this;
+    }
+
+    public Faults rateLimitRate(double rateLimitRate) {
+      this.rateLimitRate = rateLimitRate;
+      return this;
+    }
+
+    public Faults serverErrorRate(double serverErrorRate) {
+      this.serverErrorRate = serverErrorRate;
+      return this;
+    }
+
+    public Faults dropRate(double dropRate) {
+      this.dropRate = dropRate;
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "latency=%d+-%dms, 429=%.1f%%, 503=%.1f%%, dropped=%.1f%%",
+          latencyMillis,
+          latencyJitterMillis,
+          rateLimitRate * 100,
+          serverErrorRate * 100,
+          dropRate * 100);
+    }
+  }
+
+  private FakeDriveServer(HttpServer server, ExecutorService executor) {
+    this.server = server;
+    this.executor = executor;
+  }
+
+  public static FakeDriveServer start() throws IOException {
+    // without it, small responses wait for the delayed ACK of the client
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    FakeDriveServer fake = new FakeDriveServer(server, executor);
+    server.createContext("/", fake::handle);
+    server.setExecutor(executor);
+    server.start();
+    return fake;
+  }
+
+  public String getRootUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  public void setFaults(Faults faults) {
+    this.faults = faults;
+  }
+
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public long getRateLimitedCount() {
+    return rateLimited.get();
+  }
+
+  public long getServerErrorCount() {
+    return serverErrors.get();
+  }
+
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Client of this server set up like the connectors' one: shared rate limiter and retries of
+   * resumable upload chunks, without credentials.
+   */
+  public Drive connectorDrive(DriveTransportSettings settings)
+      throws GeneralSecurityException, IOException {
+    return new Drive.Builder(
+            settings.getTransport(),
+            GsonFactory.getDefaultInstance(),
+            settings.withTimeouts(
+                RateLimiter.getShared().throttling(ResumableUploads.withRetries(request -> {}))))
+        .setRootUrl(getRootUrl())
+        .setApplicationName("benchmark")
+        .build();
+  }
+
+  /** Client of this server using the transport of the given settings, without credentials. */
+  public Drive drive(DriveTransportSettings settings) throws GeneralSecurityException, IOException {
+    return new Drive.Builder(
+            settings.getTransport(),
+            GsonFactory.getDefaultInstance(),
+            settings.withTimeouts(request -> {}))
+        .setRootUrl(getRootUrl())
+        .setApplicationName("benchmark")
+        .build();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      bytesReceived.addAndGet(drain(exchange.getRequestBody()));
+      requests.incrementAndGet();
+      if (injectFault(exchange)) {
+        return;
+      }
+      String method = exchange.getRequestMethod();
+      String query = exchange.getRequestURI().getRawQuery();
+      query = query == null ? "" : query;
+      if (method.equals("DELETE")) {
+        exchange.sendResponseHeaders(204, -1);
+      } else if (method.equals("GET")) {
+        respond(exchange, 200, "{\"files\":[]}");
+      } else if (query.contains("uploadType=resumable") && !query.contains("upload_id=")) {
+        exchange
+            .getResponseHeaders()
+            .add(
+                "Location",
+                getRootUrl()
+                    + "upload/drive/v3/files?uploadType=resumable&upload_id="
+                    + ids.incrementAndGet());
+        respond(exchange, 200, "");
+      } else if (query.contains("upload_id=")) {
+        handleChunk(exchange);
+      } else {
+        respond(exchange, 200, createdFile());
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Applies the faults to the request, returns whether it has been answered. */
+  private boolean injectFault(HttpExchange exchange) throws IOException {
+    Faults current = faults;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay =
+        current.latencyMillis
+            + (current.latencyJitterMillis > 0
+                ? random.nextLong(current.latencyJitterMillis + 1)
+                : 0);
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return true;
+      }
+    }
+    double draw = random.nextDouble();
+    if (draw < current.dropRate) {
+      dropped.incrementAndGet();
+      // closing without response resets the connection on the client side
+      return true;
+    }
+    draw -= current.dropRate;
+    if (draw < current.rateLimitRate) {
+      rateLimited.incrementAndGet();
+      respond(
+          exchange,
+          429,
+          "{\"error\":{\"code\":429,\"message\":\"Rate Limit Exceeded\","
+              + "\"errors\":[{\"reason\":\"rateLimitExceeded\"}]}}");
+      return true;
+    }
+    draw -= current.rateLimitRate;
+    if (draw < current.serverErrorRate) {
+      serverErrors.incrementAndGet();
+      respond(exchange, 503, "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}");
+      return true;
+    }
+    return false;
+  }
+
+  /** Acknowledges a chunk of a resumable upload, the session completes with its last byte. */
+  private void handleChunk(HttpExchange exchange) throws IOException {
+    String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+    Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+    if (matcher == null || !matcher.matches()) {
+      // empty last chunk "bytes */total"
+      respond(exchange, 200, createdFile());
+      return;
+    }
+    long end = Long.parseLong(matcher.group(2));
+    String total = matcher.group(3);
+    if (!total.equals("*") && end + 1 == Long.parseLong(total)) {
+      respond(exchange, 200, createdFile());
+    } else {
+      exchange.getResponseHeaders().add("Range", "bytes=0-" + end);
+      exchange.sendResponseHeaders(308, -1);
+    }
+  }
+
+  private String createdFile() {
+    long id = ids.incrementAndGet();
+    return "{\"id\":\"file-"
+        + id
+        + "\",\"webViewLink\":\"https://drive.google.com/file/d/file-"
+        + id
+        + "/view\"}";
+  }
+
+  private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private static long drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    for (int read; (read = in.read(buffer)) != -1; ) {
+      total += read;
+    }
+    return total;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
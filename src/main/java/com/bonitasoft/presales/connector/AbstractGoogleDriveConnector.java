@@ -0,0 +1,230 @@
+package com.bonitasoft.presales.connector;
+
+import com.bonitasoft.presales.gdrive.DriveMetrics;
+import com.bonitasoft.presales.gdrive.DriveServiceRegistry;
+import com.bonitasoft.presales.gdrive.DriveTransportSettings;
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.bonitasoft.presales.gdrive.ServiceAccountPool;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.util.GenericData;
+import com.google.api.services.drive.Drive;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bonitasoft.engine.connector.AbstractConnector;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+
+/** Inputs, validation helpers and connection shared by the Google Drive connectors. */
+public abstract class AbstractGoogleDriveConnector extends AbstractConnector {
+
+  static final String INPUT_NAME_DRIVE_ID = "driveID";
+  static final String INPUT_NAME_CREDENTIALS_JSON = "credentialsJSON";
+  static final String INPUT_NAME_MAX_CONNECTIONS = "maxConnections";
+  static final String INPUT_NAME_CONNECT_TIMEOUT = "connectTimeout";
+  static final String INPUT_NAME_READ_TIMEOUT = "readTimeout";
+  static final String INPUT_NAME_ACCOUNT_SELECTION = "accountSelection";
+
+  GDriveUtils gDriveUtils;
+  Drive driveService;
+  /** Account leased for the execution when the credentials are a service account pool. */
+  ServiceAccountPool.Lease accountLease;
+  /** Client leased for the execution otherwise, so that its transport stays open. */
+  DriveServiceRegistry.Lease serviceLease;
+
+  protected final java.lang.String getDriveID() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_DRIVE_ID);
+  }
+
+  protected final java.lang.String getCredentialsJSON() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_CREDENTIALS_JSON);
+  }
+
+  protected final java.lang.Integer getMaxConnections() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_MAX_CONNECTIONS);
+  }
+
+  protected final java.lang.Integer getConnectTimeout() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_CONNECT_TIMEOUT);
+  }
+
+  protected final java.lang.Integer getReadTimeout() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_READ_TIMEOUT);
+  }
+
+  protected final java.lang.String getAccountSelection() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_ACCOUNT_SELECTION);
+  }
+
+  /** Validates the drive, credentials and transport inputs common to every connector. */
+  protected void checkConnectionInputs() throws ConnectorValidationException {
+    checkMandatoryStringInput(INPUT_NAME_DRIVE_ID);
+    checkMandatoryStringInput(INPUT_NAME_CREDENTIALS_JSON);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_MAX_CONNECTIONS);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_CONNECT_TIMEOUT);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_READ_TIMEOUT);
+    checkOptionalAccountSelectionInput();
+  }
+
+  private void checkOptionalAccountSelectionInput() throws ConnectorValidationException {
+    try {
+      String value = getAccountSelection();
+      if (value != null && !value.isEmpty()) {
+        ServiceAccountPool.Selection.valueOf(value);
+      }
+    } catch (ClassCastException | IllegalArgumentException e) {
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "'%s' parameter must be one of %s",
+              INPUT_NAME_ACCOUNT_SELECTION,
+              Arrays.toString(ServiceAccountPool.Selection.values())));
+    }
+  }
+
+  protected void checkMandatoryStringInput(String inputName) throws ConnectorValidationException {
+    try {
+      String value = (String) getInputParameter(inputName);
+      if (value == null || value.isEmpty()) {
+        throw new ConnectorValidationException(
+            this, String.format("Mandatory parameter '%s' is missing.", inputName));
+      }
+    } catch (ClassCastException e) {
+      throw new ConnectorValidationException(
+          this, String.format("'%s' parameter must be a String", inputName));
+    }
+  }
+
+  protected void checkMandatoryListInput(String inputName) throws ConnectorValidationException {
+    Object value = getInputParameter(inputName);
+    if (value == null) {
+      throw new ConnectorValidationException(
+          this, String.format("Mandatory parameter '%s' is missing.", inputName));
+    }
+    if (!(value instanceof List)) {
+      throw new ConnectorValidationException(
+          this, String.format("Mandatory parameter '%s' is not a list.", inputName));
+    }
+  }
+
+  protected void checkMandatoryBooleanInput(String inputName) throws ConnectorValidationException {
+    try {
+      Boolean value = (Boolean) getInputParameter(inputName);
+    } catch (ClassCastException cce) {
+      throw new ConnectorValidationException(
+          this, String.format("Mandatory parameter '%s' is missing.", inputName));
+    }
+  }
+
+  protected void checkOptionalPositiveIntegerInput(String inputName)
+      throws ConnectorValidationException {
+    try {
+      Integer value = (Integer) getInputParameter(inputName);
+      if (value != null && value <= 0) {
+        throw new ConnectorValidationException(
+            this, String.format("'%s' parameter must be a positive integer", inputName));
+      }
+    } catch (ClassCastException cce) {
+      throw new ConnectorValidationException(
+          this, String.format("'%s' parameter must be an Integer", inputName));
+    }
+  }
+
+  /**
+   * Runs the connector logic of {@link #executeDriveOperations()}, recording its duration in {@link
+   * DriveMetrics}.
+   */
+  @Override
+  protected final void executeBusinessLogic() throws ConnectorException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      executeDriveOperations();
+      success = true;
+    } finally {
+      DriveMetrics.getInstance()
+          .recordConnectorExecution(getClass().getSimpleName(), System.nanoTime() - start, success);
+    }
+  }
+
+  /**
+   * Core method: execute all the business logic of the connector and set its outputs. If outputs
+   * are not set, connector fails.
+   */
+  protected abstract void executeDriveOperations() throws ConnectorException;
+
+  /** [Optional] Open a connection to remote server */
+  @Override
+  public void connect() throws ConnectorException {
+    try {
+      DriveTransportSettings transportSettings =
+          DriveTransportSettings.fromSystemProperties()
+              .override(getMaxConnections(), getConnectTimeout(), getReadTimeout());
+      gDriveUtils = new GDriveUtils(transportSettings);
+      if (ServiceAccountPool.isPool(getCredentialsJSON())) {
+        accountLease =
+            ServiceAccountPool.getPool(
+                    getCredentialsJSON(), GDriveUtils.getAllScopes(), transportSettings)
+                .acquire(accountSelection());
+        driveService = accountLease.getDrive();
+      } else {
+        serviceLease =
+            DriveServiceRegistry.getInstance()
+                .acquire(getCredentialsJSON(), GDriveUtils.getAllScopes(), transportSettings);
+        driveService = serviceLease.getDrive();
+      }
+    } catch (IOException | GeneralSecurityException e) {
+      throw new ConnectorException(e);
+    }
+  }
+
+  private ServiceAccountPool.Selection accountSelection() {
+    String value = getAccountSelection();
+    return value == null || value.isEmpty()
+        ? ServiceAccountPool.Selection.fromSystemProperties()
+        : ServiceAccountPool.Selection.valueOf(value);
+  }
+
+  /** [Optional] Gives back the client or the service account leased from the pool */
+  @Override
+  public void disconnect() throws ConnectorException {
+    if (accountLease != null) {
+      accountLease.close();
+      accountLease = null;
+    }
+    if (serviceLease != null) {
+      serviceLease.close();
+      serviceLease = null;
+    }
+  }
+
+  /** Plain map copy of the Drive model, so that the output can be stored by the engine. */
+  protected static Map<String, Object> toMap(GenericData data) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> entry : data.entrySet()) {
+      map.put(entry.getKey(), toPlainValue(entry.getValue()));
+    }
+    return map;
+  }
+
+  private static Object toPlainValue(Object value) {
+    if (value instanceof GenericData) {
+      return toMap((GenericData) value);
+    }
+    if (value instanceof List) {
+      List<Object> list = new ArrayList<>();
+      for (Object item : (List<?>) value) {
+        list.add(toPlainValue(item));
+      }
+      return list;
+    }
+    if (value instanceof DateTime) {
+      return value.toString();
+    }
+    return value;
+  }
+}
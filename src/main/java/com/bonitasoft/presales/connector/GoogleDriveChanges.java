@@ -0,0 +1,104 @@
+package com.bonitasoft.presales.connector;
+
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+
+/**
+ * Returns the files of a shared drive changed since a page token returned by a previous execution,
+ * along with the token to use next time. Without token, only the current token is returned so that
+ * the following execution reports the changes from now on.
+ */
+public class GoogleDriveChanges extends AbstractGoogleDriveConnector {
+
+  private static final Logger LOGGER = Logger.getLogger(GoogleDriveChanges.class.getName());
+
+  static final String INPUT_NAME_PAGE_TOKEN = "pageToken";
+  static final String INPUT_NAME_FIELDS = "fields";
+
+  static final String OUTPUT_CHANGED_FILES = "changedFiles";
+  static final String OUTPUT_REMOVED_FILE_IDS = "removedFileIDs";
+  static final String OUTPUT_NEW_PAGE_TOKEN = "newPageToken";
+
+  static final String DEFAULT_FIELDS = "id,name,mimeType,parents,md5Checksum,modifiedTime,trashed";
+
+  private static final String FILE_CHANGE_TYPE = "file";
+
+  protected final java.lang.String getPageToken() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_PAGE_TOKEN);
+  }
+
+  protected final java.lang.String getFields() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_FIELDS);
+  }
+
+  protected final void setChangedFiles(List<Map<String, Object>> changedFiles) {
+    setOutputParameter(OUTPUT_CHANGED_FILES, changedFiles);
+  }
+
+  protected final void setRemovedFileIDs(List<String> removedFileIDs) {
+    setOutputParameter(OUTPUT_REMOVED_FILE_IDS, removedFileIDs);
+  }
+
+  protected final void setNewPageToken(String newPageToken) {
+    setOutputParameter(OUTPUT_NEW_PAGE_TOKEN, newPageToken);
+  }
+
+  @Override
+  public void validateInputParameters() throws ConnectorValidationException {
+    checkConnectionInputs();
+  }
+
+  @Override
+  protected void executeDriveOperations() throws ConnectorException {
+    String fields =
+        getFields() == null || getFields().trim().isEmpty() ? DEFAULT_FIELDS : getFields();
+    try {
+      if (getPageToken() == null || getPageToken().trim().isEmpty()) {
+        String startPageToken = gDriveUtils.getStartPageToken(driveService, getDriveID());
+        LOGGER.info(String.format("No page token, starting from %s", startPageToken));
+        setChangedFiles(new ArrayList<>());
+        setRemovedFileIDs(new ArrayList<>());
+        setNewPageToken(startPageToken);
+        return;
+      }
+      ChangeList changeList =
+          gDriveUtils.listChanges(driveService, getDriveID(), getPageToken().trim(), fields);
+      // a file changed several times is reported once, with its latest state
+      Map<String, Change> latestChanges = new LinkedHashMap<>();
+      for (Change change : changeList.getChanges()) {
+        if (change.getChangeType() == null || FILE_CHANGE_TYPE.equals(change.getChangeType())) {
+          latestChanges.remove(change.getFileId());
+          latestChanges.put(change.getFileId(), change);
+        }
+      }
+      List<Map<String, Object>> changedFiles = new ArrayList<>();
+      List<String> removedFileIDs = new ArrayList<>();
+      for (Change change : latestChanges.values()) {
+        if (Boolean.TRUE.equals(change.getRemoved())
+            || change.getFile() == null
+            || Boolean.TRUE.equals(change.getFile().getTrashed())) {
+          removedFileIDs.add(change.getFileId());
+        } else {
+          changedFiles.add(toMap(change.getFile()));
+        }
+      }
+      LOGGER.info(
+          String.format(
+              "%d file(s) changed, %d removed since token %s",
+              changedFiles.size(), removedFileIDs.size(), getPageToken()));
+      setChangedFiles(changedFiles);
+      setRemovedFileIDs(removedFileIDs);
+      setNewPageToken(changeList.getNewStartPageToken());
+    } catch (IOException e) {
+      throw new ConnectorException(e);
+    }
+  }
+}
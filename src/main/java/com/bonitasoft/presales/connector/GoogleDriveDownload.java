@@ -0,0 +1,123 @@
+package com.bonitasoft.presales.connector;
+
+import com.google.api.services.drive.model.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.bonitasoft.engine.api.ProcessAPI;
+import org.bonitasoft.engine.bpm.document.DocumentValue;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+import org.bonitasoft.engine.exception.BonitaException;
+
+/** Downloads Drive files and attaches them to the process instance as documents. */
+public class GoogleDriveDownload extends AbstractGoogleDriveConnector {
+
+  private static final Logger LOGGER = Logger.getLogger(GoogleDriveDownload.class.getName());
+
+  static final String INPUT_NAME_FILE_IDS = "fileIDs";
+  static final String INPUT_NAME_DOCUMENT_NAME = "documentName";
+  static final String INPUT_NAME_DOCUMENT_LIST = "documentList";
+  static final String INPUT_NAME_MAX_PARALLEL_DOWNLOADS = "maxParallelDownloads";
+
+  static final String OUTPUT_DOWNLOADED_FILE_NAMES = "downloadedFileNames";
+
+  static final int DEFAULT_MAX_PARALLEL_DOWNLOADS = 4;
+
+  private static final String FILE_FIELDS = "id, name, mimeType, size";
+  private static final String GOOGLE_APPS_MIME_TYPE_PREFIX = "application/vnd.google-apps.";
+
+  protected final List getFileIDs() {
+    return (List) getInputParameter(INPUT_NAME_FILE_IDS);
+  }
+
+  protected final java.lang.String getDocumentName() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_DOCUMENT_NAME);
+  }
+
+  protected final java.lang.Boolean getDocumentList() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_DOCUMENT_LIST);
+  }
+
+  protected final java.lang.Integer getMaxParallelDownloads() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_MAX_PARALLEL_DOWNLOADS);
+  }
+
+  protected final void setDownloadedFileNames(List<String> downloadedFileNames) {
+    setOutputParameter(OUTPUT_DOWNLOADED_FILE_NAMES, downloadedFileNames);
+  }
+
+  @Override
+  public void validateInputParameters() throws ConnectorValidationException {
+    checkConnectionInputs();
+    checkMandatoryListInput(INPUT_NAME_FILE_IDS);
+    checkMandatoryStringInput(INPUT_NAME_DOCUMENT_NAME);
+    checkMandatoryBooleanInput(INPUT_NAME_DOCUMENT_LIST);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_MAX_PARALLEL_DOWNLOADS);
+    if (!Boolean.TRUE.equals(getDocumentList()) && getFileIDs().size() != 1) {
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "'%s' must hold exactly one file id unless '%s' is checked",
+              INPUT_NAME_FILE_IDS, INPUT_NAME_DOCUMENT_LIST));
+    }
+  }
+
+  /**
+   * Files are downloaded one after the other so that a single file content is held in memory at a
+   * time, big files being split in concurrent range requests.
+   */
+  @Override
+  protected void executeDriveOperations() throws ConnectorException {
+    long processInstanceId = getExecutionContext().getProcessInstanceId();
+    ProcessAPI processAPI = getAPIAccessor().getProcessAPI();
+    int parallelism =
+        getMaxParallelDownloads() == null
+            ? DEFAULT_MAX_PARALLEL_DOWNLOADS
+            : getMaxParallelDownloads();
+    List<String> downloadedFileNames = new ArrayList<>();
+    try {
+      for (Object fileId : getFileIDs()) {
+        File file = gDriveUtils.getFile(driveService, String.valueOf(fileId), FILE_FIELDS);
+        // folders and Google Docs, Sheets... have no size
+        if (file.getSize() == null
+            || (file.getMimeType() != null
+                && file.getMimeType().startsWith(GOOGLE_APPS_MIME_TYPE_PREFIX))) {
+          throw new ConnectorException(
+              String.format(
+                  "File %s (%s) has no binary content to download",
+                  file.getName(), file.getMimeType()));
+        }
+        LOGGER.info(
+            String.format("Downloading file %s (%d bytes)", file.getName(), file.getSize()));
+        byte[] content =
+            gDriveUtils.downloadFileContent(
+                driveService, file.getId(), file.getSize(), parallelism);
+        attach(processAPI, processInstanceId, file, content);
+        downloadedFileNames.add(file.getName());
+      }
+    } catch (IOException | BonitaException e) {
+      throw new ConnectorException(e);
+    }
+    setDownloadedFileNames(downloadedFileNames);
+    LOGGER.info(
+        String.format(
+            "%d file(s) attached to document %s", downloadedFileNames.size(), getDocumentName()));
+  }
+
+  private void attach(ProcessAPI processAPI, long processInstanceId, File file, byte[] content)
+      throws BonitaException {
+    if (Boolean.TRUE.equals(getDocumentList())) {
+      // appended at the end of the list
+      processAPI.addDocument(
+          processInstanceId,
+          getDocumentName(),
+          null,
+          new DocumentValue(content, file.getMimeType(), file.getName()));
+    } else {
+      processAPI.attachDocument(
+          processInstanceId, getDocumentName(), file.getName(), file.getMimeType(), content);
+    }
+  }
+}
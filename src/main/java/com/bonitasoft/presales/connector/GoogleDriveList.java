@@ -0,0 +1,77 @@
+package com.bonitasoft.presales.connector;
+
+import com.bonitasoft.presales.gdrive.FolderContentIterator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+
+/** Lists the content of a shared drive folder, all pages included. */
+public class GoogleDriveList extends AbstractGoogleDriveConnector {
+
+  private static final Logger LOGGER = Logger.getLogger(GoogleDriveList.class.getName());
+
+  static final String INPUT_NAME_FOLDER_ID = "folderID";
+  static final String INPUT_NAME_PAGE_SIZE = "pageSize";
+  static final String INPUT_NAME_FIELDS = "fields";
+  static final String INPUT_NAME_MAX_RESULTS = "maxResults";
+
+  static final String OUTPUT_FILES = "files";
+
+  static final int DEFAULT_PAGE_SIZE = 100;
+  static final String DEFAULT_FIELDS = "id,name,mimeType,webViewLink";
+
+  protected final java.lang.String getFolderID() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_FOLDER_ID);
+  }
+
+  protected final java.lang.Integer getPageSize() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_PAGE_SIZE);
+  }
+
+  protected final java.lang.String getFields() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_FIELDS);
+  }
+
+  protected final java.lang.Integer getMaxResults() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_MAX_RESULTS);
+  }
+
+  protected final void setFiles(List<Map<String, Object>> files) {
+    setOutputParameter(OUTPUT_FILES, files);
+  }
+
+  @Override
+  public void validateInputParameters() throws ConnectorValidationException {
+    checkConnectionInputs();
+    checkOptionalPositiveIntegerInput(INPUT_NAME_PAGE_SIZE);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_MAX_RESULTS);
+  }
+
+  @Override
+  protected void executeDriveOperations() throws ConnectorException {
+    int pageSize = getPageSize() == null ? DEFAULT_PAGE_SIZE : getPageSize();
+    String fields =
+        getFields() == null || getFields().trim().isEmpty() ? DEFAULT_FIELDS : getFields();
+    int maxResults = getMaxResults() == null ? Integer.MAX_VALUE : getMaxResults();
+    LOGGER.info(String.format("Listing folder %s of drive %s", getFolderID(), getDriveID()));
+    List<Map<String, Object>> files = new ArrayList<>();
+    try (FolderContentIterator iterator =
+        gDriveUtils.iterateFolderContent(
+            driveService, getDriveID(), getFolderID(), pageSize, fields)) {
+      while (files.size() < maxResults && iterator.hasNext()) {
+        files.add(toMap(iterator.next()));
+      }
+    } catch (IOException e) {
+      throw new ConnectorException(e);
+    } catch (UncheckedIOException e) {
+      throw new ConnectorException(e.getCause());
+    }
+    LOGGER.info(String.format("%d files listed", files.size()));
+    setFiles(files);
+  }
+}
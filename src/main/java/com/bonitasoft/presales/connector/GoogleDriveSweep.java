@@ -0,0 +1,257 @@
+package com.bonitasoft.presales.connector;
+
+import com.bonitasoft.presales.gdrive.BatchResult;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+
+/**
+ * Deletes the folders of a shared drive past their retention period: the folders tagged with the
+ * given app properties, such as the {@code bonitaFolder} tag of the upload connector, optionally
+ * only the ones created more than {@code retentionDays} ago. The tags are mandatory, so that the
+ * parent folders shared by several cases are never swept; a folder still holding files or folders
+ * created after the retention date is kept as well.
+ *
+ * <p>Folders are looked up page by page, oldest first, and each page is deleted with batched
+ * requests sent in parallel. An execution handles at most {@code maxFolders} folders and returns a
+ * checkpoint: given back as input, the next execution resumes the sweep where this one stopped,
+ * with the same retention date, instead of scanning the drive again. With {@code dryRun}, the
+ * folders are only listed.
+ */
+public class GoogleDriveSweep extends AbstractGoogleDriveConnector {
+
+  private static final Logger LOGGER = Logger.getLogger(GoogleDriveSweep.class.getName());
+
+  static final String INPUT_NAME_APP_PROPERTIES = "appProperties";
+  static final String INPUT_NAME_RETENTION_DAYS = "retentionDays";
+  static final String INPUT_NAME_MAX_FOLDERS = "maxFolders";
+  static final String INPUT_NAME_PARALLELISM = "parallelism";
+  static final String INPUT_NAME_DRY_RUN = "dryRun";
+  static final String INPUT_NAME_CHECKPOINT = "checkpoint";
+
+  static final String OUTPUT_FOLDER_IDS = "folderIDs";
+  static final String OUTPUT_FAILED_FOLDER_IDS = "failedFolderIDs";
+  static final String OUTPUT_CHECKPOINT = "checkpoint";
+  static final String OUTPUT_COMPLETED = "completed";
+
+  static final int DEFAULT_MAX_FOLDERS = 1000;
+  static final int DEFAULT_PARALLELISM = 4;
+
+  /** Separates the retention date from the page token in the checkpoint. */
+  private static final String CHECKPOINT_SEPARATOR = "|";
+
+  private Map<String, String> appProperties;
+
+  protected final java.lang.Integer getRetentionDays() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_RETENTION_DAYS);
+  }
+
+  protected final java.lang.Integer getMaxFolders() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_MAX_FOLDERS);
+  }
+
+  protected final java.lang.Integer getParallelism() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_PARALLELISM);
+  }
+
+  protected final java.lang.Boolean getDryRun() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_DRY_RUN);
+  }
+
+  protected final java.lang.String getCheckpoint() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_CHECKPOINT);
+  }
+
+  protected final void setFolderIDs(List<String> folderIDs) {
+    setOutputParameter(OUTPUT_FOLDER_IDS, folderIDs);
+  }
+
+  protected final void setFailedFolderIDs(List<String> failedFolderIDs) {
+    setOutputParameter(OUTPUT_FAILED_FOLDER_IDS, failedFolderIDs);
+  }
+
+  protected final void setCheckpoint(String checkpoint) {
+    setOutputParameter(OUTPUT_CHECKPOINT, checkpoint);
+  }
+
+  protected final void setCompleted(Boolean completed) {
+    setOutputParameter(OUTPUT_COMPLETED, completed);
+  }
+
+  @Override
+  public void validateInputParameters() throws ConnectorValidationException {
+    checkConnectionInputs();
+    checkOptionalPositiveIntegerInput(INPUT_NAME_RETENTION_DAYS);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_MAX_FOLDERS);
+    checkOptionalPositiveIntegerInput(INPUT_NAME_PARALLELISM);
+    checkMandatoryBooleanInput(INPUT_NAME_DRY_RUN);
+    appProperties = parseAppProperties();
+    if (appProperties.isEmpty()) {
+      // the retention alone would also match the parent folders shared by several cases
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "Mandatory parameter '%s' is missing, for example %s = true",
+              INPUT_NAME_APP_PROPERTIES, GoogleDriveUpload.TAG_FOLDER));
+    }
+    String checkpoint = getCheckpoint();
+    if (checkpoint != null
+        && !checkpoint.trim().isEmpty()
+        && !checkpoint.contains(CHECKPOINT_SEPARATOR)) {
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "'%s' parameter must be the checkpoint output of a previous execution",
+              INPUT_NAME_CHECKPOINT));
+    }
+  }
+
+  @Override
+  protected void executeDriveOperations() throws ConnectorException {
+    boolean dryRun = Boolean.TRUE.equals(getDryRun());
+    int maxFolders = getMaxFolders() == null ? DEFAULT_MAX_FOLDERS : getMaxFolders();
+    int parallelism = getParallelism() == null ? DEFAULT_PARALLELISM : getParallelism();
+    DateTime createdBefore;
+    String pageToken = null;
+    String checkpoint = getCheckpoint();
+    if (checkpoint == null || checkpoint.trim().isEmpty()) {
+      createdBefore =
+          getRetentionDays() == null
+              ? null
+              : new DateTime(
+                  System.currentTimeMillis() - TimeUnit.DAYS.toMillis(getRetentionDays()));
+    } else {
+      // the page token is only valid for the query it comes from, keep the same retention date
+      String cutoff = checkpoint.substring(0, checkpoint.indexOf(CHECKPOINT_SEPARATOR)).trim();
+      createdBefore = cutoff.isEmpty() ? null : DateTime.parseRfc3339(cutoff);
+      pageToken = checkpoint.substring(checkpoint.indexOf(CHECKPOINT_SEPARATOR) + 1).trim();
+      LOGGER.info(String.format("Resuming sweep of folders created before %s", createdBefore));
+    }
+    List<String> folderIDs = new ArrayList<>();
+    List<String> failedFolderIDs = new ArrayList<>();
+    boolean completed = false;
+    try {
+      while (folderIDs.size() < maxFolders) {
+        // never read past maxFolders, so that the page token points right after the last folder
+        FileList page =
+            gDriveUtils.findFolders(
+                driveService,
+                getDriveID(),
+                appProperties,
+                createdBefore,
+                pageToken,
+                maxFolders - folderIDs.size());
+        List<String> pageFolderIDs = new ArrayList<>();
+        if (page.getFiles() != null) {
+          for (File folder : page.getFiles()) {
+            if (createdBefore != null
+                && gDriveUtils.hasFilesCreatedSince(driveService, folder.getId(), createdBefore)) {
+              // deleting it would take content still within its retention period along
+              LOGGER.info(String.format("Folder %s kept, it holds recent content", folder.getId()));
+              continue;
+            }
+            pageFolderIDs.add(folder.getId());
+          }
+        }
+        if (!dryRun && !pageFolderIDs.isEmpty()) {
+          for (BatchResult<Void> result :
+              gDriveUtils.deleteFiles(driveService, pageFolderIDs, parallelism)) {
+            // a folder nested in another one of the page is gone with it
+            if (!result.isSuccess() && result.getError().getCode() != 404) {
+              failedFolderIDs.add(result.getKey());
+            }
+          }
+        }
+        folderIDs.addAll(pageFolderIDs);
+        pageToken = page.getNextPageToken();
+        if (pageToken == null) {
+          completed = true;
+          break;
+        }
+      }
+    } catch (IOException e) {
+      throw new ConnectorException(e);
+    }
+    LOGGER.info(
+        String.format(
+            "%d folder(s) %s, %d failed, sweep %s",
+            folderIDs.size(),
+            dryRun ? "to delete" : "deleted",
+            failedFolderIDs.size(),
+            completed ? "completed" : "to resume"));
+    setFolderIDs(folderIDs);
+    setFailedFolderIDs(failedFolderIDs);
+    setCompleted(completed);
+    setCheckpoint(
+        completed
+            ? null
+            : (createdBefore == null ? "" : createdBefore.toStringRfc3339())
+                + CHECKPOINT_SEPARATOR
+                + pageToken);
+  }
+
+  /** App properties given as [key, value] rows, or as a map from a script. */
+  private Map<String, String> parseAppProperties() throws ConnectorValidationException {
+    Map<String, String> parsed = new LinkedHashMap<>();
+    Object value = getInputParameter(INPUT_NAME_APP_PROPERTIES);
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        put(parsed, trimmed(entry.getKey()), trimmed(entry.getValue()));
+      }
+      return parsed;
+    }
+    if (value != null && !(value instanceof List)) {
+      throw new ConnectorValidationException(
+          this, String.format("'%s' parameter must be a List or a Map", INPUT_NAME_APP_PROPERTIES));
+    }
+    if (value == null) {
+      return parsed;
+    }
+    for (Object row : (List<?>) value) {
+      if (!(row instanceof List)) {
+        throw new ConnectorValidationException(
+            this,
+            String.format(
+                "'%s' parameter rows must be lists [key, value]", INPUT_NAME_APP_PROPERTIES));
+      }
+      List<?> columns = (List<?>) row;
+      put(
+          parsed,
+          trimmed(columns.size() > 0 ? columns.get(0) : null),
+          trimmed(columns.size() > 1 ? columns.get(1) : null));
+    }
+    return parsed;
+  }
+
+  private void put(Map<String, String> appProperties, String key, String value)
+      throws ConnectorValidationException {
+    if (key == null && value == null) {
+      // blank row left in the studio table
+      return;
+    }
+    if (key == null || value == null) {
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "'%s' parameter: a key and a value are required, got %s=%s",
+              INPUT_NAME_APP_PROPERTIES, key, value));
+    }
+    appProperties.put(key, value);
+  }
+
+  private static String trimmed(Object value) {
+    if (value == null || value.toString().trim().isEmpty()) {
+      return null;
+    }
+    return value.toString().trim();
+  }
+}
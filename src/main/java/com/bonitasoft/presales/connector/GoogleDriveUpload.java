@@ -1,46 +1,86 @@
 package com.bonitasoft.presales.connector;
 
-import static java.nio.file.Files.createTempFile;
-import static java.nio.file.Files.writeString;
-
+import com.bonitasoft.presales.gdrive.BatchResult;
 import com.bonitasoft.presales.gdrive.GDriveUtils;
-import com.google.api.services.drive.Drive;
+import com.bonitasoft.presales.gdrive.OutboxJob;
+import com.bonitasoft.presales.gdrive.ParallelTasks;
+import com.bonitasoft.presales.gdrive.UploadMemoryBudget;
+import com.bonitasoft.presales.gdrive.UploadOutbox;
+import com.bonitasoft.presales.gdrive.ZipStreamContent;
+import com.google.api.client.http.ByteArrayContent;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.Permission;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
-import org.apache.commons.io.FileUtils;
 import org.bonitasoft.engine.api.ProcessAPI;
 import org.bonitasoft.engine.bpm.document.Document;
 import org.bonitasoft.engine.bpm.document.DocumentNotFoundException;
-import org.bonitasoft.engine.connector.AbstractConnector;
+import org.bonitasoft.engine.bpm.document.DocumentsSearchDescriptor;
 import org.bonitasoft.engine.connector.ConnectorException;
 import org.bonitasoft.engine.connector.ConnectorValidationException;
+import org.bonitasoft.engine.exception.SearchException;
+import org.bonitasoft.engine.search.Order;
+import org.bonitasoft.engine.search.SearchOptionsBuilder;
+import org.bonitasoft.engine.search.SearchResult;
 
-public class GoogleDriveUpload extends AbstractConnector {
+public class GoogleDriveUpload extends AbstractGoogleDriveConnector {
 
   private static final Logger LOGGER = Logger.getLogger(GoogleDriveUpload.class.getName());
 
-  static final String INPUT_NAME_DRIVE_ID = "driveID";
   static final String INPUT_NAME_FOLDER_NAME = "folderName";
   static final String INPUT_NAME_ATTACHMENTS = "attachments";
-  static final String INPUT_NAME_CREDENTIALS_JSON = "credentialsJSON";
   static final String INPUT_NAME_CREATE_FOLDER = "createFolder";
+  static final String INPUT_NAME_FOLDER_PATH = "folderPath";
+  static final String INPUT_NAME_MAX_PARALLEL_UPLOADS = "maxParallelUploads";
+  static final String INPUT_NAME_SKIP_UNCHANGED_FILES = "skipUnchangedFiles";
+  static final String INPUT_NAME_BUNDLE_AS_ZIP = "bundleAsZip";
+  static final String INPUT_NAME_ZIP_FILE_NAME = "zipFileName";
+  static final String INPUT_NAME_COMPRESSION_LEVEL = "compressionLevel";
+  static final String INPUT_NAME_ASYNC = "async";
+  static final String INPUT_NAME_FILE_FIELDS = "fileFields";
+  static final String INPUT_NAME_PERMISSIONS = "permissions";
+  static final String INPUT_NAME_SEND_NOTIFICATION_EMAIL = "sendNotificationEmail";
+  static final String INPUT_NAME_IDEMPOTENT_UPLOAD = "idempotentUpload";
 
   static final String OUTPUT_CREATED_FILE_LIST = "createdFileList";
   static final String OUTPUT_CREATED_FOLDER_ID = "createdFolderID";
+  static final String OUTPUT_UPLOADED_DOCUMENTS = "uploadedDocuments";
+  static final String OUTPUT_REUSED_DOCUMENTS = "reusedDocuments";
+  static final String OUTPUT_JOB_ID = "jobID";
+  static final String OUTPUT_FAILED_PERMISSIONS = "failedPermissions";
 
-  GDriveUtils gDriveUtils;
-  Drive driveService;
-  HashMap<String, File> createdFiles;
-  String folderId;
+  static final String DEFAULT_ZIP_FILE_NAME = "attachments.zip";
+  static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  static final int DOCUMENT_SEARCH_PAGE_SIZE = 100;
 
-  protected final java.lang.String getDriveID() {
-    return (java.lang.String) getInputParameter(INPUT_NAME_DRIVE_ID);
-  }
+  /** App properties tagging what the connector creates, to find it again when replayed. */
+  static final String TAG_PROCESS_INSTANCE_ID = "bonitaProcessInstanceId";
+
+  static final String TAG_DOCUMENT_NAME = "bonitaDocumentName";
+  static final String TAG_DOCUMENT_VERSION = "bonitaDocumentVersion";
+  static final String TAG_FOLDER = "bonitaFolder";
+  static final String DEFAULT_GRANTEE_TYPE = "user";
+  private static final List<String> GRANTEE_TYPES =
+      Arrays.asList("user", "group", "domain", "anyone");
+
+  String folderId;
+  UploadOutbox outbox;
+  UploadMemoryBudget memoryBudget;
+  /** Parsed permissions input, set on validation. */
+  private List<Permission> permissions = Collections.emptyList();
 
   protected final java.lang.String getFolderName() {
     return (java.lang.String) getInputParameter(INPUT_NAME_FOLDER_NAME);
@@ -50,14 +90,54 @@ public class GoogleDriveUpload extends AbstractConnector {
     return (List) getInputParameter(INPUT_NAME_ATTACHMENTS);
   }
 
-  protected final java.lang.String getCredentialsJSON() {
-    return (java.lang.String) getInputParameter(INPUT_NAME_CREDENTIALS_JSON);
-  }
-
   protected final java.lang.Boolean getCreateFolder() {
     return (java.lang.Boolean) getInputParameter(INPUT_NAME_CREATE_FOLDER);
   }
 
+  protected final java.lang.String getFolderPath() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_FOLDER_PATH);
+  }
+
+  protected final java.lang.Integer getMaxParallelUploads() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_MAX_PARALLEL_UPLOADS);
+  }
+
+  protected final java.lang.Boolean getSkipUnchangedFiles() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_SKIP_UNCHANGED_FILES);
+  }
+
+  protected final java.lang.Boolean getBundleAsZip() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_BUNDLE_AS_ZIP);
+  }
+
+  protected final java.lang.String getZipFileName() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_ZIP_FILE_NAME);
+  }
+
+  protected final java.lang.Integer getCompressionLevel() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_COMPRESSION_LEVEL);
+  }
+
+  protected final java.lang.Boolean getAsync() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_ASYNC);
+  }
+
+  protected final java.lang.String getFileFields() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_FILE_FIELDS);
+  }
+
+  protected final List getPermissions() {
+    return (List) getInputParameter(INPUT_NAME_PERMISSIONS);
+  }
+
+  protected final java.lang.Boolean getSendNotificationEmail() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_SEND_NOTIFICATION_EMAIL);
+  }
+
+  protected final java.lang.Boolean getIdempotentUpload() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_IDEMPOTENT_UPLOAD);
+  }
+
   protected final void setCreatedFileList(Object createdFileList) {
     setOutputParameter(OUTPUT_CREATED_FILE_LIST, createdFileList);
   }
@@ -66,6 +146,22 @@ public class GoogleDriveUpload extends AbstractConnector {
     setOutputParameter(OUTPUT_CREATED_FOLDER_ID, folderId);
   }
 
+  protected final void setUploadedDocuments(List<String> uploadedDocuments) {
+    setOutputParameter(OUTPUT_UPLOADED_DOCUMENTS, uploadedDocuments);
+  }
+
+  protected final void setReusedDocuments(List<String> reusedDocuments) {
+    setOutputParameter(OUTPUT_REUSED_DOCUMENTS, reusedDocuments);
+  }
+
+  protected final void setJobId(String jobId) {
+    setOutputParameter(OUTPUT_JOB_ID, jobId);
+  }
+
+  protected final void setFailedPermissions(List<String> failedPermissions) {
+    setOutputParameter(OUTPUT_FAILED_PERMISSIONS, failedPermissions);
+  }
+
   private Document getDocument(Object attachment, ProcessAPI processAPI)
       throws ConnectorException, DocumentNotFoundException {
     if (attachment instanceof String && !((String) attachment).trim().isEmpty()) {
@@ -80,6 +176,76 @@ public class GoogleDriveUpload extends AbstractConnector {
     }
   }
 
+  /**
+   * Documents of the attachments, in order. Document names are resolved with one document search on
+   * the process instance instead of one engine query per name. Names the search does not return,
+   * such as list documents, are looked up one by one as before.
+   */
+  private List<Document> getDocuments(ProcessAPI processAPI)
+      throws ConnectorException, DocumentNotFoundException {
+    Set<String> names = new LinkedHashSet<>();
+    for (Object attachment : getAttachments()) {
+      if (attachment instanceof String && !((String) attachment).trim().isEmpty()) {
+        names.add((String) attachment);
+      }
+    }
+    Map<String, Document> documentsByName = searchDocuments(names, processAPI);
+    List<Document> documents = new ArrayList<>();
+    for (Object attachment : getAttachments()) {
+      Document document = documentsByName.get(attachment);
+      documents.add(document != null ? document : getDocument(attachment, processAPI));
+    }
+    return documents;
+  }
+
+  private Map<String, Document> searchDocuments(Set<String> names, ProcessAPI processAPI)
+      throws ConnectorException {
+    Map<String, Document> documentsByName = new HashMap<>();
+    if (names.isEmpty()) {
+      return documentsByName;
+    }
+    long processInstanceId = getExecutionContext().getProcessInstanceId();
+    try {
+      for (int start = 0; ; start += DOCUMENT_SEARCH_PAGE_SIZE) {
+        SearchOptionsBuilder options =
+            new SearchOptionsBuilder(start, DOCUMENT_SEARCH_PAGE_SIZE)
+                .filter(DocumentsSearchDescriptor.PROCESSINSTANCE_ID, processInstanceId)
+                .and()
+                .leftParenthesis();
+        boolean first = true;
+        for (String name : names) {
+          if (!first) {
+            options.or();
+          }
+          options.filter(DocumentsSearchDescriptor.DOCUMENT_NAME, name);
+          first = false;
+        }
+        options
+            .rightParenthesis()
+            .sort(DocumentsSearchDescriptor.DOCUMENT_NAME, Order.ASC)
+            .sort(DocumentsSearchDescriptor.LIST_INDEX, Order.ASC);
+        SearchResult<Document> result = processAPI.searchDocuments(options.done());
+        for (Document document : result.getResult()) {
+          // getLastDocument only returns single documents, list documents have an index
+          if (document.getIndex() < 0) {
+            documentsByName.put(document.getName(), document);
+          }
+        }
+        if (result.getResult().size() < DOCUMENT_SEARCH_PAGE_SIZE
+            || start + DOCUMENT_SEARCH_PAGE_SIZE >= result.getCount()) {
+          break;
+        }
+      }
+    } catch (SearchException e) {
+      throw new ConnectorException(e);
+    }
+    LOGGER.info(
+        String.format(
+            "%d of %d document name(s) resolved with one search",
+            documentsByName.size(), names.size()));
+    return documentsByName;
+  }
+
   /**
    * Perform validation on the inputs defined on the connector definition
    * (src/main/resources/connector-googledrive-upload.def) You should: - validate that mandatory
@@ -88,44 +254,50 @@ public class GoogleDriveUpload extends AbstractConnector {
    */
   @Override
   public void validateInputParameters() throws ConnectorValidationException {
-    checkMandatoryStringInput(INPUT_NAME_DRIVE_ID);
-    checkMandatoryStringInput(INPUT_NAME_CREDENTIALS_JSON);
+    checkConnectionInputs();
     checkMandatoryListInput(INPUT_NAME_ATTACHMENTS);
     checkMandatoryBooleanInput(INPUT_NAME_CREATE_FOLDER);
-  }
-
-  protected void checkMandatoryStringInput(String inputName) throws ConnectorValidationException {
+    checkOptionalPositiveIntegerInput(INPUT_NAME_MAX_PARALLEL_UPLOADS);
     try {
-      String value = (String) getInputParameter(inputName);
-      if (value == null || value.isEmpty()) {
+      Integer compressionLevel = getCompressionLevel();
+      if (compressionLevel != null && (compressionLevel < 0 || compressionLevel > 9)) {
         throw new ConnectorValidationException(
-            this, String.format("Mandatory parameter '%s' is missing.", inputName));
+            this,
+            String.format("'%s' parameter must be between 0 and 9", INPUT_NAME_COMPRESSION_LEVEL));
       }
     } catch (ClassCastException e) {
       throw new ConnectorValidationException(
-          this, String.format("'%s' parameter must be a String", inputName));
+          this, String.format("'%s' parameter must be an Integer", INPUT_NAME_COMPRESSION_LEVEL));
     }
-  }
-
-  protected void checkMandatoryListInput(String inputName) throws ConnectorValidationException {
-    Object value = getInputParameter(inputName);
-    if (value == null) {
-      throw new ConnectorValidationException(
-          this, String.format("Mandatory parameter '%s' is missing.", inputName));
-    }
-    if (!(value instanceof List)) {
-      throw new ConnectorValidationException(
-          this, String.format("Mandatory parameter '%s' is not a list.", inputName));
+    checkMandatoryBooleanInput(INPUT_NAME_ASYNC);
+    checkMandatoryBooleanInput(INPUT_NAME_SEND_NOTIFICATION_EMAIL);
+    checkMandatoryBooleanInput(INPUT_NAME_IDEMPOTENT_UPLOAD);
+    permissions = parsePermissions();
+    if (Boolean.TRUE.equals(getAsync())) {
+      if (!permissions.isEmpty()) {
+        throw new ConnectorValidationException(
+            this,
+            String.format(
+                "'%s' parameter cannot be combined with '%s'",
+                INPUT_NAME_PERMISSIONS, INPUT_NAME_ASYNC));
+      }
+      for (String unsupported :
+          new String[] {INPUT_NAME_BUNDLE_AS_ZIP, INPUT_NAME_SKIP_UNCHANGED_FILES}) {
+        if (Boolean.TRUE.equals(getInputParameter(unsupported))) {
+          throw new ConnectorValidationException(
+              this,
+              String.format(
+                  "'%s' parameter cannot be combined with '%s'", unsupported, INPUT_NAME_ASYNC));
+        }
+      }
     }
   }
 
-  protected void checkMandatoryBooleanInput(String inputName) throws ConnectorValidationException {
-    try {
-      Boolean value = (Boolean) getInputParameter(inputName);
-    } catch (ClassCastException cce) {
-      throw new ConnectorValidationException(
-          this, String.format("Mandatory parameter '%s' is missing.", inputName));
-    }
+  /** Opens the Drive client, and lets the queued jobs waiting for these credentials resume. */
+  @Override
+  public void connect() throws ConnectorException {
+    super.connect();
+    UploadOutbox.offerCredentials(getCredentialsJSON());
   }
 
   /**
@@ -134,54 +306,498 @@ public class GoogleDriveUpload extends AbstractConnector {
    * outputs are not set, connector fails.
    */
   @Override
-  protected void executeBusinessLogic() throws ConnectorException {
+  protected void executeDriveOperations() throws ConnectorException {
     LOGGER.info(String.format("Drive ID: %s", getInputParameter(INPUT_NAME_DRIVE_ID)));
     LOGGER.info(String.format("Folder Name: %s", getInputParameter(INPUT_NAME_FOLDER_NAME)));
+    if (Boolean.TRUE.equals(getAsync())) {
+      enqueue();
+      return;
+    }
+    try {
+      // resolve every document before the first Drive call, a missing one fails fast
+      ProcessAPI processAPI = getAPIAccessor().getProcessAPI();
+      List<Document> documents = getDocuments(processAPI);
+      if (getFolderPath() == null || getFolderPath().trim().isEmpty()) {
+        uploadInFolder(null, documents, processAPI);
+        return;
+      }
+      // a folder of the path deleted on Drive is only noticed by the first call under it
+      gDriveUtils.inFolderPath(
+          driveService,
+          getDriveID(),
+          null,
+          getFolderPath(),
+          parentFolderId -> {
+            LOGGER.info(
+                String.format("Folder path %s resolved to %s", getFolderPath(), parentFolderId));
+            uploadInFolder(parentFolderId, documents, processAPI);
+          });
+    } catch (DocumentNotFoundException | IOException e) {
+      throw new ConnectorException(e);
+    }
+  }
+
+  /**
+   * Creates or reuses the case folder under the given parent, then uploads the documents and sets
+   * the outputs.
+   */
+  private void uploadInFolder(
+      String parentFolderId, List<Document> documents, ProcessAPI processAPI)
+      throws IOException, ConnectorException {
+    folderId = parentFolderId;
     try {
+      List<File> previousRun = findPreviousRun();
       if (getCreateFolder()) {
-        LOGGER.info(
-            String.format("Creating Folder Named %s", getInputParameter(INPUT_NAME_FOLDER_NAME)));
-        File folder = gDriveUtils.createFolder(driveService, getDriveID(), null, getFolderName());
+        File folder = findFolder(previousRun, parentFolderId, getFolderName());
+        if (folder != null) {
+          LOGGER.info(
+              String.format(
+                  "Reusing folder %s created by a previous run of the connector", folder.getId()));
+        } else {
+          LOGGER.info(
+              String.format("Creating Folder Named %s", getInputParameter(INPUT_NAME_FOLDER_NAME)));
+          folder =
+              gDriveUtils.createFolder(
+                  driveService, getDriveID(), parentFolderId, getFolderName(), folderTags());
+          LOGGER.info(String.format("Folder ID %s created", folder.getId()));
+        }
         folderId = folder.getId();
         setOutputCreatedFolderId(folderId);
-        LOGGER.info(String.format("Folder ID %s created", folderId));
-      }
-      createdFiles = new HashMap<>();
-      for (Object attachment : getAttachments()) {
-        ProcessAPI processAPI = getAPIAccessor().getProcessAPI();
-        Document document = getDocument(attachment, processAPI);
-        LOGGER.info(String.format("Uploading file %s", document.getContentFileName()));
-        java.io.File documentFile = new java.io.File(document.getContentFileName());
-        byte[] documentContent = processAPI.getDocumentContent(document.getContentStorageId());
-        FileUtils.writeByteArrayToFile(documentFile, documentContent);
-        File file =
-            gDriveUtils.createFile(
-                driveService, getDriveID(), folderId, documentFile, document.getContentMimeType());
-        createdFiles.put(document.getName(), file);
-        LOGGER.info(String.format("File %s uploaded", document.getContentFileName()));
+      }
+      if (Boolean.TRUE.equals(getBundleAsZip())) {
+        uploadAsZip(documents, processAPI);
+        return;
+      }
+      Map<String, File> existingFiles = findExistingFiles(documents);
+      List<Callable<UploadOutcome>> uploads = new ArrayList<>();
+      for (Document document : documents) {
+        File uploaded = findDocumentFile(previousRun, document);
+        if (uploaded != null) {
+          LOGGER.info(
+              String.format(
+                  "Document %s was uploaded by a previous run as %s",
+                  document.getName(), uploaded.getId()));
+          uploads.add(() -> new UploadOutcome(uploaded, true));
+          continue;
+        }
+        File existingFile = existingFiles.get(document.getContentFileName());
+        uploads.add(() -> upload(document, existingFile, processAPI));
+      }
+      List<UploadOutcome> outcomes = ParallelTasks.runAll(uploads, getUploadParallelism());
+      // keep the attachments order in the output
+      Set<String> fieldNames = UploadedFile.fieldNames(fileFields());
+      Map<String, UploadedFile> createdFiles = new LinkedHashMap<>();
+      List<String> uploadedDocuments = new ArrayList<>();
+      List<String> reusedDocuments = new ArrayList<>();
+      for (int i = 0; i < documents.size(); i++) {
+        String documentName = documents.get(i).getName();
+        createdFiles.put(documentName, UploadedFile.of(outcomes.get(i).file, fieldNames));
+        (outcomes.get(i).reused ? reusedDocuments : uploadedDocuments).add(documentName);
       }
       setCreatedFileList(createdFiles);
+      setUploadedDocuments(uploadedDocuments);
+      setReusedDocuments(reusedDocuments);
       LOGGER.info("Uploaded files " + createdFiles.toString());
-    } catch (DocumentNotFoundException | IOException e) {
+      LOGGER.info(
+          String.format(
+              "%d document(s) uploaded, %d unchanged document(s) reused",
+              uploadedDocuments.size(), reusedDocuments.size()));
+      grantPermissions(createdFiles.values());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ConnectorException) {
+        throw (ConnectorException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new ConnectorException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new ConnectorException(e);
     }
   }
 
-  /** [Optional] Open a connection to remote server */
-  @Override
-  public void connect() throws ConnectorException {
+  /**
+   * Copies the documents to the outbox and returns without any Drive call, the upload runs in the
+   * background. The job outcome is read with the upload status connector.
+   */
+  private void enqueue() throws ConnectorException {
     try {
-      gDriveUtils = new GDriveUtils();
-      Path temp = createTempFile("credentials", ".json");
-      writeString(temp, getCredentialsJSON());
-      driveService =
-          gDriveUtils.getDriveServiceViaServiceAccount(temp.toFile(), GDriveUtils.getAllScopes());
-    } catch (IOException | GeneralSecurityException e) {
+      ProcessAPI processAPI = getAPIAccessor().getProcessAPI();
+      OutboxJob job =
+          new OutboxJob(getDriveID(), getFolderPath(), getCreateFolder(), getFolderName());
+      // created as a synchronous upload would, so that the status and replays see the same files
+      job.setFileFields(fileFields());
+      job.setFolderAppProperties(folderTags());
+      UploadOutbox.Submission submission = getOutbox().prepare(job, getCredentialsJSON());
+      for (Document document : getDocuments(processAPI)) {
+        try (UploadMemoryBudget.Lease content =
+            getMemoryBudget()
+                .load(() -> processAPI.getDocumentContent(document.getContentStorageId()))) {
+          submission.addDocument(
+              document.getName(),
+              document.getContentFileName(),
+              document.getContentMimeType(),
+              content.getContent(),
+              documentTags(document));
+        }
+      }
+      String jobId = submission.submit();
+      LOGGER.info(String.format("Upload job %s queued", jobId));
+      setJobId(jobId);
+      setCreatedFileList(new LinkedHashMap<String, UploadedFile>());
+      setUploadedDocuments(new ArrayList<>());
+      setReusedDocuments(new ArrayList<>());
+    } catch (DocumentNotFoundException | IOException | IllegalStateException e) {
+      // IllegalStateException: the outbox directory is not configured
       throw new ConnectorException(e);
     }
   }
 
+  private UploadOutbox getOutbox() {
+    return outbox == null ? UploadOutbox.getInstance() : outbox;
+  }
+
+  private UploadMemoryBudget getMemoryBudget() {
+    return memoryBudget == null ? UploadMemoryBudget.getShared() : memoryBudget;
+  }
+
+  /** Fields of the created files kept in the output, the id being always returned. */
+  String fileFields() {
+    String fileFields = getFileFields();
+    if (fileFields == null || fileFields.trim().isEmpty()) {
+      return GDriveUtils.DEFAULT_CREATED_FILE_FIELDS;
+    }
+    return UploadedFile.fieldNames(fileFields).contains("id")
+        ? fileFields.trim()
+        : "id, " + fileFields.trim();
+  }
+
+  private int getUploadParallelism() {
+    Integer maxParallelUploads = getMaxParallelUploads();
+    return maxParallelUploads == null ? 1 : maxParallelUploads;
+  }
+
+  /**
+   * Uploads all the documents as a single archive, zipped while it is sent. Each document content
+   * is fetched when its entry is reached, so only one document is held in memory at a time.
+   */
+  private void uploadAsZip(List<Document> documents, ProcessAPI processAPI) throws IOException {
+    String zipFileName =
+        getZipFileName() == null || getZipFileName().trim().isEmpty()
+            ? DEFAULT_ZIP_FILE_NAME
+            : getZipFileName().trim();
+    int compressionLevel =
+        getCompressionLevel() == null ? DEFAULT_COMPRESSION_LEVEL : getCompressionLevel();
+    ZipStreamContent content = new ZipStreamContent(compressionLevel);
+    List<String> uploadedDocuments = new ArrayList<>();
+    for (Document document : documents) {
+      content.addEntry(
+          document.getContentFileName(),
+          () -> {
+            UploadMemoryBudget.Lease lease;
+            try {
+              lease =
+                  getMemoryBudget()
+                      .load(() -> processAPI.getDocumentContent(document.getContentStorageId()));
+            } catch (DocumentNotFoundException e) {
+              throw new IOException(e);
+            }
+            // entries are closed once zipped, which gives their memory back
+            return new ByteArrayInputStream(lease.getContent()) {
+              @Override
+              public void close() throws IOException {
+                super.close();
+                lease.close();
+              }
+            };
+          });
+      uploadedDocuments.add(document.getName());
+    }
+    LOGGER.info(
+        String.format(
+            "Uploading %d documents as %s (compression level %d)",
+            documents.size(), zipFileName, compressionLevel));
+    File file;
+    try {
+      file =
+          gDriveUtils.createFile(
+              driveService, getDriveID(), folderId, zipFileName, content, fileFields());
+    } finally {
+      // an upload failing midway leaves the writer blocked with the memory of its entry
+      content.close();
+    }
+    LOGGER.info(String.format("File %s uploaded", zipFileName));
+    Map<String, UploadedFile> createdFiles = new LinkedHashMap<>();
+    createdFiles.put(zipFileName, UploadedFile.of(file, UploadedFile.fieldNames(fileFields())));
+    setCreatedFileList(createdFiles);
+    setUploadedDocuments(uploadedDocuments);
+    setReusedDocuments(new ArrayList<>());
+    grantPermissions(createdFiles.values());
+  }
+
+  /**
+   * Shares the created folder, or each uploaded file when no folder is created, with the grantees
+   * of the permissions input, in batched requests. A failed grant does not fail the connector, as
+   * the files are already uploaded: it is logged and listed in the failed permissions output.
+   */
+  private void grantPermissions(Collection<UploadedFile> files) throws IOException {
+    List<String> failedPermissions = new ArrayList<>();
+    if (!permissions.isEmpty()) {
+      List<String> fileIds = new ArrayList<>();
+      if (getCreateFolder()) {
+        fileIds.add(folderId);
+      } else {
+        for (UploadedFile file : files) {
+          fileIds.add(file.getId());
+        }
+      }
+      List<BatchResult<Permission>> results =
+          gDriveUtils.grantPermissions(
+              driveService, fileIds, permissions, Boolean.TRUE.equals(getSendNotificationEmail()));
+      for (BatchResult<Permission> result : results) {
+        if (!result.isSuccess()) {
+          failedPermissions.add(
+              String.format("%s: %s", result.getKey(), result.getError().getMessage()));
+        }
+      }
+      LOGGER.info(
+          String.format(
+              "%d permission(s) granted on %d file(s), %d failed",
+              results.size() - failedPermissions.size(), fileIds.size(), failedPermissions.size()));
+    }
+    setFailedPermissions(failedPermissions);
+  }
+
+  /**
+   * Permissions of the permissions input. Each row is a list {@code [grantee, role, type]}, as
+   * edited in the studio table, or a map with {@code emailAddress} or {@code domain}, {@code role}
+   * and {@code type} keys. The type defaults to {@value #DEFAULT_GRANTEE_TYPE}, the grantee is an
+   * email address for users and groups, a domain name for domains and is empty for anyone.
+   */
+  private List<Permission> parsePermissions() throws ConnectorValidationException {
+    List<Permission> parsed = new ArrayList<>();
+    List<?> rows;
+    try {
+      rows = getPermissions();
+    } catch (ClassCastException e) {
+      throw new ConnectorValidationException(
+          this, String.format("'%s' parameter must be a List", INPUT_NAME_PERMISSIONS));
+    }
+    if (rows == null) {
+      return parsed;
+    }
+    for (Object row : rows) {
+      String grantee;
+      String role;
+      String type;
+      if (row instanceof List) {
+        List<?> columns = (List<?>) row;
+        grantee = column(columns, 0);
+        role = column(columns, 1);
+        type = column(columns, 2);
+      } else if (row instanceof Map) {
+        Map<?, ?> columns = (Map<?, ?>) row;
+        grantee =
+            trimmed(
+                columns.get("emailAddress") != null
+                    ? columns.get("emailAddress")
+                    : columns.get("domain"));
+        role = trimmed(columns.get("role"));
+        type = trimmed(columns.get("type"));
+      } else {
+        throw new ConnectorValidationException(
+            this,
+            String.format(
+                "'%s' parameter rows must be lists [grantee, role, type] or maps",
+                INPUT_NAME_PERMISSIONS));
+      }
+      if (grantee == null && role == null && type == null) {
+        // blank row left in the studio table
+        continue;
+      }
+      type = type == null ? DEFAULT_GRANTEE_TYPE : type;
+      if (!GRANTEE_TYPES.contains(type)) {
+        throw new ConnectorValidationException(
+            this,
+            String.format(
+                "'%s' parameter: unknown type '%s', expected one of %s",
+                INPUT_NAME_PERMISSIONS, type, GRANTEE_TYPES));
+      }
+      if (role == null || (grantee == null && !"anyone".equals(type))) {
+        throw new ConnectorValidationException(
+            this,
+            String.format(
+                "'%s' parameter: a grantee and a role are required, got %s",
+                INPUT_NAME_PERMISSIONS, row));
+      }
+      Permission permission = new Permission().setType(type).setRole(role);
+      if ("domain".equals(type)) {
+        permission.setDomain(grantee);
+      } else if (!"anyone".equals(type)) {
+        permission.setEmailAddress(grantee);
+      }
+      parsed.add(permission);
+    }
+    return parsed;
+  }
+
+  private static String column(List<?> columns, int index) {
+    return index < columns.size() ? trimmed(columns.get(index)) : null;
+  }
+
+  private static String trimmed(Object value) {
+    if (value == null || value.toString().trim().isEmpty()) {
+      return null;
+    }
+    return value.toString().trim();
+  }
+
+  /**
+   * Folders and files tagged by a previous run of the connector for this process instance, found
+   * with a single query. Empty when idempotent upload is off.
+   */
+  private List<File> findPreviousRun() throws IOException {
+    if (!Boolean.TRUE.equals(getIdempotentUpload())) {
+      return Collections.emptyList();
+    }
+    return gDriveUtils.findFilesByAppProperties(
+        driveService,
+        getDriveID(),
+        Collections.singletonMap(TAG_PROCESS_INSTANCE_ID, processInstanceTag()),
+        fileFields() + ", md5Checksum");
+  }
+
+  private File findFolder(List<File> previousRun, String parentFolderId, String folderName) {
+    for (File file : previousRun) {
+      if (file.getAppProperties().containsKey(TAG_FOLDER)
+          && file.getName().equals(folderName)
+          && isIn(file, parentFolderId)) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  /** File of the same document version uploaded to the target folder by a previous run. */
+  private File findDocumentFile(List<File> previousRun, Document document) {
+    for (File file : previousRun) {
+      Map<String, String> tags = file.getAppProperties();
+      if (document.getName().equals(tags.get(TAG_DOCUMENT_NAME))
+          && String.valueOf(document.getVersion()).equals(tags.get(TAG_DOCUMENT_VERSION))
+          && isIn(file, folderId)) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private boolean isIn(File file, String parentFolderId) {
+    String parent = parentFolderId == null ? getDriveID() : parentFolderId;
+    return file.getParents() != null && file.getParents().contains(parent);
+  }
+
+  private String processInstanceTag() {
+    return String.valueOf(getExecutionContext().getProcessInstanceId());
+  }
+
+  private Map<String, String> folderTags() {
+    if (!Boolean.TRUE.equals(getIdempotentUpload())) {
+      return null;
+    }
+    Map<String, String> tags = new HashMap<>();
+    tags.put(TAG_PROCESS_INSTANCE_ID, processInstanceTag());
+    tags.put(TAG_FOLDER, "true");
+    return tags;
+  }
+
+  private Map<String, String> documentTags(Document document) {
+    if (!Boolean.TRUE.equals(getIdempotentUpload())) {
+      return null;
+    }
+    Map<String, String> tags = new HashMap<>();
+    tags.put(TAG_PROCESS_INSTANCE_ID, processInstanceTag());
+    tags.put(TAG_DOCUMENT_NAME, document.getName());
+    tags.put(TAG_DOCUMENT_VERSION, String.valueOf(document.getVersion()));
+    return tags;
+  }
+
+  /**
+   * Files of the target folder named after the documents, empty when deduplication is off or when
+   * the folder has just been created.
+   */
+  private Map<String, File> findExistingFiles(List<Document> documents) throws IOException {
+    if (!Boolean.TRUE.equals(getSkipUnchangedFiles()) || getCreateFolder()) {
+      return Collections.emptyMap();
+    }
+    List<String> fileNames = new ArrayList<>();
+    for (Document document : documents) {
+      fileNames.add(document.getContentFileName());
+    }
+    return gDriveUtils.findFilesByName(
+        driveService, getDriveID(), folderId, fileNames, fileFields() + ", md5Checksum");
+  }
+
+  private UploadOutcome upload(Document document, File existingFile, ProcessAPI processAPI)
+      throws DocumentNotFoundException, IOException {
+    // the engine only hands out content as byte[]: wrap it as is, no extra copy and no disk write.
+    // It is held under the JVM wide memory budget until the upload is done
+    try (UploadMemoryBudget.Lease lease =
+        getMemoryBudget()
+            .load(() -> processAPI.getDocumentContent(document.getContentStorageId()))) {
+      return upload(document, existingFile, lease.getContent());
+    }
+  }
+
+  private UploadOutcome upload(Document document, File existingFile, byte[] bytes)
+      throws IOException {
+    String fileName = document.getContentFileName();
+    ByteArrayContent content = new ByteArrayContent(document.getContentMimeType(), bytes);
+    String md5 = GDriveUtils.md5Hex(bytes);
+    if (existingFile == null) {
+      LOGGER.info(String.format("Uploading file %s", fileName));
+      // the same content uploaded by a previous case is copied instead of sent again
+      File file =
+          gDriveUtils.createOrCopyFile(
+              driveService,
+              getDriveID(),
+              folderId,
+              fileName,
+              content,
+              md5,
+              fileFields(),
+              documentTags(document));
+      LOGGER.info(String.format("File %s uploaded", fileName));
+      return new UploadOutcome(file, false);
+    }
+    if (md5.equals(existingFile.getMd5Checksum())) {
+      LOGGER.info(
+          String.format("File %s is unchanged, reusing %s", fileName, existingFile.getId()));
+      return new UploadOutcome(existingFile, true);
+    }
+    LOGGER.info(String.format("File %s has changed, adding a revision", fileName));
+    File file =
+        gDriveUtils.updateFileContent(
+            driveService,
+            existingFile.getId(),
+            fileName,
+            content,
+            fileFields(),
+            documentTags(document));
+    return new UploadOutcome(file, false);
+  }
+
   public void cleanup(String folderId) throws IOException {
     gDriveUtils.deleteFolder(driveService, folderId);
   }
+
+  private static class UploadOutcome {
+    final File file;
+    final boolean reused;
+
+    UploadOutcome(File file, boolean reused) {
+      this.file = file;
+      this.reused = reused;
+    }
+  }
 }
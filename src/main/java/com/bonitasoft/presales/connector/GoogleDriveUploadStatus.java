@@ -0,0 +1,129 @@
+package com.bonitasoft.presales.connector;
+
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.bonitasoft.presales.gdrive.OutboxJob;
+import com.bonitasoft.presales.gdrive.UploadOutbox;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.bonitasoft.engine.connector.AbstractConnector;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+
+/**
+ * Returns the state of an upload queued by the upload connector in async mode and, once done, the
+ * created files. It can wait for the upload to finish, up to a timeout. The job is read from the
+ * local outbox, no Drive call is made: unlike the other connectors, it takes no drive, credentials
+ * nor connection inputs.
+ */
+public class GoogleDriveUploadStatus extends AbstractConnector {
+
+  private static final Logger LOGGER = Logger.getLogger(GoogleDriveUploadStatus.class.getName());
+
+  static final String INPUT_NAME_JOB_ID = "jobID";
+  static final String INPUT_NAME_WAIT_TIMEOUT = "waitTimeout";
+  static final String INPUT_NAME_FAIL_ON_ERROR = "failOnError";
+
+  static final String OUTPUT_JOB_STATUS = "jobStatus";
+  static final String OUTPUT_CREATED_FILE_LIST = "createdFileList";
+  static final String OUTPUT_CREATED_FOLDER_ID = "createdFolderID";
+  static final String OUTPUT_ERROR_MESSAGE = "errorMessage";
+
+  UploadOutbox outbox;
+
+  protected final java.lang.String getJobID() {
+    return (java.lang.String) getInputParameter(INPUT_NAME_JOB_ID);
+  }
+
+  protected final java.lang.Integer getWaitTimeout() {
+    return (java.lang.Integer) getInputParameter(INPUT_NAME_WAIT_TIMEOUT);
+  }
+
+  protected final java.lang.Boolean getFailOnError() {
+    return (java.lang.Boolean) getInputParameter(INPUT_NAME_FAIL_ON_ERROR);
+  }
+
+  protected final void setJobStatus(String jobStatus) {
+    setOutputParameter(OUTPUT_JOB_STATUS, jobStatus);
+  }
+
+  protected final void setCreatedFileList(Map<String, UploadedFile> createdFileList) {
+    setOutputParameter(OUTPUT_CREATED_FILE_LIST, createdFileList);
+  }
+
+  protected final void setOutputCreatedFolderId(String folderId) {
+    setOutputParameter(OUTPUT_CREATED_FOLDER_ID, folderId);
+  }
+
+  protected final void setErrorMessage(String errorMessage) {
+    setOutputParameter(OUTPUT_ERROR_MESSAGE, errorMessage);
+  }
+
+  @Override
+  public void validateInputParameters() throws ConnectorValidationException {
+    String jobId;
+    Integer waitTimeout;
+    try {
+      jobId = getJobID();
+      waitTimeout = getWaitTimeout();
+      getFailOnError();
+    } catch (ClassCastException e) {
+      throw new ConnectorValidationException(
+          this,
+          String.format(
+              "'%s' must be a String, '%s' an Integer and '%s' a Boolean",
+              INPUT_NAME_JOB_ID, INPUT_NAME_WAIT_TIMEOUT, INPUT_NAME_FAIL_ON_ERROR));
+    }
+    if (jobId == null || jobId.trim().isEmpty()) {
+      throw new ConnectorValidationException(
+          this, String.format("Mandatory parameter '%s' is missing.", INPUT_NAME_JOB_ID));
+    }
+    if (waitTimeout != null && waitTimeout <= 0) {
+      throw new ConnectorValidationException(
+          this,
+          String.format("'%s' parameter must be a positive integer", INPUT_NAME_WAIT_TIMEOUT));
+    }
+  }
+
+  @Override
+  protected void executeBusinessLogic() throws ConnectorException {
+    UploadOutbox jobs = outbox == null ? UploadOutbox.getInstance() : outbox;
+    OutboxJob job;
+    try {
+      Integer waitTimeout = getWaitTimeout();
+      job =
+          waitTimeout == null
+              ? jobs.getJob(getJobID().trim())
+              : jobs.await(getJobID().trim(), Duration.ofSeconds(waitTimeout));
+    } catch (IOException | IllegalArgumentException e) {
+      throw new ConnectorException(e);
+    }
+    LOGGER.info(
+        String.format(
+            "Upload job %s is %s after %d attempt(s)",
+            job.getId(), job.getState(), job.getAttempts()));
+    if (job.getState() == OutboxJob.State.FAILED && Boolean.TRUE.equals(getFailOnError())) {
+      throw new ConnectorException(
+          String.format("Upload job %s failed: %s", job.getId(), job.getError()));
+    }
+    // uploaded files are listed as soon as they are created, even if the job is not done yet
+    Set<String> fieldNames =
+        UploadedFile.fieldNames(
+            job.getFileFields() == null
+                ? GDriveUtils.DEFAULT_CREATED_FILE_FIELDS
+                : job.getFileFields());
+    Map<String, UploadedFile> createdFiles = new LinkedHashMap<>();
+    for (OutboxJob.Item item : job.getItems()) {
+      if (item.getFile() != null) {
+        createdFiles.put(item.getDocumentName(), UploadedFile.of(item.getFile(), fieldNames));
+      }
+    }
+    setJobStatus(job.getState().name());
+    setCreatedFileList(createdFiles);
+    setOutputCreatedFolderId(job.isCreateFolder() ? job.getFolderId() : null);
+    setErrorMessage(job.getError());
+  }
+}
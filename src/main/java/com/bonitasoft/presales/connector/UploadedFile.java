@@ -0,0 +1,116 @@
+package com.bonitasoft.presales.connector;
+
+import com.google.api.services.drive.model.File;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * File created or reused by the upload connector, as stored in its outputs.
+ *
+ * <p>Only the fields requested with the {@code fileFields} input are kept, as plain serializable
+ * values, so that the engine stores a few strings per document instead of the whole Drive model.
+ * The getters of the usual fields match the ones of the Drive {@link File}.
+ */
+public class UploadedFile implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final LinkedHashMap<String, Object> fields;
+
+  UploadedFile(Map<String, Object> fields) {
+    this.fields = new LinkedHashMap<>(fields);
+  }
+
+  /** Copy of the given fields of the Drive file, top level names of a field mask. */
+  static UploadedFile of(File file, Collection<String> fieldNames) {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> field : AbstractGoogleDriveConnector.toMap(file).entrySet()) {
+      if (fieldNames.contains(field.getKey())) {
+        fields.put(field.getKey(), field.getValue());
+      }
+    }
+    return new UploadedFile(fields);
+  }
+
+  /**
+   * Top level field names of a Drive field mask: {@code id, owners(emailAddress),
+   * capabilities/canEdit} gives {@code id}, {@code owners} and {@code capabilities}.
+   */
+  static Set<String> fieldNames(String fieldMask) {
+    Set<String> names = new LinkedHashSet<>();
+    int depth = 0;
+    StringBuilder name = new StringBuilder();
+    boolean inName = true;
+    for (char c : (fieldMask + ",").toCharArray()) {
+      if (c == '(') {
+        depth++;
+        inName = false;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        if (name.toString().trim().length() > 0) {
+          names.add(name.toString().trim());
+        }
+        name.setLength(0);
+        inName = true;
+      } else if (c == '/' && depth == 0) {
+        inName = false;
+      } else if (inName && depth == 0) {
+        name.append(c);
+      }
+    }
+    return names;
+  }
+
+  public String getId() {
+    return (String) fields.get("id");
+  }
+
+  public String getName() {
+    return (String) fields.get("name");
+  }
+
+  public String getWebViewLink() {
+    return (String) fields.get("webViewLink");
+  }
+
+  public String getMd5Checksum() {
+    return (String) fields.get("md5Checksum");
+  }
+
+  /** Value of any requested field, nested objects being maps. */
+  public Object get(String fieldName) {
+    return fields.get(fieldName);
+  }
+
+  public Map<String, Object> getFields() {
+    return Collections.unmodifiableMap(fields);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof UploadedFile)) {
+      return false;
+    }
+    return fields.equals(((UploadedFile) o).fields);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(fields);
+  }
+
+  @Override
+  public String toString() {
+    return fields.toString();
+  }
+}
@@ -0,0 +1,43 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+
+/** Outcome of a single request sent as part of a Drive batch. */
+public class BatchResult<T> {
+
+  private final String key;
+  private final T value;
+  private final GoogleJsonError error;
+
+  BatchResult(String key, T value, GoogleJsonError error) {
+    this.key = key;
+    this.value = value;
+    this.error = error;
+  }
+
+  /** Identifies the item the request was about: file id, folder name... */
+  public String getKey() {
+    return key;
+  }
+
+  /** Response of the request, {@code null} when it failed or has no body. */
+  public T getValue() {
+    return value;
+  }
+
+  /** Error returned by Drive, {@code null} on success. */
+  public GoogleJsonError getError() {
+    return error;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess()
+        ? String.format("%s: %s", key, value)
+        : String.format("%s: error %d %s", key, error.getCode(), error.getMessage());
+  }
+}
@@ -0,0 +1,45 @@
+package com.bonitasoft.presales.gdrive;
+
+/**
+ * Controls how file content is read from Drive.
+ *
+ * <p>Files bigger than the parallel threshold are split into ranges of {@link #getRangeSize()}
+ * bytes fetched concurrently with HTTP {@code Range} requests. A failed range is retried on its
+ * own, without downloading the rest of the file again.
+ */
+public class DownloadSettings {
+
+  static final String RANGE_SIZE_PROPERTY = "gdrive.download.rangeSizeBytes";
+  static final String PARALLEL_THRESHOLD_PROPERTY = "gdrive.download.parallelThresholdBytes";
+
+  static final int DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+  static final long DEFAULT_PARALLEL_THRESHOLD = 16 * 1024 * 1024L;
+
+  private final int rangeSize;
+  private final long parallelThreshold;
+
+  public DownloadSettings(int rangeSize, long parallelThreshold) {
+    this.rangeSize = Math.max(1, rangeSize);
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  /** Settings read from system properties, falling back to defaults. */
+  public static DownloadSettings fromSystemProperties() {
+    return new DownloadSettings(
+        Integer.getInteger(RANGE_SIZE_PROPERTY, DEFAULT_RANGE_SIZE),
+        Long.getLong(PARALLEL_THRESHOLD_PROPERTY, DEFAULT_PARALLEL_THRESHOLD));
+  }
+
+  public int getRangeSize() {
+    return rangeSize;
+  }
+
+  public long getParallelThreshold() {
+    return parallelThreshold;
+  }
+
+  /** Whether a file of the given size is downloaded with concurrent range requests. */
+  public boolean isParallel(long size) {
+    return size >= parallelThreshold && size > rangeSize;
+  }
+}
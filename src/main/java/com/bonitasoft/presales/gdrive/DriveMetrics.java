@@ -0,0 +1,205 @@
+package com.bonitasoft.presales.gdrive;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instrumentation of the Drive calls and connector executions of the JVM.
+ *
+ * <p>Metrics are exposed through JMX under the {@value #JMX_DOMAIN} domain: a {@code
+ * type=DriveMetrics} bean with in-flight requests, uploaded bytes, retries, rate limit errors and
+ * the use of the upload memory budget, and one {@code type=Operation} / {@code type=Connector} bean
+ * per operation holding its latency histogram. When Micrometer is on the classpath, the same
+ * metrics are also registered in its global registry, unless the system property {@value
+ * #MICROMETER_PROPERTY} is {@code false}.
+ */
+public class DriveMetrics implements DriveMetricsMXBean {
+
+  static final String JMX_DOMAIN = "com.bonitasoft.presales.gdrive";
+  static final String MICROMETER_PROPERTY = "gdrive.metrics.micrometer";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DriveMetrics.class);
+  private static final DriveMetrics INSTANCE = createInstance();
+
+  /** Receives every recorded measure, used to forward them to a metrics registry. */
+  public interface Listener {
+    void onOperation(String operation, long nanos, boolean success);
+
+    void onConnectorExecution(String connector, long nanos, boolean success);
+  }
+
+  private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+  private final Map<String, OperationStats> connectors = new ConcurrentHashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final AtomicInteger requestsInFlight = new AtomicInteger();
+  private final LongAdder bytesUploaded = new LongAdder();
+  private final LongAdder uploadNanos = new LongAdder();
+  private final LongAdder retryCount = new LongAdder();
+  private final LongAdder rateLimitedCount = new LongAdder();
+  private final boolean jmxEnabled;
+
+  DriveMetrics(boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+  }
+
+  private static DriveMetrics createInstance() {
+    DriveMetrics metrics = new DriveMetrics(true);
+    metrics.register(metrics, "type=DriveMetrics");
+    if (!"false".equals(System.getProperty(MICROMETER_PROPERTY)) && isMicrometerAvailable()) {
+      MicrometerMetrics.bindToGlobalRegistry(metrics);
+    }
+    return metrics;
+  }
+
+  private static boolean isMicrometerAvailable() {
+    try {
+      Class.forName(
+          "io.micrometer.core.instrument.Metrics", false, DriveMetrics.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  public static DriveMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /** Runs a Drive call, measuring its latency and counting it as in flight while it runs. */
+  public <T> T record(String operation, RetryPolicy.DriveCall<T> call) throws IOException {
+    requestsInFlight.incrementAndGet();
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      T result = call.call();
+      success = true;
+      return result;
+    } finally {
+      requestsInFlight.decrementAndGet();
+      recordOperation(operation, System.nanoTime() - start, success);
+    }
+  }
+
+  void recordOperation(String operation, long nanos, boolean success) {
+    operations
+        .computeIfAbsent(operation, name -> newStats("type=Operation", name))
+        .record(nanos, success);
+    for (Listener listener : listeners) {
+      listener.onOperation(operation, nanos, success);
+    }
+  }
+
+  /** Records the end-to-end duration of a connector execution. */
+  public void recordConnectorExecution(String connector, long nanos, boolean success) {
+    connectors
+        .computeIfAbsent(connector, name -> newStats("type=Connector", name))
+        .record(nanos, success);
+    for (Listener listener : listeners) {
+      listener.onConnectorExecution(connector, nanos, success);
+    }
+  }
+
+  /** Records content sent to Drive and the time spent sending it. */
+  public void recordUpload(long bytes, long nanos) {
+    bytesUploaded.add(bytes);
+    uploadNanos.add(nanos);
+  }
+
+  void recordRetry() {
+    retryCount.increment();
+  }
+
+  void recordRateLimited() {
+    rateLimitedCount.increment();
+  }
+
+  public Map<String, OperationStats> getOperationStats() {
+    return Collections.unmodifiableMap(operations);
+  }
+
+  public Map<String, OperationStats> getConnectorStats() {
+    return Collections.unmodifiableMap(connectors);
+  }
+
+  @Override
+  public int getRequestsInFlight() {
+    return requestsInFlight.get();
+  }
+
+  @Override
+  public long getBytesUploaded() {
+    return bytesUploaded.sum();
+  }
+
+  @Override
+  public double getUploadThroughputBytesPerSecond() {
+    long nanos = uploadNanos.sum();
+    return nanos == 0 ? 0 : bytesUploaded.sum() * 1e9 / nanos;
+  }
+
+  @Override
+  public long getRetryCount() {
+    return retryCount.sum();
+  }
+
+  @Override
+  public long getRateLimitedCount() {
+    return rateLimitedCount.sum();
+  }
+
+  @Override
+  public long getUploadBytesInFlight() {
+    return UploadMemoryBudget.getShared().getBytesInFlight();
+  }
+
+  @Override
+  public double getUploadMemoryBudgetUtilization() {
+    return UploadMemoryBudget.getShared().getUtilization();
+  }
+
+  @Override
+  public long getUploadMemoryBudgetWaitCount() {
+    return UploadMemoryBudget.getShared().getWaitCount();
+  }
+
+  private OperationStats newStats(String type, String name) {
+    OperationStats stats = new OperationStats();
+    register(stats, type + ",name=" + ObjectName.quote(name));
+    return stats;
+  }
+
+  private void register(Object bean, String properties) {
+    if (!jmxEnabled) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+      try {
+        server.registerMBean(bean, name);
+      } catch (InstanceAlreadyExistsException e) {
+        // left over by a previous deployment of the connector: the new one takes over
+        server.unregisterMBean(name);
+        server.registerMBean(bean, name);
+      }
+    } catch (Exception | LinkageError e) {
+      LOGGER.warn("Unable to register JMX bean {}: {}", properties, e.toString());
+    }
+  }
+}
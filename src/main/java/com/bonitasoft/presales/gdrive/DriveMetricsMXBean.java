@@ -0,0 +1,28 @@
+package com.bonitasoft.presales.gdrive;
+
+/** JMX view of the Drive calls made by the connectors of the JVM. */
+public interface DriveMetricsMXBean {
+
+  /** Drive requests currently being executed. */
+  int getRequestsInFlight();
+
+  long getBytesUploaded();
+
+  /** Average upload throughput, uploaded bytes divided by the time spent uploading them. */
+  double getUploadThroughputBytesPerSecond();
+
+  /** Drive calls that failed and were attempted again. */
+  long getRetryCount();
+
+  /** Drive calls rejected because of a rate limit (429 or 403 rate limit exceeded). */
+  long getRateLimitedCount();
+
+  /** Document content held in memory by running uploads, see {@link UploadMemoryBudget}. */
+  long getUploadBytesInFlight();
+
+  /** Share of the upload memory budget in use, 0 when the budget is disabled. */
+  double getUploadMemoryBudgetUtilization();
+
+  /** Uploads that waited for the memory budget before loading their content. */
+  long getUploadMemoryBudgetWaitCount();
+}
@@ -0,0 +1,227 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.services.drive.Drive;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JVM-wide cache of {@link Drive} clients, keyed by a fingerprint of the service account
+ * credentials and the requested scopes.
+ *
+ * <p>Building a client means parsing the credentials and wiring a transport, which is most of the
+ * cost of a short connector execution. Cached clients are evicted when they stay unused longer than
+ * the idle timeout (system property {@value #IDLE_TIMEOUT_PROPERTY}, in seconds) or when new
+ * credentials are registered for the same service account. The HTTP transports no longer used by a
+ * cached client or a {@link ServiceAccountPool} are closed after the same idle timeout. A client
+ * leased by a running execution with {@link #acquire} is not evicted as idle, and its transport is
+ * kept open until the lease is closed, however long the execution.
+ */
+public class DriveServiceRegistry {
+
+  static final String IDLE_TIMEOUT_PROPERTY = "gdrive.client.idleTimeoutSeconds";
+  static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30 * 60L;
+
+  private static final DriveServiceRegistry INSTANCE =
+      new DriveServiceRegistry(
+          Duration.ofSeconds(Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_SECONDS)));
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final Map<String, CachedService> services = new ConcurrentHashMap<>();
+  private final Duration idleTimeout;
+
+  DriveServiceRegistry(Duration idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  public static DriveServiceRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a cached {@link Drive} client for the given service account credentials, building it on
+   * first use.
+   */
+  public Drive getDriveService(String credentialsJson, Collection<String> scopes)
+      throws IOException, GeneralSecurityException {
+    return getDriveService(credentialsJson, scopes, DriveTransportSettings.fromSystemProperties());
+  }
+
+  /** Same as {@link #getDriveService(String, Collection)} with explicit transport settings. */
+  public Drive getDriveService(
+      String credentialsJson, Collection<String> scopes, DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    return cachedService(credentialsJson, scopes, transportSettings).service;
+  }
+
+  /**
+   * Leases the client of {@link #getDriveService(String, Collection, DriveTransportSettings)} until
+   * the returned lease is closed.
+   */
+  public Lease acquire(
+      String credentialsJson, Collection<String> scopes, DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    CachedService cached = cachedService(credentialsJson, scopes, transportSettings);
+    DriveTransportSettings.TransportLease transportLease = transportSettings.leaseTransport();
+    cached.leases.incrementAndGet();
+    return new Lease(cached, transportLease);
+  }
+
+  private CachedService cachedService(
+      String credentialsJson, Collection<String> scopes, DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    evictIdle();
+    String key = fingerprint(credentialsJson, scopes) + "/" + transportSettings;
+    CachedService cached = services.get(key);
+    if (cached == null) {
+      synchronized (this) {
+        cached = services.get(key);
+        if (cached == null) {
+          cached = create(key, credentialsJson, scopes, transportSettings);
+        }
+      }
+    }
+    cached.touch();
+    return cached;
+  }
+
+  private CachedService create(
+      String key,
+      String credentialsJson,
+      Collection<String> scopes,
+      DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    ServiceAccountCredentials credentials =
+        GDriveUtils.parseServiceAccountCredentials(credentialsJson);
+    Drive service =
+        new GDriveUtils(transportSettings).getDriveServiceViaServiceAccount(credentials, scopes);
+    String clientEmail = credentials.getClientEmail();
+    String credentialsHash = fingerprint(credentialsJson, Collections.emptyList());
+    // credentials rotated for the same account: drop the clients built with the old ones
+    services
+        .values()
+        .removeIf(
+            cached -> {
+              boolean stale =
+                  Objects.equals(cached.clientEmail, clientEmail)
+                      && !cached.credentialsHash.equals(credentialsHash);
+              if (stale) {
+                logger.info(
+                    "evicting drive client built with previous credentials of [{}]", clientEmail);
+              }
+              return stale;
+            });
+    CachedService cached =
+        new CachedService(service, clientEmail, credentialsHash, transportSettings);
+    services.put(key, cached);
+    return cached;
+  }
+
+  void evictIdle() {
+    long now = System.nanoTime();
+    services
+        .values()
+        .removeIf(
+            cached -> cached.leases.get() == 0 && now - cached.lastAccess > idleTimeout.toNanos());
+    ServiceAccountPool.evictIdle(idleTimeout);
+    List<DriveTransportSettings> inUse = new ArrayList<>();
+    for (CachedService cached : services.values()) {
+      inUse.add(cached.transportSettings);
+    }
+    inUse.addAll(ServiceAccountPool.transportSettingsInUse());
+    DriveTransportSettings.closeUnusedTransports(inUse, idleTimeout);
+  }
+
+  /** Drops every cached client. */
+  public void clear() {
+    services.clear();
+  }
+
+  int size() {
+    return services.size();
+  }
+
+  static String fingerprint(String credentialsJson, Collection<String> scopes) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(credentialsJson.getBytes(StandardCharsets.UTF_8));
+      for (String scope : new TreeSet<>(scopes)) {
+        digest.update((byte) 0);
+        digest.update(scope.getBytes(StandardCharsets.UTF_8));
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class CachedService {
+    final Drive service;
+    final String clientEmail;
+    final String credentialsHash;
+    final DriveTransportSettings transportSettings;
+    final AtomicInteger leases = new AtomicInteger();
+    volatile long lastAccess = System.nanoTime();
+
+    CachedService(
+        Drive service,
+        String clientEmail,
+        String credentialsHash,
+        DriveTransportSettings transportSettings) {
+      this.service = service;
+      this.clientEmail = clientEmail;
+      this.credentialsHash = credentialsHash;
+      this.transportSettings = transportSettings;
+    }
+
+    void touch() {
+      lastAccess = System.nanoTime();
+    }
+  }
+
+  /** Client leased by a connector execution, given back on close. */
+  public static class Lease implements AutoCloseable {
+
+    private final CachedService cached;
+    private final DriveTransportSettings.TransportLease transportLease;
+    private boolean closed;
+
+    private Lease(CachedService cached, DriveTransportSettings.TransportLease transportLease) {
+      this.cached = cached;
+      this.transportLease = transportLease;
+    }
+
+    public Drive getDrive() {
+      return cached.service;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        cached.leases.decrementAndGet();
+        cached.touch();
+        transportLease.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,301 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP transport configuration used to talk to the Drive API.
+ *
+ * <p>Defaults come from system properties (see the {@code *_PROPERTY} constants) and can be
+ * overridden per connector through its inputs. Transports are shared by every client built with the
+ * same connection pool settings, so back-to-back executions reuse warm connections. Timeouts are
+ * applied to each request by {@link #withTimeouts}, they do not create another pool.
+ */
+public class DriveTransportSettings {
+
+  /** Underlying HTTP client. */
+  public enum Type {
+    /** Pooled Apache HttpClient with keep-alive, connection limits and idle eviction. */
+    APACHE,
+    /** JDK {@link java.net.HttpURLConnection}, pooling is driven by {@code http.maxConnections}. */
+    NET_HTTP
+  }
+
+  static final String TYPE_PROPERTY = "gdrive.http.transport";
+  static final String MAX_CONNECTIONS_PROPERTY = "gdrive.http.maxConnections";
+  static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "gdrive.http.maxConnectionsPerRoute";
+  static final String CONNECT_TIMEOUT_PROPERTY = "gdrive.http.connectTimeoutMillis";
+  static final String READ_TIMEOUT_PROPERTY = "gdrive.http.readTimeoutMillis";
+  static final String IDLE_CONNECTION_TIMEOUT_PROPERTY = "gdrive.http.idleConnectionTimeoutSeconds";
+
+  static final int DEFAULT_MAX_CONNECTIONS = 20;
+  static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 20_000;
+  static final int DEFAULT_READ_TIMEOUT_MILLIS = 60_000;
+  static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DriveTransportSettings.class);
+  private static final Map<String, SharedTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+  private final Type type;
+  private final int maxConnections;
+  private final int maxConnectionsPerRoute;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  private final int idleConnectionTimeoutSeconds;
+
+  public DriveTransportSettings(
+      Type type,
+      int maxConnections,
+      int maxConnectionsPerRoute,
+      int connectTimeoutMillis,
+      int readTimeoutMillis,
+      int idleConnectionTimeoutSeconds) {
+    this.type = type;
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+    this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+  }
+
+  /** Settings read from system properties, falling back to defaults. */
+  public static DriveTransportSettings fromSystemProperties() {
+    int maxConnections = Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS);
+    return new DriveTransportSettings(
+        Type.valueOf(System.getProperty(TYPE_PROPERTY, Type.APACHE.name())),
+        maxConnections,
+        // every call goes to the same host, so the per-route limit is the effective one
+        Integer.getInteger(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, maxConnections),
+        Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT_MILLIS),
+        Integer.getInteger(READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT_MILLIS),
+        Integer.getInteger(
+            IDLE_CONNECTION_TIMEOUT_PROPERTY, DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS));
+  }
+
+  /** Returns a copy of these settings where non null values replace the current ones. */
+  public DriveTransportSettings override(
+      Integer maxConnections, Integer connectTimeoutMillis, Integer readTimeoutMillis) {
+    return new DriveTransportSettings(
+        type,
+        maxConnections != null ? maxConnections : this.maxConnections,
+        maxConnections != null ? maxConnections : maxConnectionsPerRoute,
+        connectTimeoutMillis != null ? connectTimeoutMillis : this.connectTimeoutMillis,
+        readTimeoutMillis != null ? readTimeoutMillis : this.readTimeoutMillis,
+        idleConnectionTimeoutSeconds);
+  }
+
+  /**
+   * Returns the transport shared by all clients using the same connection pool settings, creating
+   * it if needed.
+   */
+  public HttpTransport getTransport() throws GeneralSecurityException, IOException {
+    String key = transportKey();
+    SharedTransport shared = TRANSPORTS.get(key);
+    if (shared == null) {
+      synchronized (TRANSPORTS) {
+        shared = sharedTransport(key);
+      }
+    }
+    shared.lastAcquired = System.nanoTime();
+    return shared.transport;
+  }
+
+  /**
+   * Same as {@link #getTransport()}, the transport is never closed as unused until the returned
+   * lease is closed, for the duration of an execution using a client built on it.
+   */
+  TransportLease leaseTransport() throws GeneralSecurityException, IOException {
+    synchronized (TRANSPORTS) {
+      SharedTransport shared = sharedTransport(transportKey());
+      shared.leases++;
+      shared.lastAcquired = System.nanoTime();
+      return new TransportLease(shared);
+    }
+  }
+
+  private SharedTransport sharedTransport(String key) throws GeneralSecurityException, IOException {
+    SharedTransport shared = TRANSPORTS.get(key);
+    if (shared == null) {
+      shared = new SharedTransport(createTransport());
+      TRANSPORTS.put(key, shared);
+    }
+    return shared;
+  }
+
+  /** Settings the connection pool depends on, timeouts are set per request. */
+  String transportKey() {
+    return String.format(
+        "%s/%d/%d/%d", type, maxConnections, maxConnectionsPerRoute, idleConnectionTimeoutSeconds);
+  }
+
+  /**
+   * Shuts down the transports not handed out for longer than the idle timeout, not leased by a
+   * running execution and not used by any of the given settings, those of the clients still cached.
+   */
+  static void closeUnusedTransports(
+      Collection<DriveTransportSettings> inUse, Duration idleTimeout) {
+    Set<String> inUseKeys = new HashSet<>();
+    for (DriveTransportSettings settings : inUse) {
+      inUseKeys.add(settings.transportKey());
+    }
+    long now = System.nanoTime();
+    synchronized (TRANSPORTS) {
+      TRANSPORTS
+          .entrySet()
+          .removeIf(
+              entry -> {
+                boolean unused =
+                    !inUseKeys.contains(entry.getKey())
+                        && entry.getValue().leases == 0
+                        && now - entry.getValue().lastAcquired > idleTimeout.toNanos();
+                if (unused) {
+                  LOGGER.info("closing unused HTTP transport [{}]", entry.getKey());
+                  try {
+                    entry.getValue().transport.shutdown();
+                  } catch (IOException e) {
+                    LOGGER.warn("failed to close HTTP transport [{}]", entry.getKey(), e);
+                  }
+                }
+                return unused;
+              });
+    }
+  }
+
+  static int transportCount() {
+    return TRANSPORTS.size();
+  }
+
+  HttpTransport createTransport() throws GeneralSecurityException, IOException {
+    if (type == Type.NET_HTTP) {
+      return GoogleNetHttpTransport.newTrustedTransport();
+    }
+    return new ApacheHttpTransport(
+        ApacheHttpTransport.newDefaultHttpClientBuilder()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerRoute)
+            .evictExpiredConnections()
+            .evictIdleConnections(idleConnectionTimeoutSeconds, TimeUnit.SECONDS)
+            .build());
+  }
+
+  /** Wraps the given initializer so that every request gets the configured timeouts. */
+  public HttpRequestInitializer withTimeouts(HttpRequestInitializer delegate) {
+    return request -> {
+      delegate.initialize(request);
+      request.setConnectTimeout(connectTimeoutMillis);
+      request.setReadTimeout(readTimeoutMillis);
+    };
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public int getIdleConnectionTimeoutSeconds() {
+    return idleConnectionTimeoutSeconds;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    DriveTransportSettings that = (DriveTransportSettings) o;
+    return maxConnections == that.maxConnections
+        && maxConnectionsPerRoute == that.maxConnectionsPerRoute
+        && connectTimeoutMillis == that.connectTimeoutMillis
+        && readTimeoutMillis == that.readTimeoutMillis
+        && idleConnectionTimeoutSeconds == that.idleConnectionTimeoutSeconds
+        && type == that.type;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        type,
+        maxConnections,
+        maxConnectionsPerRoute,
+        connectTimeoutMillis,
+        readTimeoutMillis,
+        idleConnectionTimeoutSeconds);
+  }
+
+  private static class SharedTransport {
+    final HttpTransport transport;
+    volatile long lastAcquired = System.nanoTime();
+    /** Leases not closed yet, guarded by {@code TRANSPORTS}. */
+    int leases;
+
+    SharedTransport(HttpTransport transport) {
+      this.transport = transport;
+    }
+  }
+
+  /** Transport kept open for an execution, given back on close. */
+  static class TransportLease implements AutoCloseable {
+
+    private final SharedTransport shared;
+    private boolean closed;
+
+    private TransportLease(SharedTransport shared) {
+      this.shared = shared;
+    }
+
+    @Override
+    public void close() {
+      synchronized (TRANSPORTS) {
+        if (!closed) {
+          closed = true;
+          shared.leases--;
+          shared.lastAcquired = System.nanoTime();
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s[maxConnections=%d, maxConnectionsPerRoute=%d, connectTimeout=%dms, readTimeout=%dms,"
+            + " idleConnectionTimeout=%ds]",
+        type,
+        maxConnections,
+        maxConnectionsPerRoute,
+        connectTimeoutMillis,
+        readTimeoutMillis,
+        idleConnectionTimeoutSeconds);
+  }
+}
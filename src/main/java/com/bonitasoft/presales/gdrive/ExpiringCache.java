@@ -0,0 +1,82 @@
+package com.bonitasoft.presales.gdrive;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Small thread-safe LRU cache whose entries expire after a fixed time to live.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringCache<K, V> {
+
+  private final int maxSize;
+  private final long timeToLiveNanos;
+  private final LongSupplier nanoClock;
+  private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+  public ExpiringCache(int maxSize, Duration timeToLive) {
+    this(maxSize, timeToLive, System::nanoTime);
+  }
+
+  ExpiringCache(int maxSize, Duration timeToLive, LongSupplier nanoClock) {
+    this.maxSize = maxSize;
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.nanoClock = nanoClock;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            return size() > ExpiringCache.this.maxSize;
+          }
+        };
+  }
+
+  /** Returns the cached value, {@code null} when missing or expired. */
+  public synchronized V get(K key) {
+    CacheEntry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (nanoClock.getAsLong() - entry.createdAt > timeToLiveNanos) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.value;
+  }
+
+  public synchronized void put(K key, V value) {
+    entries.put(key, new CacheEntry<>(value, nanoClock.getAsLong()));
+  }
+
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+
+  /** Removes every entry whose key matches. */
+  public synchronized void removeIf(Predicate<K> keyPredicate) {
+    entries.keySet().removeIf(keyPredicate);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private static class CacheEntry<V> {
+    final V value;
+    final long createdAt;
+
+    CacheEntry(V value, long createdAt) {
+      this.value = value;
+      this.createdAt = createdAt;
+    }
+  }
+}
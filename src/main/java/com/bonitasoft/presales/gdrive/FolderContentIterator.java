@@ -0,0 +1,123 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lazy iterator over every page of a {@code files.list} query.
+ *
+ * <p>The next page is requested in the background as soon as the current one is handed out, so at
+ * most two pages are held in memory, the current one and the next one. Large folders are thus
+ * scanned in constant memory without waiting on each round trip. The prefetches of all iterators
+ * share {@value #PREFETCH_THREADS} daemon threads. Listing failures are rethrown as {@link
+ * UncheckedIOException}.
+ */
+public class FolderContentIterator implements Iterator<File>, AutoCloseable {
+
+  static final int PREFETCH_THREADS = 8;
+
+  private static final ExecutorService PREFETCH_EXECUTOR = newPrefetchExecutor();
+
+  private final Drive.Files.List query;
+  private final RetryPolicy retryPolicy;
+  private Iterator<File> currentPage = Collections.emptyIterator();
+  private CompletableFuture<FileList> nextPage;
+
+  FolderContentIterator(Drive.Files.List query, RetryPolicy retryPolicy) {
+    this.query = query;
+    this.retryPolicy = retryPolicy;
+    this.nextPage = fetch(null);
+  }
+
+  private static ExecutorService newPrefetchExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            PREFETCH_THREADS,
+            PREFETCH_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "gdrive-list-prefetch");
+              thread.setDaemon(true);
+              return thread;
+            });
+    // no thread is kept while nothing is listed
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private CompletableFuture<FileList> fetch(String pageToken) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            // pages are fetched one after the other, the query is never shared between threads
+            query.setPageToken(pageToken);
+            return retryPolicy.execute("list folder", true, query::execute);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        PREFETCH_EXECUTOR);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!currentPage.hasNext()) {
+      if (nextPage == null) {
+        return false;
+      }
+      FileList page = await(nextPage);
+      String nextPageToken = page.getNextPageToken();
+      nextPage = nextPageToken == null ? null : fetch(nextPageToken);
+      currentPage =
+          page.getFiles() == null ? Collections.emptyIterator() : page.getFiles().iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public File next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return currentPage.next();
+  }
+
+  private static FileList await(CompletableFuture<FileList> page) {
+    try {
+      return page.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new InterruptedIOException("interrupted while listing"));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw (UncheckedIOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** Stops listing, a page being prefetched is discarded. */
+  @Override
+  public void close() {
+    if (nextPage != null) {
+      nextPage.cancel(true);
+      nextPage = null;
+    }
+    currentPage = Collections.emptyIterator();
+  }
+}
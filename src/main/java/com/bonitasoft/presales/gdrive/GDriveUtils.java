@@ -5,43 +5,150 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.AbstractInputStreamContent;
 import com.google.api.client.http.FileContent;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.InputStreamContent;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveRequest;
 import com.google.api.services.drive.DriveScopes;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
 import com.google.api.services.drive.model.DriveList;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.Permission;
 import com.google.auth.http.HttpCredentialsAdapter;
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class GDriveUtils {
   private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-  private NetHttpTransport transport;
-  Logger logger = LoggerFactory.getLogger(this.getClass());
+  static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+  /** Largest page size accepted by {@code files.list}. */
+  static final int MAX_PAGE_SIZE = 1000;
+
+  public static final String DEFAULT_FOLDER_CONTENT_FIELDS =
+      "id,name,mimeType,webViewLink,capabilities/canAddChildren";
+  /** Fields returned for an uploaded file, the fewer the smaller the response. */
+  public static final String DEFAULT_CREATED_FILE_FIELDS = "id, webViewLink";
+  /** Drive rejects batches of more than 100 requests. */
+  static final int MAX_BATCH_SIZE = 100;
+
+  static final int MAX_NAMES_PER_QUERY = 50;
+  /** Largest content that fits in a byte array. */
+  static final long MAX_CONTENT_SIZE = Integer.MAX_VALUE - 8;
+
+  static final String FOLDER_CACHE_MAX_SIZE_PROPERTY = "gdrive.folderCache.maxSize";
+  static final String FOLDER_CACHE_TTL_PROPERTY = "gdrive.folderCache.ttlSeconds";
+  /** Folder ids resolved by path, keyed by drive id, parent folder id and folder name. */
+  static final ExpiringCache<String, String> FOLDER_IDS =
+      new ExpiringCache<>(
+          Integer.getInteger(FOLDER_CACHE_MAX_SIZE_PROPERTY, 10_000),
+          Duration.ofSeconds(Long.getLong(FOLDER_CACHE_TTL_PROPERTY, 600)));
+
+  static final String COPY_CACHE_MAX_SIZE_PROPERTY = "gdrive.copyCache.maxSize";
+  static final String COPY_CACHE_TTL_PROPERTY = "gdrive.copyCache.ttlSeconds";
+  /** Id of a file recently uploaded, keyed by the MD5 of its content. */
+  static final ExpiringCache<String, String> UPLOADED_CONTENT =
+      new ExpiringCache<>(
+          Integer.getInteger(COPY_CACHE_MAX_SIZE_PROPERTY, 10_000),
+          Duration.ofSeconds(Long.getLong(COPY_CACHE_TTL_PROPERTY, 3600)));
 
-  private NetHttpTransport getTransport() throws GeneralSecurityException, IOException {
-    if (transport == null) {
-      this.transport = GoogleNetHttpTransport.newTrustedTransport();
+  private static final Object[] FOLDER_LOCKS = new Object[64];
+
+  static {
+    for (int i = 0; i < FOLDER_LOCKS.length; i++) {
+      FOLDER_LOCKS[i] = new Object();
     }
-    return transport;
+  }
+
+  private final DriveTransportSettings transportSettings;
+  private UploadSettings uploadSettings = UploadSettings.fromSystemProperties();
+  private DownloadSettings downloadSettings = DownloadSettings.fromSystemProperties();
+  private RetryPolicy retryPolicy = RetryPolicy.fromSystemProperties();
+  RateLimiter rateLimiter = RateLimiter.getShared();
+  Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  public GDriveUtils() {
+    this(DriveTransportSettings.fromSystemProperties());
+  }
+
+  public GDriveUtils(DriveTransportSettings transportSettings) {
+    this.transportSettings = transportSettings;
+  }
+
+  public DriveTransportSettings getTransportSettings() {
+    return transportSettings;
+  }
+
+  public UploadSettings getUploadSettings() {
+    return uploadSettings;
+  }
+
+  public void setUploadSettings(UploadSettings uploadSettings) {
+    this.uploadSettings = uploadSettings;
+  }
+
+  public DownloadSettings getDownloadSettings() {
+    return downloadSettings;
+  }
+
+  public void setDownloadSettings(DownloadSettings downloadSettings) {
+    this.downloadSettings = downloadSettings;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  private HttpTransport getTransport() throws GeneralSecurityException, IOException {
+    return transportSettings.getTransport();
+  }
+
+  private HttpRequestInitializer initializer(HttpRequestInitializer credentials) {
+    return transportSettings.withTimeouts(
+        rateLimiter.throttling(ResumableUploads.withRetries(credentials)));
   }
 
   Drive getDriveServiceViaOAuth(
@@ -52,7 +159,7 @@ public class GDriveUtils {
       throws IOException, GeneralSecurityException {
     Reader reader = new FileReader(credentialsFilePath);
     GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, reader);
-    final NetHttpTransport transport = getTransport();
+    final HttpTransport transport = getTransport();
     GoogleAuthorizationCodeFlow flow =
         new GoogleAuthorizationCodeFlow.Builder(transport, JSON_FACTORY, clientSecrets, scopes)
             .setDataStoreFactory(new FileDataStoreFactory(tokenFolderStore))
@@ -60,7 +167,7 @@ public class GDriveUtils {
             .build();
     Credential credentials =
         new AuthorizationCodeInstalledApp(flow, new LocalServerReceiver()).authorize("user");
-    return new Drive.Builder(transport, JSON_FACTORY, credentials)
+    return new Drive.Builder(transport, JSON_FACTORY, initializer(credentials))
         .setApplicationName(applicationName)
         .build();
   }
@@ -68,16 +175,39 @@ public class GDriveUtils {
   public Drive getDriveServiceViaServiceAccount(
       java.io.File credentialsFilePath, Collection<String> scopes)
       throws IOException, GeneralSecurityException {
-    final InputStream credentialsStream = new FileInputStream(credentialsFilePath);
-    final ServiceAccountCredentials serviceAccountCredentials =
-        ServiceAccountCredentials.fromStream(credentialsStream);
+    try (InputStream credentialsStream = new FileInputStream(credentialsFilePath)) {
+      return getDriveServiceViaServiceAccount(
+          ServiceAccountCredentials.fromStream(credentialsStream), scopes);
+    }
+  }
+
+  public Drive getDriveServiceViaServiceAccount(String credentialsJson, Collection<String> scopes)
+      throws IOException, GeneralSecurityException {
+    return getDriveServiceViaServiceAccount(
+        parseServiceAccountCredentials(credentialsJson), scopes);
+  }
+
+  public Drive getDriveServiceViaServiceAccount(
+      ServiceAccountCredentials serviceAccountCredentials, Collection<String> scopes)
+      throws IOException, GeneralSecurityException {
+    return getDriveServiceViaServiceAccount(
+        serviceAccountCredentials, scopes, UnaryOperator.identity());
+  }
+
+  /** Client whose request initializer is wrapped by the given decorator, as done by the pool. */
+  Drive getDriveServiceViaServiceAccount(
+      ServiceAccountCredentials serviceAccountCredentials,
+      Collection<String> scopes,
+      UnaryOperator<HttpRequestInitializer> decorator)
+      throws IOException, GeneralSecurityException {
     HttpRequestInitializer requestInitializer =
         new HttpCredentialsAdapter(
             serviceAccountCredentials
                 .createScoped(scopes)
                 .createDelegated(serviceAccountCredentials.getClientEmail()));
     Drive service =
-        new Drive.Builder(getTransport(), JSON_FACTORY, requestInitializer)
+        new Drive.Builder(
+                getTransport(), JSON_FACTORY, decorator.apply(initializer(requestInitializer)))
             .setApplicationName(serviceAccountCredentials.getProjectId())
             .build();
 
@@ -88,17 +218,23 @@ public class GDriveUtils {
     return service;
   }
 
+  static ServiceAccountCredentials parseServiceAccountCredentials(String credentialsJson)
+      throws IOException {
+    return ServiceAccountCredentials.fromStream(
+        new ByteArrayInputStream(credentialsJson.getBytes(StandardCharsets.UTF_8)));
+  }
+
   List<com.google.api.services.drive.model.Drive> listDrives(Drive service) throws IOException {
     List<com.google.api.services.drive.model.Drive> drivesFound = new ArrayList<>();
     String pageToken = null;
     do {
-      DriveList result =
+      Drive.Drives.List query =
           service
               .drives()
               .list()
               .setFields("nextPageToken, drives(id, name)")
-              .setPageToken(pageToken)
-              .execute();
+              .setPageToken(pageToken);
+      DriveList result = retryPolicy.execute("list drives", true, query::execute);
       drivesFound.addAll(result.getDrives());
       for (com.google.api.services.drive.model.Drive drive : result.getDrives()) {
         logger.info("Found drive : {} ({}) ", drive.getName(), drive.getId());
@@ -110,6 +246,339 @@ public class GDriveUtils {
 
   public File createFolder(Drive service, String driveId, String parentFolderId, String folderName)
       throws IOException {
+    return createFolder(service, driveId, parentFolderId, folderName, null);
+  }
+
+  /** Same as above, tagging the folder with the given app properties when not {@code null}. */
+  public File createFolder(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String folderName,
+      Map<String, String> appProperties)
+      throws IOException {
+    File fileMetadata = folderMetadata(driveId, parentFolderId, folderName);
+    fileMetadata.setAppProperties(appProperties);
+    Drive.Files.Create create =
+        service.files().create(fileMetadata).setSupportsAllDrives(true).setFields("id");
+    File file = retryPolicy.execute("create folder", false, create::execute);
+    logger.info(
+        "create folder in drive [{}] with name [{}] and id [{}]",
+        driveId,
+        folderName,
+        file.getId());
+    return file;
+  }
+
+  /**
+   * Returns the id of the folder at the given path, such as {@code Customers/42/2024}, relative to
+   * the parent folder (drive root when {@code null}). Missing folders are created, resolved folder
+   * ids are cached so that known parents cost no API call.
+   */
+  public String resolveOrCreatePath(
+      Drive service, String driveId, String parentFolderId, String folderPath) throws IOException {
+    try {
+      return resolvePath(service, driveId, parentFolderId, folderPath);
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() != 404) {
+        throw e;
+      }
+      // a cached folder has been deleted in the meantime
+      logger.info("folder cache of drive [{}] is stale, resolving [{}] again", driveId, folderPath);
+      FOLDER_IDS.removeIf(key -> key.startsWith(driveId + "/"));
+      return resolvePath(service, driveId, parentFolderId, folderPath);
+    }
+  }
+
+  /** Operation run in a folder resolved from its path, see {@link #inFolderPath}. */
+  public interface FolderOperation<E extends Exception> {
+    void run(String folderId) throws IOException, E;
+  }
+
+  /**
+   * Resolves the folder path as {@link #resolveOrCreatePath} does and runs the operation in the
+   * folder. A resolved path costs no API call, so a folder deleted on Drive is only noticed by the
+   * operation: when it fails because the folder is not found, the path is dropped from the cache,
+   * resolved again and the operation run once more. The operation must not have created anything
+   * before it fails, which holds when the folder is missing.
+   */
+  public <E extends Exception> void inFolderPath(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String folderPath,
+      FolderOperation<E> operation)
+      throws IOException, E {
+    String folderId = resolveOrCreatePath(service, driveId, parentFolderId, folderPath);
+    try {
+      operation.run(folderId);
+    } catch (HttpResponseException e) {
+      if (!isNotFound(e, folderId)) {
+        throw e;
+      }
+      logger.info(
+          "cached folder [{}] of path [{}] not found, resolving the path again",
+          folderId,
+          folderPath);
+      invalidatePath(driveId, parentFolderId, folderPath);
+      operation.run(resolveOrCreatePath(service, driveId, parentFolderId, folderPath));
+    }
+  }
+
+  /** Whether the error is Drive reporting the given file or folder as not found. */
+  static boolean isNotFound(HttpResponseException e, String fileId) {
+    return e.getStatusCode() == 404 && String.valueOf(e.getMessage()).contains(fileId);
+  }
+
+  /** Drops the cached folder ids of the path, from its first segment down to its last. */
+  static void invalidatePath(String driveId, String parentFolderId, String folderPath) {
+    String currentFolderId = parentFolderId == null ? driveId : parentFolderId;
+    for (String folderName : splitPath(folderPath)) {
+      String key = driveId + "/" + currentFolderId + "/" + folderName;
+      currentFolderId = FOLDER_IDS.get(key);
+      FOLDER_IDS.remove(key);
+      if (currentFolderId == null) {
+        return;
+      }
+    }
+  }
+
+  private String resolvePath(
+      Drive service, String driveId, String parentFolderId, String folderPath) throws IOException {
+    String currentFolderId = parentFolderId == null ? driveId : parentFolderId;
+    for (String folderName : splitPath(folderPath)) {
+      String key = driveId + "/" + currentFolderId + "/" + folderName;
+      String folderId = FOLDER_IDS.get(key);
+      if (folderId == null) {
+        // avoid creating the same folder twice from concurrent executions
+        synchronized (FOLDER_LOCKS[Math.floorMod(key.hashCode(), FOLDER_LOCKS.length)]) {
+          folderId = FOLDER_IDS.get(key);
+          if (folderId == null) {
+            folderId = findFolder(service, driveId, currentFolderId, folderName);
+            if (folderId == null) {
+              folderId = createFolder(service, driveId, currentFolderId, folderName).getId();
+            }
+            FOLDER_IDS.put(key, folderId);
+          }
+        }
+      }
+      currentFolderId = folderId;
+    }
+    return currentFolderId;
+  }
+
+  static List<String> splitPath(String folderPath) {
+    List<String> segments = new ArrayList<>();
+    for (String segment : folderPath.split("/")) {
+      if (!segment.trim().isEmpty()) {
+        segments.add(segment.trim());
+      }
+    }
+    return segments;
+  }
+
+  /** Returns the id of the folder with the given name under the parent, {@code null} if none. */
+  String findFolder(Drive service, String driveId, String parentFolderId, String folderName)
+      throws IOException {
+    Drive.Files.List query =
+        service
+            .files()
+            .list()
+            .setSupportsAllDrives(true)
+            .setIncludeItemsFromAllDrives(true)
+            .setCorpora("drive")
+            .setDriveId(driveId)
+            .setQ(
+                String.format(
+                    "'%s' in parents and name = '%s' and mimeType = '%s' and trashed = false",
+                    escapeQueryValue(parentFolderId),
+                    escapeQueryValue(folderName),
+                    FOLDER_MIME_TYPE))
+            .setPageSize(1)
+            .setFields("files(id)");
+    List<File> files = retryPolicy.execute("find folder", true, query::execute).getFiles();
+    return files == null || files.isEmpty() ? null : files.get(0).getId();
+  }
+
+  /**
+   * Returns the non trashed files of the folder having one of the given names, keyed by name. When
+   * several files share a name, the most recently modified one is returned.
+   *
+   * @param fileFields field mask applied to each file, {@code name} is always requested
+   */
+  public Map<String, File> findFilesByName(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      Collection<String> fileNames,
+      String fileFields)
+      throws IOException {
+    String parentFolder = parentFolderId == null ? driveId : parentFolderId;
+    Map<String, File> filesByName = new HashMap<>();
+    List<String> names = new ArrayList<>(fileNames);
+    // keep the query well under the length limit of files.list
+    for (int from = 0; from < names.size(); from += MAX_NAMES_PER_QUERY) {
+      StringBuilder nameClause = new StringBuilder();
+      for (String name : names.subList(from, Math.min(names.size(), from + MAX_NAMES_PER_QUERY))) {
+        if (nameClause.length() > 0) {
+          nameClause.append(" or ");
+        }
+        nameClause.append("name = '").append(escapeQueryValue(name)).append("'");
+      }
+      String pageToken = null;
+      do {
+        Drive.Files.List query =
+            service
+                .files()
+                .list()
+                .setSupportsAllDrives(true)
+                .setIncludeItemsFromAllDrives(true)
+                .setCorpora("drive")
+                .setDriveId(driveId)
+                .setQ(
+                    String.format(
+                        "'%s' in parents and (%s) and mimeType != '%s' and trashed = false",
+                        escapeQueryValue(parentFolder), nameClause, FOLDER_MIME_TYPE))
+                .setOrderBy("modifiedTime desc")
+                .setPageSize(MAX_PAGE_SIZE)
+                .setFields("nextPageToken,files(name," + fileFields + ")")
+                .setPageToken(pageToken);
+        FileList result = retryPolicy.execute("find files", true, query::execute);
+        if (result.getFiles() != null) {
+          for (File file : result.getFiles()) {
+            filesByName.putIfAbsent(file.getName(), file);
+          }
+        }
+        pageToken = result.getNextPageToken();
+      } while (pageToken != null);
+    }
+    return filesByName;
+  }
+
+  /**
+   * Returns the non trashed files and folders of the drive tagged with all the given app
+   * properties, with one query whatever the folders they are in.
+   *
+   * @param fileFields field mask applied to each file, {@code id, name, mimeType, parents} and
+   *     {@code appProperties} are always requested
+   */
+  public List<File> findFilesByAppProperties(
+      Drive service, String driveId, Map<String, String> appProperties, String fileFields)
+      throws IOException {
+    String q = appPropertiesQuery(appProperties) + "trashed = false";
+    List<File> files = new ArrayList<>();
+    String pageToken = null;
+    do {
+      Drive.Files.List query =
+          service
+              .files()
+              .list()
+              .setSupportsAllDrives(true)
+              .setIncludeItemsFromAllDrives(true)
+              .setCorpora("drive")
+              .setDriveId(driveId)
+              .setQ(q)
+              .setPageSize(MAX_PAGE_SIZE)
+              .setFields(
+                  "nextPageToken,files(id,name,mimeType,parents,appProperties," + fileFields + ")")
+              .setPageToken(pageToken);
+      FileList result = retryPolicy.execute("find tagged files", true, query::execute);
+      if (result.getFiles() != null) {
+        files.addAll(result.getFiles());
+      }
+      pageToken = result.getNextPageToken();
+    } while (pageToken != null);
+    logger.info(
+        "found {} files in drive [{}] tagged with {}", files.size(), driveId, appProperties);
+    return files;
+  }
+
+  private static String appPropertiesQuery(Map<String, String> appProperties) {
+    StringBuilder q = new StringBuilder();
+    for (Map.Entry<String, String> property : appProperties.entrySet()) {
+      q.append(
+          String.format(
+              "appProperties has { key='%s' and value='%s' } and ",
+              escapeQueryValue(property.getKey()), escapeQueryValue(property.getValue())));
+    }
+    return q.toString();
+  }
+
+  /**
+   * Returns one page of the non trashed folders of the drive tagged with all the given app
+   * properties and created before the given time, oldest first. Both criteria are optional. The
+   * {@code nextPageToken} of the returned list resumes the query where the page ends, even when the
+   * folders of the page have been deleted in between.
+   */
+  public FileList findFolders(
+      Drive service,
+      String driveId,
+      Map<String, String> appProperties,
+      DateTime createdBefore,
+      String pageToken,
+      int pageSize)
+      throws IOException {
+    StringBuilder q = new StringBuilder();
+    if (appProperties != null) {
+      q.append(appPropertiesQuery(appProperties));
+    }
+    if (createdBefore != null) {
+      q.append(String.format("createdTime < '%s' and ", createdBefore.toStringRfc3339()));
+    }
+    q.append(String.format("mimeType = '%s' and trashed = false", FOLDER_MIME_TYPE));
+    Drive.Files.List query =
+        service
+            .files()
+            .list()
+            .setSupportsAllDrives(true)
+            .setIncludeItemsFromAllDrives(true)
+            .setCorpora("drive")
+            .setDriveId(driveId)
+            .setQ(q.toString())
+            .setOrderBy("createdTime")
+            .setPageSize(Math.min(pageSize, MAX_PAGE_SIZE))
+            .setFields("nextPageToken,files(id,name,createdTime)")
+            .setPageToken(pageToken);
+    return retryPolicy.execute("find folders", true, query::execute);
+  }
+
+  /** Whether the folder directly holds a non trashed file or folder created since the date. */
+  public boolean hasFilesCreatedSince(Drive service, String folderId, DateTime createdSince)
+      throws IOException {
+    Drive.Files.List query =
+        service
+            .files()
+            .list()
+            .setSupportsAllDrives(true)
+            .setIncludeItemsFromAllDrives(true)
+            .setQ(
+                String.format(
+                    "'%s' in parents and createdTime >= '%s' and trashed = false",
+                    escapeQueryValue(folderId), createdSince.toStringRfc3339()))
+            .setPageSize(1)
+            .setFields("files(id)");
+    FileList result = retryPolicy.execute("find recent files", true, query::execute);
+    return result.getFiles() != null && !result.getFiles().isEmpty();
+  }
+
+  /** Hex encoded MD5 of the content, as reported by Drive in {@code md5Checksum}. */
+  public static String md5Hex(byte[] content) {
+    try {
+      StringBuilder hex = new StringBuilder(32);
+      for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  static String escapeQueryValue(String value) {
+    return value.replace("\\", "\\\\").replace("'", "\\'");
+  }
+
+  private static File folderMetadata(String driveId, String parentFolderId, String folderName) {
     String parentFolder = driveId;
     if (parentFolderId != null) {
       parentFolder = parentFolderId;
@@ -118,15 +587,189 @@ public class GDriveUtils {
     fileMetadata.setName(folderName);
     fileMetadata.setDriveId(driveId);
     fileMetadata.setParents(Collections.singletonList(parentFolder));
-    fileMetadata.setMimeType("application/vnd.google-apps.folder");
-    File file =
-        service.files().create(fileMetadata).setSupportsAllDrives(true).setFields("id").execute();
+    fileMetadata.setMimeType(FOLDER_MIME_TYPE);
+    return fileMetadata;
+  }
+
+  /**
+   * Creates several folders under the same parent with batched requests. Results are in the order
+   * of the folder names, keyed by folder name.
+   */
+  public List<BatchResult<File>> createFolders(
+      Drive service, String driveId, String parentFolderId, List<String> folderNames)
+      throws IOException {
+    List<DriveRequest<File>> requests = new ArrayList<>();
+    for (String folderName : folderNames) {
+      requests.add(
+          service
+              .files()
+              .create(folderMetadata(driveId, parentFolderId, folderName))
+              .setSupportsAllDrives(true)
+              .setFields("id, name"));
+    }
+    List<BatchResult<File>> results = executeBatch(service, folderNames, requests);
+    logger.info("created {} folders in drive [{}] with batched requests", results.size(), driveId);
+    return results;
+  }
+
+  /** Deletes several files or folders with batched requests, results are keyed by file id. */
+  public List<BatchResult<Void>> deleteFiles(Drive service, List<String> fileIds)
+      throws IOException {
+    List<DriveRequest<Void>> requests = new ArrayList<>();
+    for (String fileId : fileIds) {
+      requests.add(service.files().delete(fileId).setSupportsAllDrives(true));
+    }
+    logger.info("delete {} files/folders with batched requests", fileIds.size());
+    return executeBatch(service, fileIds, requests);
+  }
+
+  /**
+   * Same as {@link #deleteFiles(Drive, List)}, sending up to {@code parallelism} batches of {@value
+   * #MAX_BATCH_SIZE} files at the same time. Results are in the order of the file ids.
+   */
+  public List<BatchResult<Void>> deleteFiles(Drive service, List<String> fileIds, int parallelism)
+      throws IOException {
+    List<Callable<List<BatchResult<Void>>>> batches = new ArrayList<>();
+    for (int start = 0; start < fileIds.size(); start += MAX_BATCH_SIZE) {
+      List<String> batch = fileIds.subList(start, Math.min(start + MAX_BATCH_SIZE, fileIds.size()));
+      batches.add(() -> deleteFiles(service, batch));
+    }
+    List<BatchResult<Void>> results = new ArrayList<>(fileIds.size());
+    try {
+      for (List<BatchResult<Void>> batchResults : ParallelTasks.runAll(batches, parallelism)) {
+        results.addAll(batchResults);
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while deleting files");
+    }
+    return results;
+  }
+
+  /**
+   * Applies metadata changes (name, description, properties...) to several files with batched
+   * requests. Results are keyed by file id.
+   */
+  public List<BatchResult<File>> updateFiles(Drive service, Map<String, File> metadataByFileId)
+      throws IOException {
+    List<String> fileIds = new ArrayList<>(metadataByFileId.keySet());
+    List<DriveRequest<File>> requests = new ArrayList<>();
+    for (String fileId : fileIds) {
+      requests.add(
+          service
+              .files()
+              .update(fileId, metadataByFileId.get(fileId))
+              .setSupportsAllDrives(true)
+              .setFields("id, name"));
+    }
+    logger.info("update {} files with batched requests", fileIds.size());
+    return executeBatch(service, fileIds, requests);
+  }
+
+  /**
+   * Grants each permission on each file with batched requests. Results are keyed by {@code
+   * fileId/grantee}, the grantee being the email address, the domain or the type of the permission.
+   *
+   * <p>Drive does not support concurrent permission changes on the same file and the items of a
+   * batch may run concurrently, so each batch holds at most one grant per file: granting {@code n}
+   * permissions on many files takes {@code n} batches, not one call per file and grantee.
+   */
+  public List<BatchResult<Permission>> grantPermissions(
+      Drive service,
+      List<String> fileIds,
+      List<Permission> permissions,
+      boolean sendNotificationEmail)
+      throws IOException {
+    List<BatchResult<Permission>> results = new ArrayList<>();
+    for (Permission permission : permissions) {
+      List<String> keys = new ArrayList<>();
+      List<DriveRequest<Permission>> requests = new ArrayList<>();
+      for (String fileId : fileIds) {
+        keys.add(fileId + "/" + grantee(permission));
+        Drive.Permissions.Create request =
+            service
+                .permissions()
+                .create(fileId, permission)
+                .setSupportsAllDrives(true)
+                .setFields("id, type, role, emailAddress, domain");
+        // Drive rejects the flag for domain and anyone permissions, it only applies to people
+        if ("user".equals(permission.getType()) || "group".equals(permission.getType())) {
+          request.setSendNotificationEmail(sendNotificationEmail);
+        }
+        requests.add(request);
+      }
+      results.addAll(executeBatch(service, keys, requests));
+    }
     logger.info(
-        "create folder in drive [{}] with name [{}] and id [{}]",
-        driveId,
-        folderName,
-        file.getId());
-    return file;
+        "granted {} permissions on {} files with batched requests",
+        permissions.size(),
+        fileIds.size());
+    return results;
+  }
+
+  private static String grantee(Permission permission) {
+    if (permission.getEmailAddress() != null) {
+      return permission.getEmailAddress();
+    }
+    return permission.getDomain() != null ? permission.getDomain() : permission.getType();
+  }
+
+  /**
+   * Sends the requests in batches of at most {@value #MAX_BATCH_SIZE}, one HTTP round trip per
+   * batch. A failed item does not fail the others, its error is reported in its result. Each batch
+   * takes one rate limiter token per queued request, as Drive counts them against the quota.
+   */
+  <T> List<BatchResult<T>> executeBatch(
+      Drive service, List<String> keys, List<? extends DriveRequest<T>> requests)
+      throws IOException {
+    List<BatchResult<T>> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    for (int start = 0; start < requests.size(); start += MAX_BATCH_SIZE) {
+      BatchRequest batch = service.batch();
+      int size = Math.min(MAX_BATCH_SIZE, requests.size() - start);
+      for (int i = start; i < Math.min(start + MAX_BATCH_SIZE, requests.size()); i++) {
+        int index = i;
+        String key = keys.get(i);
+        requests
+            .get(i)
+            .queue(
+                batch,
+                new JsonBatchCallback<T>() {
+                  @Override
+                  public void onSuccess(T value, HttpHeaders responseHeaders) {
+                    results.set(index, new BatchResult<>(key, value, null));
+                  }
+
+                  @Override
+                  public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                    logger.warn(
+                        "batched request on [{}] failed: {} {}",
+                        key,
+                        error.getCode(),
+                        error.getMessage());
+                    if (error.getCode() == 429) {
+                      DriveMetrics.getInstance().recordRateLimited();
+                    }
+                    results.set(index, new BatchResult<>(key, null, error));
+                  }
+                });
+      }
+      rateLimiter.acquirePrepaid(
+          size,
+          () ->
+              DriveMetrics.getInstance()
+                  .record(
+                      "batch",
+                      () -> {
+                        batch.execute();
+                        return null;
+                      }));
+    }
+    return results;
   }
 
   public File createFile(
@@ -136,33 +779,307 @@ public class GDriveUtils {
       java.io.File fileToCreate,
       String mimeType)
       throws IOException {
+    return createFile(
+        service,
+        driveId,
+        parentFolderId,
+        fileToCreate.getName(),
+        new FileContent(mimeType, fileToCreate));
+  }
+
+  /** Uploads the given stream without buffering it to disk. */
+  public File createFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      String mimeType,
+      InputStream content)
+      throws IOException {
+    return createFile(
+        service, driveId, parentFolderId, fileName, new InputStreamContent(mimeType, content));
+  }
+
+  /**
+   * Uploads any {@link AbstractInputStreamContent}, the mime type of the created file is the one of
+   * the content.
+   */
+  public File createFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      AbstractInputStreamContent mediaContent)
+      throws IOException {
+    return createFile(
+        service, driveId, parentFolderId, fileName, mediaContent, DEFAULT_CREATED_FILE_FIELDS);
+  }
+
+  /** Same as above, returning only the given fields of the created file. */
+  public File createFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String fileFields)
+      throws IOException {
+    return createFile(service, driveId, parentFolderId, fileName, mediaContent, fileFields, null);
+  }
+
+  /** Same as above, tagging the file with the given app properties when not {@code null}. */
+  public File createFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String fileFields,
+      Map<String, String> appProperties)
+      throws IOException {
     String parentFolder = driveId;
     if (parentFolderId != null) {
       parentFolder = parentFolderId;
     }
-    FileContent mediaContent = new FileContent(mimeType, fileToCreate);
+    String mimeType = mediaContent.getType();
     File fileMetadata = new File();
-    fileMetadata.setName(fileToCreate.getName());
+    fileMetadata.setName(fileName);
     fileMetadata.setDriveId(driveId);
     fileMetadata.setParents(Collections.singletonList(parentFolder));
     fileMetadata.setMimeType(mimeType);
+    fileMetadata.setAppProperties(appProperties);
+    AtomicReference<MediaHttpUploader> uploader = new AtomicReference<>();
+    // an uploader only runs once, each attempt needs a new request
+    RetryPolicy.DriveCall<File> attempt =
+        () -> {
+          Drive.Files.Create create =
+              service
+                  .files()
+                  .create(fileMetadata, mediaContent)
+                  .setSupportsAllDrives(true)
+                  .setFields(fileFields);
+          uploader.set(create.getMediaHttpUploader());
+          configureUploader(uploader.get(), fileName, mediaContent.getLength());
+          return create.execute();
+        };
+    long start = System.nanoTime();
+    // a consumed stream cannot be sent twice
     File file =
-        service
-            .files()
-            .create(fileMetadata, mediaContent)
-            .setSupportsAllDrives(true)
-            .setFields("id, webViewLink")
-            .execute();
+        mediaContent.retrySupported()
+            ? retryPolicy.execute("create file", false, attempt)
+            : DriveMetrics.getInstance().record("create file", attempt);
+    recordUpload(uploader.get(), mediaContent, start);
     logger.info(
         "create file in drive [{}] under folder [{}] with name [{}]",
         driveId,
         parentFolder,
-        fileToCreate.getName());
+        fileName);
     return file;
   }
 
+  /**
+   * Replaces the content of an existing file, which adds a new revision to it. Name, parents and
+   * sharing are left untouched.
+   */
+  public File updateFileContent(
+      Drive service, String fileId, String fileName, AbstractInputStreamContent mediaContent)
+      throws IOException {
+    return updateFileContent(
+        service, fileId, fileName, mediaContent, "id, webViewLink, md5Checksum");
+  }
+
+  /** Same as above, returning only the given fields of the updated file. */
+  public File updateFileContent(
+      Drive service,
+      String fileId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String fileFields)
+      throws IOException {
+    return updateFileContent(service, fileId, fileName, mediaContent, fileFields, null);
+  }
+
+  /** Same as above, also setting the given app properties on the file. */
+  public File updateFileContent(
+      Drive service,
+      String fileId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String fileFields,
+      Map<String, String> appProperties)
+      throws IOException {
+    AtomicReference<MediaHttpUploader> uploader = new AtomicReference<>();
+    RetryPolicy.DriveCall<File> attempt =
+        () -> {
+          Drive.Files.Update update =
+              service
+                  .files()
+                  .update(fileId, new File().setAppProperties(appProperties), mediaContent)
+                  .setSupportsAllDrives(true)
+                  .setFields(fileFields);
+          uploader.set(update.getMediaHttpUploader());
+          configureUploader(uploader.get(), fileName, mediaContent.getLength());
+          return update.execute();
+        };
+    long start = System.nanoTime();
+    // sending the same content twice leaves the file in the same state
+    File file =
+        mediaContent.retrySupported()
+            ? retryPolicy.execute("update file", true, attempt)
+            : DriveMetrics.getInstance().record("update file", attempt);
+    recordUpload(uploader.get(), mediaContent, start);
+    logger.info("update content of file [{}] with id [{}]", fileName, fileId);
+    return file;
+  }
+
+  /**
+   * Creates the file, or copies a file uploaded earlier with the same content: a copy is a single
+   * metadata request whatever the size of the content. The copy is checked against the MD5 of the
+   * content, a source that is gone, not accessible or has changed since falls back to an upload.
+   */
+  public File createOrCopyFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String contentMd5,
+      String fileFields)
+      throws IOException {
+    return createOrCopyFile(
+        service, driveId, parentFolderId, fileName, mediaContent, contentMd5, fileFields, null);
+  }
+
+  /** Same as above, tagging the file with the given app properties when not {@code null}. */
+  public File createOrCopyFile(
+      Drive service,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      AbstractInputStreamContent mediaContent,
+      String contentMd5,
+      String fileFields,
+      Map<String, String> appProperties)
+      throws IOException {
+    String sourceFileId = UPLOADED_CONTENT.get(contentMd5);
+    if (sourceFileId != null) {
+      File copy =
+          copyKnownContent(
+              service,
+              sourceFileId,
+              driveId,
+              parentFolderId,
+              fileName,
+              contentMd5,
+              fileFields,
+              appProperties);
+      if (copy != null) {
+        UPLOADED_CONTENT.put(contentMd5, copy.getId());
+        return copy;
+      }
+      UPLOADED_CONTENT.remove(contentMd5);
+    }
+    File file =
+        createFile(
+            service, driveId, parentFolderId, fileName, mediaContent, fileFields, appProperties);
+    UPLOADED_CONTENT.put(contentMd5, file.getId());
+    return file;
+  }
+
+  /** Copy of the source file, {@code null} when it cannot be used as a copy of the content. */
+  private File copyKnownContent(
+      Drive service,
+      String sourceFileId,
+      String driveId,
+      String parentFolderId,
+      String fileName,
+      String contentMd5,
+      String fileFields,
+      Map<String, String> appProperties)
+      throws IOException {
+    File fileMetadata = new File();
+    fileMetadata.setName(fileName);
+    fileMetadata.setParents(
+        Collections.singletonList(parentFolderId == null ? driveId : parentFolderId));
+    // the copy gets the tags of the new file, not the ones of its source
+    fileMetadata.setAppProperties(appProperties);
+    Drive.Files.Copy copy =
+        service
+            .files()
+            .copy(sourceFileId, fileMetadata)
+            .setSupportsAllDrives(true)
+            .setFields(fileFields + ", md5Checksum");
+    File file;
+    try {
+      file = retryPolicy.execute("copy file", false, copy::execute);
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() == 404 || (e.getStatusCode() == 403 && !RetryPolicy.isRateLimited(e))) {
+        logger.info(
+            "cannot copy file [{}] ({}), uploading [{}]",
+            sourceFileId,
+            e.getStatusCode(),
+            fileName);
+        return null;
+      }
+      throw e;
+    }
+    if (!contentMd5.equals(file.getMd5Checksum())) {
+      logger.warn("content of file [{}] has changed, uploading [{}]", sourceFileId, fileName);
+      deleteFile(service, file.getId());
+      return null;
+    }
+    logger.info(
+        "copy file [{}] to folder [{}] with name [{}]", sourceFileId, parentFolderId, fileName);
+    return file;
+  }
+
+  private static void recordUpload(
+      MediaHttpUploader uploader, AbstractInputStreamContent mediaContent, long start)
+      throws IOException {
+    // the uploader only tracks resumable uploads, a direct upload sends the whole content
+    long bytes =
+        uploader.getNumBytesUploaded() > 0
+            ? uploader.getNumBytesUploaded()
+            : Math.max(0, mediaContent.getLength());
+    DriveMetrics.getInstance().recordUpload(bytes, System.nanoTime() - start);
+  }
+
+  private void configureUploader(MediaHttpUploader uploader, String fileName, long contentLength) {
+    if (uploadSettings.isResumable(contentLength)) {
+      uploader
+          .setDirectUploadEnabled(false)
+          .setChunkSize(uploadSettings.getChunkSize())
+          .setProgressListener(ResumableUploads.progressLogger(fileName, contentLength));
+    } else {
+      uploader.setDirectUploadEnabled(true);
+    }
+  }
+
+  /** Returns every file of the folder, all pages included. */
   static FileList getFolderContent(Drive service, String driveId, String parentFolderId)
       throws IOException {
+    List<File> files = new ArrayList<>();
+    try (FolderContentIterator iterator =
+        new GDriveUtils()
+            .iterateFolderContent(
+                service, driveId, parentFolderId, MAX_PAGE_SIZE, DEFAULT_FOLDER_CONTENT_FIELDS)) {
+      iterator.forEachRemaining(files::add);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return new FileList().setFiles(files);
+  }
+
+  /**
+   * Lazily lists the folder content page by page, prefetching the next page in the background.
+   *
+   * @param parentFolderId folder to list, the whole drive when {@code null}
+   * @param pageSize number of files per request, at most {@value #MAX_PAGE_SIZE}
+   * @param fileFields field mask applied to each file, such as {@code id,name,md5Checksum}
+   */
+  public FolderContentIterator iterateFolderContent(
+      Drive service, String driveId, String parentFolderId, int pageSize, String fileFields)
+      throws IOException {
     final Drive.Files.List query =
         service
             .files()
@@ -171,13 +1088,166 @@ public class GDriveUtils {
             .setIncludeItemsFromAllDrives(true)
             .setCorpora("drive")
             .setDriveId(driveId)
-            .setSupportsAllDrives(true)
-            .setFields(
-                "nextPageToken,files(id,name,mimeType,webViewLink,capabilities/canAddChildren)");
+            .setPageSize(Math.min(pageSize, MAX_PAGE_SIZE))
+            .setFields("nextPageToken,files(" + fileFields + ")");
     if (parentFolderId != null) {
-      query.setQ("'" + parentFolderId + "' in parents");
+      query.setQ("'" + escapeQueryValue(parentFolderId) + "' in parents");
     }
-    return query.execute();
+    return new FolderContentIterator(query, retryPolicy);
+  }
+
+  /** Returns the token from which {@link #listChanges} reports the changes of the drive. */
+  public String getStartPageToken(Drive service, String driveId) throws IOException {
+    Drive.Changes.GetStartPageToken get =
+        service.changes().getStartPageToken().setDriveId(driveId).setSupportsAllDrives(true);
+    return retryPolicy.execute("get start page token", true, get::execute).getStartPageToken();
+  }
+
+  /**
+   * Returns the changes of the drive's files since the given page token, all pages included, so
+   * that the cost is proportional to the number of changes rather than to the size of the drive.
+   * The returned list holds the {@code newStartPageToken} to use for the next call.
+   *
+   * @param fileFields field mask applied to the file of each change, such as {@code id,name}
+   */
+  public ChangeList listChanges(Drive service, String driveId, String pageToken, String fileFields)
+      throws IOException {
+    List<Change> changes = new ArrayList<>();
+    String nextPageToken = pageToken;
+    String newStartPageToken = null;
+    while (newStartPageToken == null) {
+      Drive.Changes.List query =
+          service
+              .changes()
+              .list(nextPageToken)
+              .setDriveId(driveId)
+              .setSupportsAllDrives(true)
+              .setIncludeItemsFromAllDrives(true)
+              .setIncludeRemoved(true)
+              .setPageSize(MAX_PAGE_SIZE)
+              .setFields(
+                  "nextPageToken,newStartPageToken,"
+                      + "changes(changeType,fileId,removed,time,file("
+                      + fileFields
+                      + "))");
+      ChangeList page = retryPolicy.execute("list changes", true, query::execute);
+      if (page.getChanges() != null) {
+        changes.addAll(page.getChanges());
+      }
+      newStartPageToken = page.getNewStartPageToken();
+      nextPageToken = page.getNextPageToken();
+      if (newStartPageToken == null && nextPageToken == null) {
+        throw new IOException("changes.list returned neither a next page nor a new start token");
+      }
+    }
+    logger.info(
+        "{} change(s) in drive [{}] since token [{}], new token [{}]",
+        changes.size(),
+        driveId,
+        pageToken,
+        newStartPageToken);
+    return new ChangeList().setChanges(changes).setNewStartPageToken(newStartPageToken);
+  }
+
+  /** Returns the metadata of a file, restricted to the given fields. */
+  public File getFile(Drive service, String fileId, String fields) throws IOException {
+    Drive.Files.Get get = service.files().get(fileId).setSupportsAllDrives(true).setFields(fields);
+    return retryPolicy.execute("get file", true, get::execute);
+  }
+
+  /**
+   * Opens the content of a file as a stream read straight from the connection, so that only the
+   * buffer of the caller is held in memory. The caller must close the stream.
+   */
+  public InputStream downloadFile(Drive service, String fileId) throws IOException {
+    Drive.Files.Get get = service.files().get(fileId).setSupportsAllDrives(true);
+    InputStream content =
+        retryPolicy.execute("download file", true, get::executeMediaAsInputStream);
+    logger.info("streaming file with id [{}]", fileId);
+    return content;
+  }
+
+  /**
+   * Reads the whole content of a file of the given size into a single array. Files above the
+   * parallel threshold of the {@link DownloadSettings} are fetched with up to {@code parallelism}
+   * concurrent range requests, each one written in place at its offset.
+   */
+  public byte[] downloadFileContent(Drive service, String fileId, long size, int parallelism)
+      throws IOException {
+    if (size > MAX_CONTENT_SIZE) {
+      throw new IOException(
+          String.format("file [%s] of %d bytes is too big to be held in memory", fileId, size));
+    }
+    byte[] content = new byte[(int) size];
+    if (size == 0) {
+      return content;
+    }
+    List<Callable<Void>> ranges = new ArrayList<>();
+    if (parallelism > 1 && downloadSettings.isParallel(size)) {
+      for (long from = 0; from < size; from += downloadSettings.getRangeSize()) {
+        long start = from;
+        long end = Math.min(size, from + downloadSettings.getRangeSize()) - 1;
+        ranges.add(() -> downloadRange(service, fileId, content, start, end, true));
+      }
+    } else {
+      ranges.add(() -> downloadRange(service, fileId, content, 0, size - 1, false));
+    }
+    long start = System.nanoTime();
+    try {
+      ParallelTasks.runAll(ranges, parallelism);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while downloading " + fileId);
+    }
+    logger.info(
+        "downloaded file with id [{}]: {} bytes in {} request(s), {} ms",
+        fileId,
+        size,
+        ranges.size(),
+        (System.nanoTime() - start) / 1_000_000);
+    return content;
+  }
+
+  private Void downloadRange(
+      Drive service, String fileId, byte[] content, long start, long end, boolean ranged)
+      throws IOException {
+    return retryPolicy.execute(
+        "download file",
+        true,
+        () -> {
+          Drive.Files.Get get = service.files().get(fileId).setSupportsAllDrives(true);
+          if (ranged) {
+            // an encoded response would not match the requested byte offsets
+            get.getRequestHeaders()
+                .setRange(String.format("bytes=%d-%d", start, end))
+                .setAcceptEncoding("identity");
+          }
+          HttpResponse response = get.executeMedia();
+          try (InputStream in = response.getContent()) {
+            if (ranged && response.getStatusCode() != 206) {
+              throw new IOException(
+                  String.format(
+                      "range request on file [%s] answered with HTTP %d",
+                      fileId, response.getStatusCode()));
+            }
+            int length = (int) (end - start + 1);
+            int read = in.readNBytes(content, (int) start, length);
+            if (read < length) {
+              throw new IOException(
+                  String.format(
+                      "content of file [%s] ended after %d of %d bytes at offset %d",
+                      fileId, read, length, start));
+            }
+          } finally {
+            response.disconnect();
+          }
+          return null;
+        });
   }
 
   public void deleteFolder(Drive service, String folderId) throws IOException {
@@ -186,7 +1256,8 @@ public class GDriveUtils {
 
   void deleteFile(Drive service, String fileId) throws IOException {
     logger.info("delete file/folder with id [{}]", fileId);
-    service.files().delete(fileId).setSupportsAllDrives(true).execute();
+    Drive.Files.Delete delete = service.files().delete(fileId).setSupportsAllDrives(true);
+    retryPolicy.execute("delete file", true, delete::execute);
   }
 
   public static ArrayList<String> getAllScopes() {
@@ -0,0 +1,79 @@
+package com.bonitasoft.presales.gdrive;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes {@link DriveMetrics} to a Micrometer registry. Only loaded when Micrometer is on the
+ * classpath.
+ */
+public class MicrometerMetrics implements DriveMetrics.Listener {
+
+  private final MeterRegistry registry;
+
+  private MicrometerMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  static void bindToGlobalRegistry(DriveMetrics metrics) {
+    bind(metrics, Metrics.globalRegistry);
+  }
+
+  /** Registers the gauges and counters of the metrics and forwards their latencies as timers. */
+  public static void bind(DriveMetrics metrics, MeterRegistry registry) {
+    Gauge.builder("gdrive.requests.inflight", metrics, DriveMetrics::getRequestsInFlight)
+        .description("Drive requests currently being executed")
+        .register(registry);
+    FunctionCounter.builder("gdrive.upload.bytes", metrics, DriveMetrics::getBytesUploaded)
+        .description("Bytes uploaded to Drive")
+        .baseUnit("bytes")
+        .register(registry);
+    FunctionCounter.builder("gdrive.retries", metrics, DriveMetrics::getRetryCount)
+        .description("Drive calls attempted again after a failure")
+        .register(registry);
+    FunctionCounter.builder("gdrive.rate.limited", metrics, DriveMetrics::getRateLimitedCount)
+        .description("Drive calls rejected by a rate limit")
+        .register(registry);
+    Gauge.builder("gdrive.upload.inflight", metrics, DriveMetrics::getUploadBytesInFlight)
+        .description("Document content held in memory by running uploads")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder(
+            "gdrive.upload.budget.utilization",
+            metrics,
+            DriveMetrics::getUploadMemoryBudgetUtilization)
+        .description("Share of the upload memory budget in use")
+        .register(registry);
+    FunctionCounter.builder(
+            "gdrive.upload.budget.waits", metrics, DriveMetrics::getUploadMemoryBudgetWaitCount)
+        .description("Uploads that waited for the memory budget")
+        .register(registry);
+    metrics.addListener(new MicrometerMetrics(registry));
+  }
+
+  @Override
+  public void onOperation(String operation, long nanos, boolean success) {
+    Timer.builder("gdrive.requests")
+        .description("Latency of Drive calls")
+        .tag("operation", operation)
+        .tag("outcome", success ? "success" : "error")
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void onConnectorExecution(String connector, long nanos, boolean success) {
+    Timer.builder("gdrive.connector.executions")
+        .description("End-to-end duration of Google Drive connector executions")
+        .tag("connector", connector)
+        .tag("outcome", success ? "success" : "error")
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,98 @@
+package com.bonitasoft.presales.gdrive;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Lock free latency histogram of one operation. */
+public class OperationStats implements OperationStatsMXBean {
+
+  /** Upper bounds of the histogram buckets, a last bucket holds slower calls. */
+  static final long[] BUCKET_BOUNDS_MILLIS = {
+    1, 2, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000
+  };
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MILLIS.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder errorCount = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  OperationStats() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  void record(long nanos, boolean success) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    count.increment();
+    if (!success) {
+      errorCount.increment();
+    }
+    totalNanos.add(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public long getErrorCount() {
+    return errorCount.sum();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    long calls = count.sum();
+    return calls == 0 ? 0 : totalNanos.sum() / 1e6 / calls;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return maxNanos.get() / 1e6;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return percentileMillis(0.5);
+  }
+
+  @Override
+  public double getP95Millis() {
+    return percentileMillis(0.95);
+  }
+
+  @Override
+  public double getP99Millis() {
+    return percentileMillis(0.99);
+  }
+
+  double percentileMillis(double quantile) {
+    long[] counts = new long[buckets.length];
+    long total = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(BUCKET_BOUNDS_MILLIS[i], getMaxMillis());
+      }
+    }
+    return getMaxMillis();
+  }
+}
@@ -0,0 +1,22 @@
+package com.bonitasoft.presales.gdrive;
+
+/**
+ * JMX view of the latency of one kind of Drive call or connector execution. Percentiles are
+ * estimated from a fixed bucket histogram and rounded up to the bucket bound.
+ */
+public interface OperationStatsMXBean {
+
+  long getCount();
+
+  long getErrorCount();
+
+  double getMeanMillis();
+
+  double getMaxMillis();
+
+  double getP50Millis();
+
+  double getP95Millis();
+
+  double getP99Millis();
+}
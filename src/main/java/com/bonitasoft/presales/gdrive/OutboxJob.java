@@ -0,0 +1,244 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.util.Key;
+import com.google.api.services.drive.model.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upload job of the {@link UploadOutbox}, stored as JSON next to the content of its documents.
+ *
+ * <p>The job keeps its progress: the target folder once resolved and each uploaded file, so that a
+ * retried job only sends what is left. The folder and files are created with the app properties and
+ * field mask given by the connector, as a synchronous upload would.
+ */
+public class OutboxJob extends GenericJson {
+
+  /** Lifecycle of a job, {@link #DONE} and {@link #FAILED} are final. */
+  public enum State {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+  }
+
+  @Key private String id;
+  @Key private String driveId;
+  // the credentials themselves are only kept in memory by the outbox
+  @Key private String credentialsFingerprint;
+  @Key private String folderPath;
+  @Key private Boolean createFolder;
+  @Key private String folderName;
+  @Key private Map<String, String> folderAppProperties;
+  @Key private String fileFields;
+  @Key private List<Item> items = new ArrayList<>();
+  @Key private String state;
+  @Key private Integer attempts;
+  @Key private Boolean folderResolved;
+  @Key private String folderId;
+  @Key private String error;
+  @Key private Long createdAt;
+  @Key private Long updatedAt;
+
+  /** A document of the job and, once uploaded, the created file. */
+  public static class Item extends GenericJson {
+    @Key private String documentName;
+    @Key private String fileName;
+    @Key private String mimeType;
+    @Key private String contentFile;
+    @Key private Map<String, String> appProperties;
+    @Key private String fileId;
+    @Key private String webViewLink;
+    @Key private File file;
+
+    public String getDocumentName() {
+      return documentName;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public String getMimeType() {
+      return mimeType;
+    }
+
+    String getContentFile() {
+      return contentFile;
+    }
+
+    Map<String, String> getAppProperties() {
+      return appProperties;
+    }
+
+    public String getFileId() {
+      return fileId;
+    }
+
+    public String getWebViewLink() {
+      return webViewLink;
+    }
+
+    /** Created file with the fields of {@link #getFileFields()}, {@code null} until uploaded. */
+    public File getFile() {
+      return file;
+    }
+
+    boolean isUploaded() {
+      return fileId != null;
+    }
+  }
+
+  public OutboxJob() {}
+
+  /** Job uploading into the given drive, under {@code folderPath} when set. */
+  public OutboxJob(String driveId, String folderPath, boolean createFolder, String folderName) {
+    this.driveId = driveId;
+    this.folderPath = folderPath;
+    this.createFolder = createFolder;
+    this.folderName = folderName;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  void setId(String id) {
+    this.id = id;
+  }
+
+  public String getDriveId() {
+    return driveId;
+  }
+
+  String getCredentialsFingerprint() {
+    return credentialsFingerprint;
+  }
+
+  void setCredentialsFingerprint(String credentialsFingerprint) {
+    this.credentialsFingerprint = credentialsFingerprint;
+  }
+
+  public String getFolderPath() {
+    return folderPath;
+  }
+
+  public boolean isCreateFolder() {
+    return Boolean.TRUE.equals(createFolder);
+  }
+
+  public String getFolderName() {
+    return folderName;
+  }
+
+  Map<String, String> getFolderAppProperties() {
+    return folderAppProperties;
+  }
+
+  /** App properties of the created folder, none when {@code null}. */
+  public void setFolderAppProperties(Map<String, String> folderAppProperties) {
+    this.folderAppProperties = folderAppProperties;
+  }
+
+  /** Field mask of the created files, the default fields of the utils when {@code null}. */
+  public String getFileFields() {
+    return fileFields;
+  }
+
+  public void setFileFields(String fileFields) {
+    this.fileFields = fileFields;
+  }
+
+  public List<Item> getItems() {
+    return items;
+  }
+
+  Item addItem(
+      String documentName,
+      String fileName,
+      String mimeType,
+      String contentFile,
+      Map<String, String> appProperties) {
+    Item item = new Item();
+    item.documentName = documentName;
+    item.fileName = fileName;
+    item.mimeType = mimeType;
+    item.contentFile = contentFile;
+    item.appProperties = appProperties;
+    items.add(item);
+    return item;
+  }
+
+  void setUploaded(Item item, File file) {
+    item.fileId = file.getId();
+    item.webViewLink = file.getWebViewLink();
+    item.file = file;
+  }
+
+  public State getState() {
+    return state == null ? State.PENDING : State.valueOf(state);
+  }
+
+  void setState(State state) {
+    this.state = state.name();
+  }
+
+  public boolean isFinished() {
+    return getState() == State.DONE || getState() == State.FAILED;
+  }
+
+  public int getAttempts() {
+    return attempts == null ? 0 : attempts;
+  }
+
+  void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  boolean isFolderResolved() {
+    return Boolean.TRUE.equals(folderResolved);
+  }
+
+  /** Folder the files are uploaded to, {@code null} for the root of the drive. */
+  public String getFolderId() {
+    return folderId;
+  }
+
+  void setFolderId(String folderId) {
+    this.folderId = folderId;
+    this.folderResolved = true;
+  }
+
+  /** Forgets the folder, resolved again by the next attempt. */
+  void clearFolderId() {
+    this.folderId = null;
+    this.folderResolved = false;
+  }
+
+  /** Failure of the last attempt. */
+  public String getError() {
+    return error;
+  }
+
+  void setError(String error) {
+    this.error = error;
+  }
+
+  public long getCreatedAt() {
+    return createdAt == null ? 0 : createdAt;
+  }
+
+  void setCreatedAt(long createdAt) {
+    this.createdAt = createdAt;
+  }
+
+  public long getUpdatedAt() {
+    return updatedAt == null ? 0 : updatedAt;
+  }
+
+  void setUpdatedAt(long updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+}
@@ -0,0 +1,92 @@
+package com.bonitasoft.presales.gdrive;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of tasks with bounded concurrency.
+ *
+ * <p>Results are returned in the order of the tasks. The first failure cancels the tasks that are
+ * still pending or running and is rethrown as an {@link ExecutionException}. Virtual threads are
+ * used when the runtime provides them, platform threads otherwise.
+ */
+public class ParallelTasks {
+
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  private ParallelTasks() {}
+
+  public static <T> List<T> runAll(List<? extends Callable<T>> tasks, int parallelism)
+      throws ExecutionException, InterruptedException {
+    List<T> results = new ArrayList<>(tasks.size());
+    if (parallelism <= 1 || tasks.size() <= 1) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new ExecutionException(e);
+        }
+      }
+      return results;
+    }
+    ExecutorService executor = newExecutor(Math.min(parallelism, tasks.size()));
+    Semaphore permits = new Semaphore(parallelism);
+    CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+    List<Future<T>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<T> task : tasks) {
+        futures.add(
+            completion.submit(
+                () -> {
+                  permits.acquire();
+                  try {
+                    return task.call();
+                  } finally {
+                    permits.release();
+                  }
+                }));
+      }
+      // wait in completion order so that the first failure is seen as soon as it happens
+      for (int i = 0; i < futures.size(); i++) {
+        completion.take().get();
+      }
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  static ExecutorService newExecutor(int parallelism) {
+    try {
+      Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtualThreadExecutor.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      ThreadFactory threadFactory =
+          runnable -> {
+            Thread thread = new Thread(runnable, "gdrive-task-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          };
+      return Executors.newFixedThreadPool(parallelism, threadFactory);
+    }
+  }
+}
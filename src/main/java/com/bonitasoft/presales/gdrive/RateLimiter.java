@@ -0,0 +1,123 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequestInitializer;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting the rate of HTTP requests sent to Drive.
+ *
+ * <p>A single instance is shared by every connector running in the JVM so that a burst of cases
+ * stays under the project quota. The rate is set with the system property {@value
+ * #REQUESTS_PER_SECOND_PROPERTY}, {@code 0} disables the limit. Up to one second worth of requests
+ * can be sent in a burst.
+ *
+ * <p>Drive counts each request of a batch against the quota, so a batch takes one token per queued
+ * request, reserved at once by {@link #acquirePrepaid}, instead of one token per HTTP call.
+ */
+public class RateLimiter {
+
+  static final String REQUESTS_PER_SECOND_PROPERTY = "gdrive.rateLimit.requestsPerSecond";
+  static final double DEFAULT_REQUESTS_PER_SECOND = 100;
+
+  private static final RateLimiter SHARED =
+      new RateLimiter(
+          Double.parseDouble(
+              System.getProperty(
+                  REQUESTS_PER_SECOND_PROPERTY, String.valueOf(DEFAULT_REQUESTS_PER_SECOND))),
+          System::nanoTime);
+
+  /** Set while a call whose tokens have already been taken runs on the thread. */
+  private static final ThreadLocal<Boolean> PREPAID = new ThreadLocal<>();
+
+  private final double permitsPerSecond;
+  private final double capacity;
+  private final LongSupplier nanoClock;
+  private double tokens;
+  private long lastRefill;
+
+  RateLimiter(double permitsPerSecond, LongSupplier nanoClock) {
+    this.permitsPerSecond = permitsPerSecond;
+    this.capacity = Math.max(1, permitsPerSecond);
+    this.nanoClock = nanoClock;
+    this.tokens = capacity;
+    this.lastRefill = nanoClock.getAsLong();
+  }
+
+  public static RateLimiter getShared() {
+    return SHARED;
+  }
+
+  /** Waits until a request may be sent. */
+  public void acquire() throws InterruptedIOException {
+    acquire(1);
+  }
+
+  /** Waits until the given number of requests may be sent. */
+  public void acquire(int permits) throws InterruptedIOException {
+    long waitNanos = reserve(permits);
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for rate limiter");
+      }
+    }
+  }
+
+  /** Takes a token and returns how long the caller must wait before using it. */
+  long reserve() {
+    return reserve(1);
+  }
+
+  /** Takes the given number of tokens and returns how long the caller must wait to use them. */
+  synchronized long reserve(int permits) {
+    if (permitsPerSecond <= 0) {
+      return 0;
+    }
+    long now = nanoClock.getAsLong();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / 1e9);
+    lastRefill = now;
+    tokens -= permits;
+    if (tokens >= 0) {
+      return 0;
+    }
+    return (long) (-tokens / permitsPerSecond * 1e9);
+  }
+
+  /**
+   * Takes one token per request before running the call, during which the throttled requests do not
+   * take any other token. Used for batches, whose HTTP call holds {@code permits} requests.
+   */
+  public <T> T acquirePrepaid(int permits, RetryPolicy.DriveCall<T> call) throws IOException {
+    acquire(permits);
+    Boolean outer = PREPAID.get();
+    PREPAID.set(Boolean.TRUE);
+    try {
+      return call.call();
+    } finally {
+      PREPAID.set(outer);
+    }
+  }
+
+  /** Wraps the given initializer so that each request attempt takes a token before being sent. */
+  public HttpRequestInitializer throttling(HttpRequestInitializer delegate) {
+    return request -> {
+      delegate.initialize(request);
+      HttpExecuteInterceptor interceptor = request.getInterceptor();
+      request.setInterceptor(
+          intercepted -> {
+            if (PREPAID.get() == null) {
+              acquire();
+            }
+            if (interceptor != null) {
+              interceptor.intercept(intercepted);
+            }
+          });
+    };
+  }
+}
@@ -0,0 +1,74 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.ExponentialBackOff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Retry and progress support for resumable uploads. */
+class ResumableUploads {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResumableUploads.class);
+
+  private ResumableUploads() {}
+
+  /**
+   * Wraps the given initializer so that requests belonging to a resumable upload session are
+   * retried with exponential backoff on I/O errors and 5xx responses.
+   *
+   * <p>{@link MediaHttpUploader} only resumes from the last acknowledged offset when the failed
+   * request is retried by its handlers, this is what enables it. Other requests are left untouched.
+   */
+  static HttpRequestInitializer withRetries(HttpRequestInitializer delegate) {
+    return request -> {
+      delegate.initialize(request);
+      if (isResumableUpload(request)) {
+        request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()));
+        HttpUnsuccessfulResponseHandler credentialsHandler =
+            request.getUnsuccessfulResponseHandler();
+        HttpUnsuccessfulResponseHandler backOffHandler =
+            new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff());
+        // keep the credentials handler first so that a 401 still refreshes the token
+        request.setUnsuccessfulResponseHandler(
+            (failedRequest, response, supportsRetry) ->
+                (credentialsHandler != null
+                        && credentialsHandler.handleResponse(
+                            failedRequest, response, supportsRetry))
+                    || backOffHandler.handleResponse(failedRequest, response, supportsRetry));
+      }
+    };
+  }
+
+  static boolean isResumableUpload(HttpRequest request) {
+    return "resumable".equals(request.getUrl().getFirst("uploadType"))
+        || request.getUrl().getFirst("upload_id") != null;
+  }
+
+  /** Logs progress and throughput of each uploaded chunk. */
+  static MediaHttpUploaderProgressListener progressLogger(String fileName, long contentLength) {
+    long start = System.nanoTime();
+    return uploader -> {
+      switch (uploader.getUploadState()) {
+        case MEDIA_IN_PROGRESS:
+        case MEDIA_COMPLETE:
+          long uploaded = uploader.getNumBytesUploaded();
+          double seconds = Math.max(System.nanoTime() - start, 1) / 1_000_000_000d;
+          LOGGER.info(
+              "resumable upload of [{}]: {} / {} bytes, {} KB/s",
+              fileName,
+              uploaded,
+              contentLength < 0 ? "?" : contentLength,
+              String.format("%.1f", uploaded / 1024d / seconds));
+          break;
+        default:
+          break;
+      }
+    };
+  }
+}
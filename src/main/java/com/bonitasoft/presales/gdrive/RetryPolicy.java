@@ -0,0 +1,212 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonErrorContainer;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.Sleeper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries Drive calls with exponential backoff and jitter.
+ *
+ * <p>Rate limit errors (429, 403 {@code userRateLimitExceeded}/{@code rateLimitExceeded}) are
+ * retried for every operation, since Drive rejected the request without processing it. Server
+ * errors and I/O failures are only retried for idempotent operations: retrying a create could
+ * otherwise duplicate the file. A {@code Retry-After} header, when present, overrides the computed
+ * delay. Each attempt is measured by {@link DriveMetrics}.
+ */
+public class RetryPolicy {
+
+  static final String MAX_ATTEMPTS_PROPERTY = "gdrive.retry.maxAttempts";
+  static final String INITIAL_DELAY_PROPERTY = "gdrive.retry.initialDelayMillis";
+  static final String MAX_DELAY_PROPERTY = "gdrive.retry.maxDelayMillis";
+
+  static final int DEFAULT_MAX_ATTEMPTS = 5;
+  static final long DEFAULT_INITIAL_DELAY_MILLIS = 500;
+  static final long DEFAULT_MAX_DELAY_MILLIS = 32_000;
+
+  private static final double JITTER = 0.5;
+  private static final int MAX_PEEKED_ERROR_BYTES = 64 * 1024;
+
+  /** A call to the Drive API. */
+  @FunctionalInterface
+  public interface DriveCall<T> {
+    T call() throws IOException;
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final int maxAttempts;
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final Sleeper sleeper;
+
+  public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+    this(maxAttempts, initialDelayMillis, maxDelayMillis, Sleeper.DEFAULT);
+  }
+
+  RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis, Sleeper sleeper) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialDelayMillis = initialDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.sleeper = sleeper;
+  }
+
+  /** Policy read from system properties, falling back to defaults. */
+  public static RetryPolicy fromSystemProperties() {
+    return new RetryPolicy(
+        Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+        Long.getLong(INITIAL_DELAY_PROPERTY, DEFAULT_INITIAL_DELAY_MILLIS),
+        Long.getLong(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY_MILLIS));
+  }
+
+  /** Runs the call, retrying it while the failure is retryable and attempts remain. */
+  public <T> T execute(String operation, boolean idempotent, DriveCall<T> call) throws IOException {
+    DriveMetrics metrics = DriveMetrics.getInstance();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return metrics.record(operation, call);
+      } catch (IOException e) {
+        if (e instanceof HttpResponseException && isRateLimited((HttpResponseException) e)) {
+          metrics.recordRateLimited();
+        }
+        if (attempt >= maxAttempts || !isRetryable(e, idempotent)) {
+          throw e;
+        }
+        metrics.recordRetry();
+        long delay = delayMillis(e, attempt);
+        logger.warn(
+            "{} failed (attempt {}/{}): {}, retrying in {} ms",
+            operation,
+            attempt,
+            maxAttempts,
+            describe(e),
+            delay);
+        sleep(delay);
+      }
+    }
+  }
+
+  static boolean isRetryable(IOException e, boolean idempotent) {
+    if (e instanceof HttpResponseException) {
+      int status = ((HttpResponseException) e).getStatusCode();
+      if (isRateLimited((HttpResponseException) e)) {
+        return true;
+      }
+      return idempotent && (status == 408 || status >= 500);
+    }
+    // connection reset, timeout...: the request may or may not have been processed
+    return idempotent && !(e instanceof InterruptedIOException && isInterrupted());
+  }
+
+  static boolean isRateLimited(HttpResponseException e) {
+    if (e.getStatusCode() == 429) {
+      return true;
+    }
+    return e.getStatusCode() == 403
+        && e instanceof GoogleJsonResponseException
+        && hasRateLimitReason(((GoogleJsonResponseException) e).getDetails());
+  }
+
+  /**
+   * Same as {@link #isRateLimited(HttpResponseException)} for a response not turned into an
+   * exception yet, such as in a response interceptor. The error body is peeked, it is still read by
+   * the client afterwards.
+   */
+  static boolean isRateLimited(HttpResponse response) throws IOException {
+    if (response.getStatusCode() == 429) {
+      return true;
+    }
+    if (response.getStatusCode() != 403) {
+      return false;
+    }
+    InputStream content = response.getContent();
+    if (content == null || !content.markSupported()) {
+      return false;
+    }
+    content.mark(MAX_PEEKED_ERROR_BYTES);
+    try {
+      String body = new String(content.readNBytes(MAX_PEEKED_ERROR_BYTES), StandardCharsets.UTF_8);
+      return hasRateLimitReason(
+          GsonFactory.getDefaultInstance()
+              .fromString(body, GoogleJsonErrorContainer.class)
+              .getError());
+    } catch (IOException | IllegalArgumentException e) {
+      // not a JSON error body, left to the client to report
+      return false;
+    } finally {
+      content.reset();
+    }
+  }
+
+  private static boolean hasRateLimitReason(GoogleJsonError details) {
+    return details != null
+        && details.getErrors() != null
+        && details.getErrors().stream()
+            .anyMatch(
+                error ->
+                    "userRateLimitExceeded".equals(error.getReason())
+                        || "rateLimitExceeded".equals(error.getReason()));
+  }
+
+  long delayMillis(IOException e, int attempt) {
+    Long retryAfter = retryAfterMillis(e);
+    if (retryAfter != null) {
+      return retryAfter;
+    }
+    double exponential = initialDelayMillis * Math.pow(2, attempt - 1d);
+    double capped = Math.min(maxDelayMillis, exponential);
+    double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return (long) (capped * jitter);
+  }
+
+  static Long retryAfterMillis(IOException e) {
+    if (!(e instanceof HttpResponseException)) {
+      return null;
+    }
+    String retryAfter = ((HttpResponseException) e).getHeaders().getRetryAfter();
+    if (retryAfter == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(retryAfter.trim()) * 1000;
+    } catch (NumberFormatException notSeconds) {
+      // HTTP-date form is not worth parsing here, use the computed backoff
+      return null;
+    }
+  }
+
+  private void sleep(long delayMillis) throws InterruptedIOException {
+    try {
+      sleeper.sleep(delayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException interrupted = new InterruptedIOException("interrupted during retry");
+      interrupted.initCause(e);
+      throw interrupted;
+    }
+  }
+
+  private static boolean isInterrupted() {
+    return Thread.currentThread().isInterrupted();
+  }
+
+  private static String describe(IOException e) {
+    if (e instanceof HttpResponseException) {
+      return "HTTP " + ((HttpResponseException) e).getStatusCode();
+    }
+    return e.toString();
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+}
@@ -0,0 +1,368 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponseInterceptor;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the Drive calls of the connectors over several service accounts, so that throughput is
+ * not capped by the per-user quota of a single account.
+ *
+ * <p>The pool is given as a JSON array of service account keys in place of the usual credentials.
+ * Each connector execution leases one account, picked in turn ({@link Selection#ROUND_ROBIN}) or
+ * among the ones leased by the fewest running executions ({@link Selection#LEAST_LOADED}). An
+ * execution keeps its account, as resumable upload sessions are bound to the account that started
+ * them. An account answered with a rate limit error, a 429 or a 403 with a rate limit reason as
+ * seen by {@link RetryPolicy}, is left out of the rotation for {@value #COOLDOWN_SECONDS_PROPERTY}
+ * seconds, or for the {@code Retry-After} delay when longer. The accounts must all be members of
+ * the shared drive.
+ *
+ * <p>Pools are shared by the connectors of the JVM, so that loads and cooldowns are seen by every
+ * execution. The default selection is set with the system property {@value #SELECTION_PROPERTY}.
+ * Like the clients of {@link DriveServiceRegistry}, a pool is evicted when none of its accounts is
+ * leased for longer than the idle timeout, or when new keys are given for one of its accounts.
+ */
+public class ServiceAccountPool {
+
+  static final String SELECTION_PROPERTY = "gdrive.pool.selection";
+  static final String COOLDOWN_SECONDS_PROPERTY = "gdrive.pool.cooldownSeconds";
+  static final long DEFAULT_COOLDOWN_SECONDS = 30;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServiceAccountPool.class);
+  private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+  private static final Map<String, ServiceAccountPool> POOLS = new ConcurrentHashMap<>();
+
+  /** How the account of an execution is picked. */
+  public enum Selection {
+    ROUND_ROBIN,
+    LEAST_LOADED;
+
+    /** Selection set with the system property, least loaded by default. */
+    public static Selection fromSystemProperties() {
+      return valueOf(System.getProperty(SELECTION_PROPERTY, LEAST_LOADED.name()).trim());
+    }
+  }
+
+  private final List<Member> members;
+  private final Duration cooldown;
+  private final LongSupplier nanoClock;
+  private final AtomicInteger next = new AtomicInteger();
+  private DriveTransportSettings transportSettings;
+  private String credentialsHash;
+  private volatile long lastAccess;
+
+  ServiceAccountPool(List<Member> members, Duration cooldown, LongSupplier nanoClock) {
+    if (members.isEmpty()) {
+      throw new IllegalArgumentException("a service account pool needs at least one account");
+    }
+    this.members = members;
+    this.cooldown = cooldown;
+    this.nanoClock = nanoClock;
+    long now = nanoClock.getAsLong();
+    this.lastAccess = now;
+    for (Member member : members) {
+      member.pool = this;
+      member.coolingDownUntil = now;
+    }
+  }
+
+  /** Whether the credentials are a pool, a JSON array of service account keys. */
+  public static boolean isPool(String credentialsJson) {
+    return credentialsJson != null && credentialsJson.trim().startsWith("[");
+  }
+
+  /** Returns the pool of the given service account keys, building its clients on first use. */
+  public static ServiceAccountPool getPool(
+      String credentialsJson, Collection<String> scopes, DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    evictIdle(
+        Duration.ofSeconds(
+            Long.getLong(
+                DriveServiceRegistry.IDLE_TIMEOUT_PROPERTY,
+                DriveServiceRegistry.DEFAULT_IDLE_TIMEOUT_SECONDS)));
+    String key =
+        DriveServiceRegistry.fingerprint(credentialsJson, scopes) + "/" + transportSettings;
+    ServiceAccountPool pool = POOLS.get(key);
+    if (pool == null) {
+      synchronized (POOLS) {
+        pool = POOLS.get(key);
+        if (pool == null) {
+          pool = create(credentialsJson, scopes, transportSettings);
+          pool.transportSettings = transportSettings;
+          register(
+              key,
+              DriveServiceRegistry.fingerprint(credentialsJson, Collections.emptyList()),
+              pool);
+        }
+      }
+    }
+    pool.touch();
+    return pool;
+  }
+
+  static void register(String key, String credentialsHash, ServiceAccountPool pool) {
+    pool.credentialsHash = credentialsHash;
+    // keys rotated for an account of the pool: drop the pool built with the old ones
+    POOLS
+        .values()
+        .removeIf(
+            existing -> {
+              boolean stale = existing.isSupersededBy(pool);
+              if (stale) {
+                LOGGER.info("evicting service account pool built with previous keys");
+              }
+              return stale;
+            });
+    POOLS.put(key, pool);
+  }
+
+  private boolean isSupersededBy(ServiceAccountPool pool) {
+    if (Objects.equals(credentialsHash, pool.credentialsHash)) {
+      return false;
+    }
+    for (Member member : members) {
+      for (Member other : pool.members) {
+        if (member.clientEmail.equals(other.clientEmail)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Drops the pools none of whose accounts was leased during the idle timeout. */
+  static void evictIdle(Duration idleTimeout) {
+    POOLS.values().removeIf(pool -> pool.isIdle(idleTimeout));
+  }
+
+  private boolean isIdle(Duration idleTimeout) {
+    for (Member member : members) {
+      if (member.leases.get() > 0) {
+        return false;
+      }
+    }
+    return nanoClock.getAsLong() - lastAccess > idleTimeout.toNanos();
+  }
+
+  private void touch() {
+    lastAccess = nanoClock.getAsLong();
+  }
+
+  /** Drops every pool. */
+  public static void clear() {
+    POOLS.clear();
+  }
+
+  static int size() {
+    return POOLS.size();
+  }
+
+  private static ServiceAccountPool create(
+      String credentialsJson, Collection<String> scopes, DriveTransportSettings transportSettings)
+      throws IOException, GeneralSecurityException {
+    GDriveUtils gDriveUtils = new GDriveUtils(transportSettings);
+    List<Member> members = new ArrayList<>();
+    for (GenericJson key :
+        JSON_FACTORY
+            .createJsonParser(credentialsJson)
+            .parseArrayAndClose(ArrayList.class, GenericJson.class)) {
+      ServiceAccountCredentials credentials =
+          GDriveUtils.parseServiceAccountCredentials(JSON_FACTORY.toString(key));
+      Member member = new Member(credentials.getClientEmail());
+      member.service =
+          gDriveUtils.getDriveServiceViaServiceAccount(credentials, scopes, member::observing);
+      members.add(member);
+    }
+    LOGGER.info("service account pool of {} accounts created", members.size());
+    return new ServiceAccountPool(
+        members,
+        Duration.ofSeconds(Long.getLong(COOLDOWN_SECONDS_PROPERTY, DEFAULT_COOLDOWN_SECONDS)),
+        System::nanoTime);
+  }
+
+  /** Transport settings of the pools, whose transports must stay open. */
+  static List<DriveTransportSettings> transportSettingsInUse() {
+    List<DriveTransportSettings> inUse = new ArrayList<>();
+    for (ServiceAccountPool pool : POOLS.values()) {
+      if (pool.transportSettings != null) {
+        inUse.add(pool.transportSettings);
+      }
+    }
+    return inUse;
+  }
+
+  /**
+   * Leases an account until the returned lease is closed, keeping the transport of the pool open
+   * meanwhile.
+   */
+  public Lease acquire(Selection selection) throws IOException, GeneralSecurityException {
+    DriveTransportSettings.TransportLease transportLease =
+        transportSettings == null ? null : transportSettings.leaseTransport();
+    Member member = select(selection);
+    member.leases.incrementAndGet();
+    touch();
+    return new Lease(member, transportLease);
+  }
+
+  /** Client of the account that would be leased now, for calls that do not hold a lease. */
+  public Drive next() {
+    return select(Selection.fromSystemProperties()).service;
+  }
+
+  Member select(Selection selection) {
+    long now = nanoClock.getAsLong();
+    int start = Math.floorMod(next.getAndIncrement(), members.size());
+    Member selected = null;
+    for (int i = 0; i < members.size(); i++) {
+      Member member = members.get((start + i) % members.size());
+      if (member.isCoolingDown(now)) {
+        continue;
+      }
+      if (selection == Selection.ROUND_ROBIN) {
+        return member;
+      }
+      if (selected == null || member.leases.get() < selected.leases.get()) {
+        selected = member;
+      }
+    }
+    if (selected != null) {
+      return selected;
+    }
+    // every account is throttled: take the one back the soonest
+    selected = members.get(0);
+    for (Member member : members) {
+      if (member.coolingDownUntil - selected.coolingDownUntil < 0) {
+        selected = member;
+      }
+    }
+    return selected;
+  }
+
+  public List<Member> getMembers() {
+    return Collections.unmodifiableList(members);
+  }
+
+  /** Account of the pool with its Drive client, load and rate limit state. */
+  public static class Member {
+
+    private final String clientEmail;
+    private final AtomicInteger leases = new AtomicInteger();
+    private final LongAdder rateLimitedCount = new LongAdder();
+    private volatile long coolingDownUntil;
+    private ServiceAccountPool pool;
+    Drive service;
+
+    Member(String clientEmail) {
+      this.clientEmail = clientEmail;
+    }
+
+    /** Wraps the given initializer so that rate limited responses take the account out. */
+    HttpRequestInitializer observing(HttpRequestInitializer delegate) {
+      return request -> {
+        delegate.initialize(request);
+        HttpResponseInterceptor interceptor = request.getResponseInterceptor();
+        request.setResponseInterceptor(
+            response -> {
+              if (interceptor != null) {
+                interceptor.interceptResponse(response);
+              }
+              if (RetryPolicy.isRateLimited(response)) {
+                onRateLimited(response.getHeaders().getRetryAfter());
+              }
+            });
+      };
+    }
+
+    void onRateLimited(String retryAfter) {
+      rateLimitedCount.increment();
+      long cooldownNanos = pool.cooldown.toNanos();
+      if (retryAfter != null) {
+        try {
+          cooldownNanos =
+              Math.max(
+                  cooldownNanos, Duration.ofSeconds(Long.parseLong(retryAfter.trim())).toNanos());
+        } catch (NumberFormatException e) {
+          // HTTP date form, the default cooldown applies
+        }
+      }
+      coolingDownUntil = pool.nanoClock.getAsLong() + cooldownNanos;
+      LOGGER.warn(
+          "service account [{}] rate limited, out of rotation for {} s",
+          clientEmail,
+          Duration.ofNanos(cooldownNanos).getSeconds());
+    }
+
+    boolean isCoolingDown(long now) {
+      return now - coolingDownUntil < 0;
+    }
+
+    public String getClientEmail() {
+      return clientEmail;
+    }
+
+    /** Connector executions currently using the account. */
+    public int getLeases() {
+      return leases.get();
+    }
+
+    public long getRateLimitedCount() {
+      return rateLimitedCount.sum();
+    }
+
+    public boolean isCoolingDown() {
+      return isCoolingDown(pool.nanoClock.getAsLong());
+    }
+  }
+
+  /** Account leased by a connector execution, given back on close. */
+  public static class Lease implements AutoCloseable {
+
+    private final Member member;
+    private final DriveTransportSettings.TransportLease transportLease;
+    private boolean closed;
+
+    private Lease(Member member, DriveTransportSettings.TransportLease transportLease) {
+      this.member = member;
+      this.transportLease = transportLease;
+    }
+
+    public Drive getDrive() {
+      return member.service;
+    }
+
+    public String getClientEmail() {
+      return member.clientEmail;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        member.leases.decrementAndGet();
+        member.pool.touch();
+        if (transportLease != null) {
+          transportLease.close();
+        }
+      }
+    }
+  }
+}
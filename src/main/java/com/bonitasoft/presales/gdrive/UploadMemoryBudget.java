@@ -0,0 +1,154 @@
+package com.bonitasoft.presales.gdrive;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+
+/**
+ * Bounds the document content held in memory by the uploads of all the connectors of the JVM.
+ *
+ * <p>The engine only hands out document content as a {@code byte[]} and does not tell its size
+ * beforehand, so each load reserves an estimate, the size of the last loaded content, and settles
+ * it with the real size once loaded. Before any content was loaded, the whole budget is reserved,
+ * so the first loads run one at a time. A load starts only while the held and reserved bytes leave
+ * room for its reservation: a burst of cases over all the connectors of the JVM waits for running
+ * uploads to complete instead of loading every document at once, and the budget is exceeded only by
+ * contents larger than estimated. The bytes are held until the lease is closed, once the upload is
+ * done.
+ *
+ * <p>The budget is set with the system property {@value #BUDGET_BYTES_PROPERTY}, a quarter of the
+ * max heap by default, {@code 0} disables it. A load waiting longer than {@value
+ * #TIMEOUT_SECONDS_PROPERTY} seconds fails.
+ */
+public class UploadMemoryBudget {
+
+  static final String BUDGET_BYTES_PROPERTY = "gdrive.upload.memoryBudgetBytes";
+  static final String TIMEOUT_SECONDS_PROPERTY = "gdrive.upload.memoryBudgetTimeoutSeconds";
+  static final long DEFAULT_TIMEOUT_SECONDS = 600;
+
+  private static final UploadMemoryBudget SHARED =
+      new UploadMemoryBudget(
+          Long.getLong(BUDGET_BYTES_PROPERTY, Runtime.getRuntime().maxMemory() / 4),
+          Duration.ofSeconds(Long.getLong(TIMEOUT_SECONDS_PROPERTY, DEFAULT_TIMEOUT_SECONDS)));
+
+  /** Loads a document content, such as {@code ProcessAPI.getDocumentContent}. */
+  public interface ContentLoader<E extends Exception> {
+    byte[] load() throws E;
+  }
+
+  private final long budgetBytes;
+  private final Duration timeout;
+  private long bytesInFlight;
+  private long lastLoadedBytes = -1;
+  private long waitCount;
+
+  UploadMemoryBudget(long budgetBytes, Duration timeout) {
+    this.budgetBytes = budgetBytes;
+    this.timeout = timeout;
+  }
+
+  public static UploadMemoryBudget getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Loads a content once the budget allows it, waiting for running uploads to release theirs. The
+   * returned lease must be closed once the content is no longer needed.
+   */
+  public <E extends Exception> Lease load(ContentLoader<E> loader) throws IOException, E {
+    long reserved = budgetBytes > 0 ? admit() : 0;
+    byte[] content = null;
+    try {
+      content = loader.load();
+    } finally {
+      settle(reserved, content);
+    }
+    return new Lease(content);
+  }
+
+  /** Waits for room for the reservation of a load and reserves it. */
+  private synchronized long admit() throws IOException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    boolean waited = false;
+    long reservation = lastLoadedBytes < 0 ? budgetBytes : Math.max(lastLoadedBytes, 1);
+    // a single document larger than the budget is still let through when nothing else is held
+    while (bytesInFlight > 0 && bytesInFlight + reservation > budgetBytes) {
+      if (!waited) {
+        waited = true;
+        waitCount++;
+      }
+      long remainingNanos = deadline - System.nanoTime();
+      if (remainingNanos <= 0) {
+        throw new IOException(
+            String.format(
+                "upload memory budget of %d bytes still exhausted after %d s, %d bytes held",
+                budgetBytes, timeout.getSeconds(), bytesInFlight));
+      }
+      try {
+        wait(remainingNanos / 1_000_000, (int) (remainingNanos % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for upload memory budget");
+      }
+    }
+    bytesInFlight += reservation;
+    return reservation;
+  }
+
+  /** Replaces the reservation of a load with the size of its content, if any. */
+  private synchronized void settle(long reserved, byte[] content) {
+    if (content != null) {
+      bytesInFlight += content.length;
+      lastLoadedBytes = content.length;
+    }
+    release(reserved);
+  }
+
+  private synchronized void release(long bytes) {
+    bytesInFlight -= bytes;
+    notifyAll();
+  }
+
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  public synchronized long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  /** Share of the budget held by running uploads, above 1 when exceeded by larger contents. */
+  public synchronized double getUtilization() {
+    return budgetBytes > 0 ? (double) bytesInFlight / budgetBytes : 0;
+  }
+
+  /** Loads that had to wait for the budget. */
+  public synchronized long getWaitCount() {
+    return waitCount;
+  }
+
+  /** Content loaded under the budget, released on close. */
+  public class Lease implements AutoCloseable {
+
+    private final byte[] content;
+    private boolean closed;
+
+    private Lease(byte[] content) {
+      this.content = content;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    @Override
+    public void close() {
+      synchronized (UploadMemoryBudget.this) {
+        if (!closed && content != null) {
+          closed = true;
+          release(content.length);
+        }
+      }
+    }
+  }
+}
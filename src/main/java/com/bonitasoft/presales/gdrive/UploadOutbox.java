@@ -0,0 +1,569 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.http.FileContent;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable queue of upload jobs, drained by a pool of background workers.
+ *
+ * <p>Each job is a directory holding the content of its documents and a {@code job.json} file,
+ * written once the content is safely on disk and then replaced atomically on every change. Jobs
+ * survive a restart of the JVM: the pending ones are picked up again when the outbox starts. A
+ * failed attempt is retried with exponential backoff, resuming after the last uploaded file, until
+ * {@value #MAX_ATTEMPTS_PROPERTY} attempts have been made. Finished jobs drop their content and are
+ * deleted after the retention time.
+ *
+ * <p>The service account credentials are never written to disk: a job only stores their
+ * fingerprint, and the credentials are kept in memory once an upload gives them. A job recovered
+ * after a restart therefore waits until an upload connector runs with the same credentials. The
+ * outbox directory, set with {@value #DIRECTORY_PROPERTY}, must be on a persistent disk; it is only
+ * readable by its owner when the file system supports it.
+ */
+public class UploadOutbox {
+
+  static final String DIRECTORY_PROPERTY = "gdrive.outbox.directory";
+  static final String WORKERS_PROPERTY = "gdrive.outbox.workers";
+  static final String MAX_ATTEMPTS_PROPERTY = "gdrive.outbox.maxAttempts";
+  static final String RETRY_DELAY_PROPERTY = "gdrive.outbox.retryDelaySeconds";
+  static final String RETENTION_PROPERTY = "gdrive.outbox.retentionHours";
+
+  static final int DEFAULT_WORKERS = 4;
+  static final int DEFAULT_MAX_ATTEMPTS = 10;
+  static final long DEFAULT_RETRY_DELAY_SECONDS = 30;
+  static final long DEFAULT_RETENTION_HOURS = 72;
+
+  private static final String JOB_FILE = "job.json";
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+
+  /** Builds the Drive client of a job from its credentials. */
+  @FunctionalInterface
+  interface DriveProvider {
+    Drive get(String credentialsJson) throws IOException, GeneralSecurityException;
+  }
+
+  private static UploadOutbox instance;
+
+  private static UploadOutbox create() {
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null || directory.trim().isEmpty()) {
+      throw new IllegalStateException(
+          String.format(
+              "the %s system property must name a persistent directory to queue uploads",
+              DIRECTORY_PROPERTY));
+    }
+    return new UploadOutbox(
+        Paths.get(directory.trim()),
+        Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS),
+        Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+        Duration.ofSeconds(Long.getLong(RETRY_DELAY_PROPERTY, DEFAULT_RETRY_DELAY_SECONDS)),
+        Duration.ofHours(Long.getLong(RETENTION_PROPERTY, DEFAULT_RETENTION_HOURS)),
+        credentialsJson ->
+            ServiceAccountPool.isPool(credentialsJson)
+                ? ServiceAccountPool.getPool(
+                        credentialsJson,
+                        GDriveUtils.getAllScopes(),
+                        DriveTransportSettings.fromSystemProperties())
+                    .next()
+                : DriveServiceRegistry.getInstance()
+                    .getDriveService(credentialsJson, GDriveUtils.getAllScopes()),
+        new GDriveUtils());
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+  private final Path directory;
+  private final int maxAttempts;
+  private final Duration retryDelay;
+  private final Duration retention;
+  private final DriveProvider driveProvider;
+  private final GDriveUtils gDriveUtils;
+  private final ScheduledExecutorService workers;
+  private final Object monitor = new Object();
+  /** Credentials given by the uploads, by fingerprint, kept in memory only. */
+  private final Map<String, String> credentials = new HashMap<>();
+  /** Jobs waiting for credentials not given since the start, by fingerprint. */
+  private final Map<String, Set<String>> awaitingCredentials = new HashMap<>();
+
+  UploadOutbox(
+      Path directory,
+      int workerCount,
+      int maxAttempts,
+      Duration retryDelay,
+      Duration retention,
+      DriveProvider driveProvider,
+      GDriveUtils gDriveUtils) {
+    this.directory = directory;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.retryDelay = retryDelay;
+    this.retention = retention;
+    this.driveProvider = driveProvider;
+    this.gDriveUtils = gDriveUtils;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.workers =
+        Executors.newScheduledThreadPool(
+            Math.max(1, workerCount),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "gdrive-outbox-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      createPrivateDirectory(directory);
+    } catch (IOException e) {
+      throw new IllegalStateException("cannot create outbox directory " + directory, e);
+    }
+    recover();
+    workers.scheduleWithFixedDelay(this::purge, 1, 1, TimeUnit.HOURS);
+  }
+
+  /**
+   * Outbox of the JVM, configured with system properties and started on first use.
+   *
+   * @throws IllegalStateException when the {@value #DIRECTORY_PROPERTY} system property is not set
+   */
+  public static synchronized UploadOutbox getInstance() {
+    if (instance == null) {
+      instance = create();
+    }
+    return instance;
+  }
+
+  /**
+   * Gives the credentials to the jobs of the JVM outbox waiting for them after a restart, does
+   * nothing when the outbox is not started.
+   */
+  public static void offerCredentials(String credentialsJson) {
+    UploadOutbox outbox;
+    synchronized (UploadOutbox.class) {
+      outbox = instance;
+    }
+    if (outbox != null) {
+      outbox.registerCredentials(credentialsJson);
+    }
+  }
+
+  /**
+   * Starts a job uploading with the given credentials: documents are then added with {@link
+   * Submission#addDocument} and the job is only queued by {@link Submission#submit()}.
+   */
+  public Submission prepare(OutboxJob job, String credentialsJson) throws IOException {
+    job.setId(UUID.randomUUID().toString());
+    job.setCredentialsFingerprint(fingerprint(credentialsJson));
+    createPrivateDirectory(jobDirectory(job.getId()));
+    return new Submission(job, credentialsJson);
+  }
+
+  /** A job whose documents are being written. */
+  public class Submission {
+    private final OutboxJob job;
+    private final String credentialsJson;
+
+    private Submission(OutboxJob job, String credentialsJson) {
+      this.job = job;
+      this.credentialsJson = credentialsJson;
+    }
+
+    /**
+     * Writes the document content to disk, it is only read again by the worker. The file is created
+     * with the given app properties, none when {@code null}.
+     */
+    public void addDocument(
+        String documentName,
+        String fileName,
+        String mimeType,
+        byte[] content,
+        Map<String, String> appProperties)
+        throws IOException {
+      String contentFile = job.getItems().size() + ".bin";
+      Files.write(
+          jobDirectory(job.getId()).resolve(contentFile),
+          content,
+          StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.SYNC);
+      job.addItem(documentName, fileName, mimeType, contentFile, appProperties);
+    }
+
+    /** Makes the job durable and queues it, returns its id. */
+    public String submit() throws IOException {
+      long now = System.currentTimeMillis();
+      job.setState(OutboxJob.State.PENDING);
+      job.setAttempts(0);
+      job.setCreatedAt(now);
+      job.setUpdatedAt(now);
+      save(job);
+      registerCredentials(credentialsJson);
+      logger.info("queued upload job [{}] of {} document(s)", job.getId(), job.getItems().size());
+      schedule(job.getId(), 0);
+      return job.getId();
+    }
+  }
+
+  /** Current state of the job. */
+  public OutboxJob getJob(String jobId) throws IOException {
+    Path jobFile = jobDirectory(checkJobId(jobId)).resolve(JOB_FILE);
+    try (InputStream input = Files.newInputStream(jobFile)) {
+      return JSON_FACTORY.fromInputStream(input, StandardCharsets.UTF_8, OutboxJob.class);
+    } catch (NoSuchFileException e) {
+      throw new NoSuchFileException(jobId, null, "unknown upload job");
+    }
+  }
+
+  /** Waits until the job is finished or the timeout elapses, then returns its state. */
+  public OutboxJob await(String jobId, Duration timeout) throws IOException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    synchronized (monitor) {
+      OutboxJob job = getJob(jobId);
+      long remaining;
+      while (!job.isFinished() && (remaining = deadline - System.nanoTime()) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted while waiting for upload job " + jobId);
+        }
+        job = getJob(jobId);
+      }
+      return job;
+    }
+  }
+
+  void registerCredentials(String credentialsJson) {
+    String fingerprint = fingerprint(credentialsJson);
+    Set<String> jobIds;
+    synchronized (credentials) {
+      credentials.put(fingerprint, credentialsJson);
+      jobIds = awaitingCredentials.remove(fingerprint);
+    }
+    if (jobIds != null) {
+      logger.info("credentials given, resuming {} upload job(s)", jobIds.size());
+      for (String jobId : jobIds) {
+        schedule(jobId, 0);
+      }
+    }
+  }
+
+  /** Credentials of the job, or {@code null} after registering it as waiting for them. */
+  private String credentialsOf(OutboxJob job) {
+    synchronized (credentials) {
+      String credentialsJson = credentials.get(job.getCredentialsFingerprint());
+      if (credentialsJson == null) {
+        awaitingCredentials
+            .computeIfAbsent(job.getCredentialsFingerprint(), fingerprint -> new HashSet<>())
+            .add(job.getId());
+      }
+      return credentialsJson;
+    }
+  }
+
+  private static String fingerprint(String credentialsJson) {
+    return DriveServiceRegistry.fingerprint(credentialsJson, Collections.emptyList());
+  }
+
+  private void schedule(String jobId, long delayMillis) {
+    workers.schedule(() -> process(jobId), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void process(String jobId) {
+    OutboxJob job;
+    String credentialsJson;
+    try {
+      job = getJob(jobId);
+      if (job.isFinished()) {
+        return;
+      }
+      credentialsJson = credentialsOf(job);
+      if (credentialsJson == null) {
+        logger.info("upload job [{}] waits for an upload with its credentials", jobId);
+        return;
+      }
+      job.setState(OutboxJob.State.RUNNING);
+      job.setAttempts(job.getAttempts() + 1);
+      save(job);
+    } catch (IOException e) {
+      logger.error("cannot read upload job [{}]", jobId, e);
+      return;
+    }
+    try {
+      upload(job, credentialsJson);
+      job.setState(OutboxJob.State.DONE);
+      job.setError(null);
+      finish(job);
+      logger.info("upload job [{}] done", jobId);
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      job.setError(e.toString());
+      if (job.getAttempts() >= maxAttempts) {
+        job.setState(OutboxJob.State.FAILED);
+        finish(job);
+        logger.error("upload job [{}] failed after {} attempt(s)", jobId, job.getAttempts(), e);
+      } else {
+        long delay = retryDelayMillis(job.getAttempts());
+        job.setState(OutboxJob.State.PENDING);
+        saveQuietly(job);
+        logger.warn(
+            "upload job [{}] failed (attempt {}/{}): {}, retrying in {} ms",
+            jobId,
+            job.getAttempts(),
+            maxAttempts,
+            e.toString(),
+            delay);
+        schedule(jobId, delay);
+      }
+    }
+  }
+
+  /**
+   * Uploads what is left of the job, saving its progress after each step. The transport of the
+   * clients is kept open meanwhile, however long the upload.
+   */
+  private void upload(OutboxJob job, String credentialsJson)
+      throws IOException, GeneralSecurityException {
+    try (DriveTransportSettings.TransportLease transportLease =
+        DriveTransportSettings.fromSystemProperties().leaseTransport()) {
+      upload(job, driveProvider.get(credentialsJson));
+    }
+  }
+
+  private void upload(OutboxJob job, Drive drive) throws IOException {
+    if (!job.isFolderResolved()) {
+      String folderId = null;
+      if (job.getFolderPath() != null && !job.getFolderPath().trim().isEmpty()) {
+        folderId =
+            gDriveUtils.resolveOrCreatePath(drive, job.getDriveId(), null, job.getFolderPath());
+      }
+      if (job.isCreateFolder()) {
+        folderId =
+            gDriveUtils
+                .createFolder(
+                    drive,
+                    job.getDriveId(),
+                    folderId,
+                    job.getFolderName(),
+                    job.getFolderAppProperties())
+                .getId();
+      }
+      job.setFolderId(folderId);
+      save(job);
+    }
+    Path jobDirectory = jobDirectory(job.getId());
+    for (OutboxJob.Item item : job.getItems()) {
+      if (item.isUploaded()) {
+        continue;
+      }
+      FileContent content =
+          new FileContent(item.getMimeType(), jobDirectory.resolve(item.getContentFile()).toFile());
+      File file;
+      try {
+        file =
+            gDriveUtils.createFile(
+                drive,
+                job.getDriveId(),
+                job.getFolderId(),
+                item.getFileName(),
+                content,
+                job.getFileFields() == null
+                    ? GDriveUtils.DEFAULT_CREATED_FILE_FIELDS
+                    : job.getFileFields(),
+                item.getAppProperties());
+      } catch (HttpResponseException e) {
+        if (job.getFolderId() != null
+            && GDriveUtils.isNotFound(e, job.getFolderId())
+            && job.getItems().stream().noneMatch(OutboxJob.Item::isUploaded)) {
+          // the folder was deleted on Drive, the next attempt resolves its path again
+          logger.info("folder [{}] of upload job [{}] not found", job.getFolderId(), job.getId());
+          if (job.getFolderPath() != null) {
+            GDriveUtils.invalidatePath(job.getDriveId(), null, job.getFolderPath());
+          }
+          job.clearFolderId();
+          save(job);
+        }
+        throw e;
+      }
+      job.setUploaded(item, file);
+      save(job);
+    }
+  }
+
+  /** Saves the final state without content, and wakes up the waiting callers. */
+  private void finish(OutboxJob job) {
+    saveQuietly(job);
+    for (OutboxJob.Item item : job.getItems()) {
+      try {
+        Files.deleteIfExists(jobDirectory(job.getId()).resolve(item.getContentFile()));
+      } catch (IOException e) {
+        logger.warn("cannot delete content of upload job [{}]", job.getId(), e);
+      }
+    }
+    synchronized (monitor) {
+      monitor.notifyAll();
+    }
+  }
+
+  long retryDelayMillis(int attempt) {
+    double delay = retryDelay.toMillis() * Math.pow(2, attempt - 1d);
+    return (long) Math.min(MAX_RETRY_DELAY_MILLIS, delay);
+  }
+
+  /** Queues the unfinished jobs again, after a restart. */
+  private void recover() {
+    int recovered = 0;
+    try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(directory)) {
+      for (Path jobDirectory : jobDirectories) {
+        String jobId = jobDirectory.getFileName().toString();
+        if (!isJobId(jobId) || !Files.exists(jobDirectory.resolve(JOB_FILE))) {
+          // not a job, or never submitted because the connector failed while writing the content
+          continue;
+        }
+        OutboxJob job = getJob(jobId);
+        if (!job.isFinished()) {
+          schedule(jobId, 0);
+          recovered++;
+        }
+      }
+    } catch (IOException e) {
+      logger.error("cannot recover upload jobs from {}", directory, e);
+    }
+    if (recovered > 0) {
+      logger.info("{} pending upload job(s) recovered from {}", recovered, directory);
+    }
+    purge();
+  }
+
+  /** Deletes finished jobs, and jobs never submitted, older than the retention time. */
+  void purge() {
+    long limit = System.currentTimeMillis() - retention.toMillis();
+    try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(directory)) {
+      for (Path jobDirectory : jobDirectories) {
+        if (!isJobId(jobDirectory.getFileName().toString())) {
+          continue;
+        }
+        Path jobFile = jobDirectory.resolve(JOB_FILE);
+        boolean expired;
+        if (Files.exists(jobFile)) {
+          OutboxJob job = getJob(jobDirectory.getFileName().toString());
+          expired = job.isFinished() && job.getUpdatedAt() < limit;
+        } else {
+          expired = Files.getLastModifiedTime(jobDirectory).toMillis() < limit;
+        }
+        if (expired) {
+          deleteRecursively(jobDirectory);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("cannot purge upload jobs from {}", directory, e);
+    }
+  }
+
+  private void save(OutboxJob job) throws IOException {
+    job.setUpdatedAt(System.currentTimeMillis());
+    Path jobDirectory = jobDirectory(job.getId());
+    Path temporary = jobDirectory.resolve(JOB_FILE + ".tmp");
+    Files.write(
+        temporary,
+        JSON_FACTORY.toByteArray(job),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.SYNC);
+    try {
+      Files.move(
+          temporary,
+          jobDirectory.resolve(JOB_FILE),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, jobDirectory.resolve(JOB_FILE), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void saveQuietly(OutboxJob job) {
+    try {
+      save(job);
+    } catch (IOException e) {
+      logger.error("cannot save upload job [{}]", job.getId(), e);
+    }
+  }
+
+  private Path jobDirectory(String jobId) {
+    return directory.resolve(jobId);
+  }
+
+  /** Job ids are UUIDs, anything else could escape the outbox directory. */
+  private static String checkJobId(String jobId) {
+    if (!isJobId(jobId)) {
+      throw new IllegalArgumentException("invalid upload job id: " + jobId);
+    }
+    return jobId;
+  }
+
+  private static boolean isJobId(String name) {
+    try {
+      return name != null && UUID.fromString(name).toString().equals(name);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static void createPrivateDirectory(Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      return;
+    }
+    try {
+      Files.createDirectories(
+          path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    } catch (UnsupportedOperationException notPosix) {
+      Files.createDirectories(path);
+    } catch (FileAlreadyExistsException e) {
+      // created concurrently
+    }
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (Path child : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(child);
+      }
+    }
+  }
+
+  /** Stops the workers, queued jobs stay on disk. */
+  void shutdown() throws InterruptedException {
+    workers.shutdownNow();
+    workers.awaitTermination(10, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,50 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+
+/**
+ * Controls how file content is sent to Drive.
+ *
+ * <p>Content bigger than the resumable threshold, or of unknown length, is sent with a resumable
+ * upload in chunks of {@link #getChunkSize()} bytes. A failed chunk (5xx or I/O error such as a
+ * timeout) is retried from the last offset acknowledged by Drive instead of restarting the whole
+ * transfer.
+ */
+public class UploadSettings {
+
+  static final String CHUNK_SIZE_PROPERTY = "gdrive.upload.chunkSizeBytes";
+  static final String RESUMABLE_THRESHOLD_PROPERTY = "gdrive.upload.resumableThresholdBytes";
+
+  static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  static final long DEFAULT_RESUMABLE_THRESHOLD = 5 * 1024 * 1024L;
+
+  private final int chunkSize;
+  private final long resumableThreshold;
+
+  public UploadSettings(int chunkSize, long resumableThreshold) {
+    // Drive only accepts chunks that are a multiple of 256 KB
+    int minimum = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+    this.chunkSize = Math.max(minimum, chunkSize / minimum * minimum);
+    this.resumableThreshold = resumableThreshold;
+  }
+
+  /** Settings read from system properties, falling back to defaults. */
+  public static UploadSettings fromSystemProperties() {
+    return new UploadSettings(
+        Integer.getInteger(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE),
+        Long.getLong(RESUMABLE_THRESHOLD_PROPERTY, DEFAULT_RESUMABLE_THRESHOLD));
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public long getResumableThreshold() {
+    return resumableThreshold;
+  }
+
+  /** Whether content of the given length, {@code -1} when unknown, uses a resumable upload. */
+  public boolean isResumable(long contentLength) {
+    return contentLength < 0 || contentLength >= resumableThreshold;
+  }
+}
@@ -0,0 +1,181 @@
+package com.bonitasoft.presales.gdrive;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Upload content made of several entries zipped on the fly.
+ *
+ * <p>The archive is written by a background thread into a pipe read by the uploader, so it is never
+ * stored on disk nor held in memory: only the entry being compressed and the pipe buffer are.
+ * Entries are opened one after the other. The length of the archive is unknown, the upload is
+ * therefore resumable, and the content can only be read once. The content must be closed once the
+ * upload is over, failed or not, so that the writer is not left blocked on a pipe nobody reads.
+ */
+public class ZipStreamContent extends AbstractInputStreamContent implements Closeable {
+
+  public static final String ZIP_MIME_TYPE = "application/zip";
+
+  static final int PIPE_BUFFER_SIZE = 256 * 1024;
+
+  /** Opens the content of an entry, called from the writer thread when the entry is reached. */
+  @FunctionalInterface
+  public interface EntryContent {
+    InputStream open() throws IOException;
+  }
+
+  private final List<String> names = new ArrayList<>();
+  private final List<EntryContent> contents = new ArrayList<>();
+  private final Set<String> usedNames = new HashSet<>();
+  private final List<InputStream> streams = new ArrayList<>();
+  private final int compressionLevel;
+
+  /**
+   * @param compressionLevel from {@link Deflater#NO_COMPRESSION} to {@link
+   *     Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public ZipStreamContent(int compressionLevel) {
+    super(ZIP_MIME_TYPE);
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+        || compressionLevel > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+  }
+
+  /** Adds an entry, a name already used gets a {@code (n)} suffix. */
+  public ZipStreamContent addEntry(String name, EntryContent content) {
+    names.add(uniqueName(name));
+    contents.add(content);
+    return this;
+  }
+
+  public List<String> getEntryNames() {
+    return names;
+  }
+
+  private String uniqueName(String name) {
+    String unique = name;
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String extension = dot > 0 ? name.substring(dot) : "";
+    for (int i = 2; !usedNames.add(unique); i++) {
+      unique = String.format("%s (%d)%s", base, i, extension);
+    }
+    return unique;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    PipedInputStream pipe = new PipedInputStream(PIPE_BUFFER_SIZE);
+    PipedOutputStream sink = new PipedOutputStream(pipe);
+    AtomicReference<IOException> failure = new AtomicReference<>();
+    Thread writer =
+        new Thread(
+            () -> {
+              try (ZipOutputStream zip = new ZipOutputStream(sink)) {
+                zip.setLevel(compressionLevel);
+                for (int i = 0; i < names.size(); i++) {
+                  zip.putNextEntry(new ZipEntry(names.get(i)));
+                  try (InputStream entry = contents.get(i).open()) {
+                    entry.transferTo(zip);
+                  }
+                  zip.closeEntry();
+                }
+              } catch (IOException e) {
+                failure.set(e);
+              } catch (RuntimeException e) {
+                failure.set(new IOException(e));
+              }
+            },
+            "gdrive-zip-writer");
+    writer.setDaemon(true);
+    writer.start();
+    // a failure of the writer must fail the upload instead of ending a truncated archive
+    InputStream stream =
+        new FilterInputStream(pipe) {
+          @Override
+          public int read() throws IOException {
+            int read = super.read();
+            return read == -1 ? endOfStream() : read;
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            return read == -1 ? endOfStream() : read;
+          }
+
+          private int endOfStream() throws IOException {
+            try {
+              writer.join();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new IOException("interrupted while zipping", e);
+            }
+            if (failure.get() != null) {
+              throw new IOException("failed to zip entries", failure.get());
+            }
+            return -1;
+          }
+
+          @Override
+          public void close() throws IOException {
+            // unblocks the writer if the upload stops early
+            super.close();
+            writer.interrupt();
+          }
+        };
+    synchronized (streams) {
+      streams.add(stream);
+    }
+    return stream;
+  }
+
+  /**
+   * Closes the streams handed out, which stops the writer and closes the entry it was zipping when
+   * the upload stopped before the end of the archive.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (streams) {
+      for (InputStream stream : streams) {
+        stream.close();
+      }
+      streams.clear();
+    }
+  }
+
+  @Override
+  public long getLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean retrySupported() {
+    return false;
+  }
+
+  @Override
+  public ZipStreamContent setType(String type) {
+    return (ZipStreamContent) super.setType(type);
+  }
+
+  @Override
+  public ZipStreamContent setCloseInputStream(boolean closeInputStream) {
+    return (ZipStreamContent) super.setCloseInputStream(closeInputStream);
+  }
+}
@@ -0,0 +1,91 @@
+package com.bonitasoft.presales.connector;
+
+import static com.bonitasoft.presales.connector.GoogleDriveChanges.OUTPUT_CHANGED_FILES;
+import static com.bonitasoft.presales.connector.GoogleDriveChanges.OUTPUT_NEW_PAGE_TOKEN;
+import static com.bonitasoft.presales.connector.GoogleDriveChanges.OUTPUT_REMOVED_FILE_IDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GoogleDriveChangesTest {
+
+  public static final String DRIVE_ID = "0AMtuQGpj1EgnUk9PVA";
+
+  GoogleDriveChanges connector;
+
+  @Mock private GDriveUtils gDriveUtils;
+
+  @BeforeEach
+  public void setUp() {
+    connector = new GoogleDriveChanges();
+  }
+
+  @Test
+  void should_only_return_start_token_on_first_execution() throws Exception {
+    when(gDriveUtils.getStartPageToken(any(), eq(DRIVE_ID))).thenReturn("42");
+    connector.setInputParameters(parameters(null));
+    connector.gDriveUtils = gDriveUtils;
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat(results.get(OUTPUT_NEW_PAGE_TOKEN)).isEqualTo("42");
+    assertThat((List<?>) results.get(OUTPUT_CHANGED_FILES)).isEmpty();
+    verify(gDriveUtils, never()).listChanges(any(), anyString(), anyString(), anyString());
+  }
+
+  @Test
+  void should_report_latest_state_of_changed_files() throws Exception {
+    ChangeList changeList =
+        new ChangeList()
+            .setNewStartPageToken("43")
+            .setChanges(
+                List.of(
+                    new Change().setFileId("a").setFile(new File().setId("a").setName("v1")),
+                    new Change().setFileId("b").setFile(new File().setId("b").setName("b")),
+                    new Change().setFileId("a").setFile(new File().setId("a").setName("v2")),
+                    new Change().setFileId("c").setFile(new File().setId("c").setTrashed(true)),
+                    new Change().setFileId("d").setRemoved(true),
+                    new Change().setChangeType("drive")));
+    when(gDriveUtils.listChanges(any(), eq(DRIVE_ID), eq("42"), anyString()))
+        .thenReturn(changeList);
+    connector.setInputParameters(parameters("42"));
+    connector.gDriveUtils = gDriveUtils;
+
+    Map<String, Object> results = connector.execute();
+
+    List<Map<String, Object>> changed =
+        (List<Map<String, Object>>) results.get(OUTPUT_CHANGED_FILES);
+    assertThat(changed).extracting(file -> file.get("name")).containsExactly("b", "v2");
+    assertThat((List<String>) results.get(OUTPUT_REMOVED_FILE_IDS)).containsExactly("c", "d");
+    assertThat(results.get(OUTPUT_NEW_PAGE_TOKEN)).isEqualTo("43");
+  }
+
+  private Map<String, Object> parameters(String pageToken) {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveChanges.INPUT_NAME_DRIVE_ID, DRIVE_ID);
+    parameters.put(GoogleDriveChanges.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(GoogleDriveChanges.INPUT_NAME_PAGE_TOKEN, pageToken);
+    return parameters;
+  }
+}
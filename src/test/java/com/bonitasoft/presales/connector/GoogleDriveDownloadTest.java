@@ -0,0 +1,132 @@
+package com.bonitasoft.presales.connector;
+
+import static com.bonitasoft.presales.connector.GoogleDriveDownload.OUTPUT_DOWNLOADED_FILE_NAMES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.google.api.services.drive.model.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bonitasoft.engine.api.APIAccessor;
+import org.bonitasoft.engine.api.ProcessAPI;
+import org.bonitasoft.engine.bpm.document.DocumentValue;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+import org.bonitasoft.engine.connector.EngineExecutionContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GoogleDriveDownloadTest {
+
+  public static final long PROCESS_INSTANCE_ID = 1234L;
+  public static final String DRIVE_ID = "0AMtuQGpj1EgnUk9PVA";
+  public static final byte[] CONTENT = "File Content".getBytes(StandardCharsets.UTF_8);
+
+  GoogleDriveDownload connector;
+
+  @Mock private EngineExecutionContext engineExecutionContext;
+
+  @Mock private APIAccessor apiAccessor;
+
+  @Mock private ProcessAPI processAPI;
+
+  @Mock private GDriveUtils gDriveUtils;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    when(apiAccessor.getProcessAPI()).thenReturn(processAPI);
+    when(engineExecutionContext.getProcessInstanceId()).thenReturn(PROCESS_INSTANCE_ID);
+    when(gDriveUtils.getFile(any(), eq("pdf"), anyString()))
+        .thenReturn(
+            new File()
+                .setId("pdf")
+                .setName("invoice.pdf")
+                .setMimeType("application/pdf")
+                .setSize((long) CONTENT.length));
+    when(gDriveUtils.getFile(any(), eq("doc"), anyString()))
+        .thenReturn(
+            new File()
+                .setId("doc")
+                .setName("Notes")
+                .setMimeType("application/vnd.google-apps.document"));
+    when(gDriveUtils.downloadFileContent(any(), eq("pdf"), eq((long) CONTENT.length), eq(4)))
+        .thenReturn(CONTENT);
+
+    connector = new GoogleDriveDownload();
+    connector.setExecutionContext(engineExecutionContext);
+    connector.setAPIAccessor(apiAccessor);
+  }
+
+  @Test
+  void should_attach_downloaded_file_as_document() throws Exception {
+    connector.setInputParameters(parameters(List.of("pdf"), false));
+    connector.validateInputParameters();
+    connector.gDriveUtils = gDriveUtils;
+
+    Map<String, Object> results = connector.execute();
+
+    verify(processAPI)
+        .attachDocument(PROCESS_INSTANCE_ID, "invoice", "invoice.pdf", "application/pdf", CONTENT);
+    assertThat((List<String>) results.get(OUTPUT_DOWNLOADED_FILE_NAMES))
+        .containsExactly("invoice.pdf");
+  }
+
+  @Test
+  void should_append_files_to_document_list() throws Exception {
+    connector.setInputParameters(parameters(List.of("pdf", "pdf"), true));
+    connector.validateInputParameters();
+    connector.gDriveUtils = gDriveUtils;
+
+    connector.execute();
+
+    ArgumentCaptor<DocumentValue> values = ArgumentCaptor.forClass(DocumentValue.class);
+    verify(processAPI, times(2))
+        .addDocument(eq(PROCESS_INSTANCE_ID), eq("invoice"), any(), values.capture());
+    assertThat(values.getAllValues())
+        .extracting(DocumentValue::getFileName)
+        .containsExactly("invoice.pdf", "invoice.pdf");
+  }
+
+  @Test
+  void should_reject_several_files_for_a_single_document() {
+    connector.setInputParameters(parameters(Arrays.asList("pdf", "pdf"), false));
+
+    assertThatThrownBy(connector::validateInputParameters)
+        .isInstanceOf(ConnectorValidationException.class);
+  }
+
+  @Test
+  void should_fail_on_google_workspace_document() {
+    connector.setInputParameters(parameters(List.of("doc"), false));
+    connector.gDriveUtils = gDriveUtils;
+
+    assertThatThrownBy(connector::execute).hasMessageContaining("no binary content");
+  }
+
+  private Map<String, Object> parameters(List<String> fileIds, boolean documentList) {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveDownload.INPUT_NAME_DRIVE_ID, DRIVE_ID);
+    parameters.put(GoogleDriveDownload.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(GoogleDriveDownload.INPUT_NAME_FILE_IDS, fileIds);
+    parameters.put(GoogleDriveDownload.INPUT_NAME_DOCUMENT_NAME, "invoice");
+    parameters.put(GoogleDriveDownload.INPUT_NAME_DOCUMENT_LIST, documentList);
+    return parameters;
+  }
+}
@@ -0,0 +1,179 @@
+package com.bonitasoft.presales.connector;
+
+import static com.bonitasoft.presales.connector.GoogleDriveSweep.OUTPUT_CHECKPOINT;
+import static com.bonitasoft.presales.connector.GoogleDriveSweep.OUTPUT_COMPLETED;
+import static com.bonitasoft.presales.connector.GoogleDriveSweep.OUTPUT_FAILED_FOLDER_IDS;
+import static com.bonitasoft.presales.connector.GoogleDriveSweep.OUTPUT_FOLDER_IDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bonitasoft.presales.gdrive.BatchResult;
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GoogleDriveSweepTest {
+
+  public static final String DRIVE_ID = "0AMtuQGpj1EgnUk9PVA";
+  private static final Map<String, String> TAGS = Collections.singletonMap("bonitaFolder", "true");
+
+  GoogleDriveSweep connector;
+
+  @Mock private GDriveUtils gDriveUtils;
+
+  @BeforeEach
+  public void setUp() {
+    connector = new GoogleDriveSweep();
+    connector.gDriveUtils = gDriveUtils;
+  }
+
+  private static FileList page(String nextPageToken, String... folderIds) {
+    File[] folders = new File[folderIds.length];
+    for (int i = 0; i < folderIds.length; i++) {
+      folders[i] = new File().setId(folderIds[i]);
+    }
+    return new FileList().setFiles(Arrays.asList(folders)).setNextPageToken(nextPageToken);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BatchResult<Void> result(String key, Integer errorCode) {
+    BatchResult<Void> result = mock(BatchResult.class);
+    when(result.getKey()).thenReturn(key);
+    when(result.isSuccess()).thenReturn(errorCode == null);
+    if (errorCode != null) {
+      when(result.getError()).thenReturn(new GoogleJsonError().set("code", errorCode));
+    }
+    return result;
+  }
+
+  @Test
+  void should_delete_tagged_folders_page_by_page_until_max_folders() throws Exception {
+    when(gDriveUtils.findFolders(any(), eq(DRIVE_ID), eq(TAGS), isNull(), isNull(), eq(3)))
+        .thenReturn(page("token1", "a", "b"));
+    when(gDriveUtils.findFolders(any(), eq(DRIVE_ID), eq(TAGS), isNull(), eq("token1"), eq(1)))
+        .thenReturn(page("token2", "c"));
+    List<BatchResult<Void>> firstPage = Arrays.asList(result("a", null), result("b", 403));
+    List<BatchResult<Void>> secondPage = Collections.singletonList(result("c", 404));
+    when(gDriveUtils.deleteFiles(any(), eq(Arrays.asList("a", "b")), eq(4))).thenReturn(firstPage);
+    when(gDriveUtils.deleteFiles(any(), eq(Collections.singletonList("c")), eq(4)))
+        .thenReturn(secondPage);
+    Map<String, Object> parameters = parameters();
+    parameters.put(GoogleDriveSweep.INPUT_NAME_MAX_FOLDERS, 3);
+    connector.setInputParameters(parameters);
+    connector.validateInputParameters();
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat((List<String>) results.get(OUTPUT_FOLDER_IDS)).containsExactly("a", "b", "c");
+    assertThat((List<String>) results.get(OUTPUT_FAILED_FOLDER_IDS)).containsExactly("b");
+    assertThat(results.get(OUTPUT_COMPLETED)).isEqualTo(false);
+    assertThat(results.get(OUTPUT_CHECKPOINT)).isEqualTo("|token2");
+  }
+
+  @Test
+  void should_resume_from_checkpoint_with_same_retention_date() throws Exception {
+    DateTime cutoff = DateTime.parseRfc3339("2024-01-01T00:00:00.000Z");
+    when(gDriveUtils.findFolders(any(), eq(DRIVE_ID), eq(TAGS), eq(cutoff), eq("token2"), anyInt()))
+        .thenReturn(page(null, "d"));
+    Map<String, Object> parameters = parameters();
+    parameters.put(GoogleDriveSweep.INPUT_NAME_RETENTION_DAYS, 30);
+    parameters.put(GoogleDriveSweep.INPUT_NAME_DRY_RUN, true);
+    parameters.put(GoogleDriveSweep.INPUT_NAME_CHECKPOINT, cutoff.toStringRfc3339() + "|token2");
+    connector.setInputParameters(parameters);
+    connector.validateInputParameters();
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat((List<String>) results.get(OUTPUT_FOLDER_IDS)).containsExactly("d");
+    assertThat(results.get(OUTPUT_COMPLETED)).isEqualTo(true);
+    assertThat(results.get(OUTPUT_CHECKPOINT)).isNull();
+    verify(gDriveUtils, never()).deleteFiles(any(), any(), anyInt());
+  }
+
+  @Test
+  void should_query_folders_created_before_retention_date() throws Exception {
+    when(gDriveUtils.findFolders(any(), any(), any(), any(), any(), anyInt()))
+        .thenReturn(page(null));
+    Map<String, Object> parameters = parameters();
+    parameters.put(GoogleDriveSweep.INPUT_NAME_RETENTION_DAYS, 30);
+    connector.setInputParameters(parameters);
+    connector.validateInputParameters();
+
+    long before = System.currentTimeMillis();
+    connector.execute();
+
+    ArgumentCaptor<DateTime> cutoff = ArgumentCaptor.forClass(DateTime.class);
+    verify(gDriveUtils).findFolders(any(), any(), eq(TAGS), cutoff.capture(), isNull(), eq(1000));
+    assertThat(before - cutoff.getValue().getValue()).isBetween(2_592_000_000L, 2_592_010_000L);
+  }
+
+  @Test
+  void should_keep_expired_folder_holding_recent_folders() throws Exception {
+    // an expired tagged folder nesting a tagged folder still within its retention period
+    when(gDriveUtils.findFolders(any(), eq(DRIVE_ID), eq(TAGS), any(), isNull(), anyInt()))
+        .thenReturn(page(null, "parent", "expiredChild"));
+    when(gDriveUtils.hasFilesCreatedSince(any(), eq("parent"), any())).thenReturn(true);
+    List<BatchResult<Void>> deleted = Collections.singletonList(result("expiredChild", null));
+    when(gDriveUtils.deleteFiles(any(), eq(Collections.singletonList("expiredChild")), eq(4)))
+        .thenReturn(deleted);
+    Map<String, Object> parameters = parameters();
+    parameters.put(GoogleDriveSweep.INPUT_NAME_RETENTION_DAYS, 30);
+    connector.setInputParameters(parameters);
+    connector.validateInputParameters();
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat((List<String>) results.get(OUTPUT_FOLDER_IDS)).containsExactly("expiredChild");
+    verify(gDriveUtils, never())
+        .deleteFiles(any(), eq(Arrays.asList("parent", "expiredChild")), anyInt());
+  }
+
+  @Test
+  void should_require_app_properties_even_with_a_retention() {
+    Map<String, Object> parameters = parameters();
+    parameters.remove(GoogleDriveSweep.INPUT_NAME_APP_PROPERTIES);
+    parameters.put(GoogleDriveSweep.INPUT_NAME_RETENTION_DAYS, 30);
+    connector.setInputParameters(parameters);
+
+    assertThatThrownBy(() -> connector.validateInputParameters())
+        .isInstanceOf(ConnectorValidationException.class)
+        .hasMessageContaining("appProperties");
+  }
+
+  private Map<String, Object> parameters() {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveSweep.INPUT_NAME_DRIVE_ID, DRIVE_ID);
+    parameters.put(GoogleDriveSweep.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(
+        GoogleDriveSweep.INPUT_NAME_APP_PROPERTIES,
+        Collections.singletonList(Arrays.asList("bonitaFolder", "true")));
+    parameters.put(GoogleDriveSweep.INPUT_NAME_DRY_RUN, false);
+    return parameters;
+  }
+}
@@ -0,0 +1,139 @@
+package com.bonitasoft.presales.connector;
+
+import static com.bonitasoft.presales.connector.GoogleDriveUploadStatus.OUTPUT_CREATED_FILE_LIST;
+import static com.bonitasoft.presales.connector.GoogleDriveUploadStatus.OUTPUT_CREATED_FOLDER_ID;
+import static com.bonitasoft.presales.connector.GoogleDriveUploadStatus.OUTPUT_ERROR_MESSAGE;
+import static com.bonitasoft.presales.connector.GoogleDriveUploadStatus.OUTPUT_JOB_STATUS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bonitasoft.presales.gdrive.OutboxJob;
+import com.bonitasoft.presales.gdrive.UploadOutbox;
+import com.google.api.client.json.gson.GsonFactory;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.bonitasoft.engine.connector.ConnectorException;
+import org.bonitasoft.engine.connector.ConnectorValidationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GoogleDriveUploadStatusTest {
+
+  private static final String JOB_ID = "0b9e6a42-5d3c-4e4b-9a8e-3f1f3c1d2e10";
+
+  GoogleDriveUploadStatus connector;
+
+  @Mock private UploadOutbox outbox;
+
+  @BeforeEach
+  public void setUp() {
+    connector = new GoogleDriveUploadStatus();
+    connector.outbox = outbox;
+  }
+
+  private static OutboxJob job(String json) throws IOException {
+    return GsonFactory.getDefaultInstance().fromString(json, OutboxJob.class);
+  }
+
+  @Test
+  void should_return_created_files_of_done_job() throws Exception {
+    when(outbox.await(JOB_ID, Duration.ofSeconds(30)))
+        .thenReturn(
+            job(
+                "{\"id\":\""
+                    + JOB_ID
+                    + "\",\"state\":\"DONE\",\"createFolder\":true,\"folderId\":\"folder\","
+                    + "\"fileFields\":\"id, name\",\"items\":["
+                    + "{\"documentName\":\"doc1\",\"fileId\":\"f1\",\"file\":{\"id\":\"f1\",\"name\":\"a\"}},"
+                    + "{\"documentName\":\"doc2\",\"fileId\":\"f2\",\"file\":{\"id\":\"f2\",\"name\":\"b\"}}]}"));
+    connector.setInputParameters(parameters(30, false));
+    connector.validateInputParameters();
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat(results.get(OUTPUT_JOB_STATUS)).isEqualTo("DONE");
+    assertThat(results.get(OUTPUT_CREATED_FOLDER_ID)).isEqualTo("folder");
+    Map<String, UploadedFile> files = createdFiles(results);
+    assertThat(files).containsOnlyKeys("doc1", "doc2");
+    assertThat(files.get("doc2").getFields()).containsOnly(entry("id", "f2"), entry("name", "b"));
+  }
+
+  @Test
+  void should_read_status_without_waiting_when_no_timeout() throws Exception {
+    when(outbox.getJob(JOB_ID))
+        .thenReturn(
+            job(
+                "{\"id\":\""
+                    + JOB_ID
+                    + "\",\"state\":\"PENDING\",\"attempts\":1,\"error\":\"HTTP 503\","
+                    + "\"items\":[{\"documentName\":\"doc1\",\"fileId\":\"f1\",\"file\":{\"id\":\"f1\"}},"
+                    + "{\"documentName\":\"doc2\"}]}"));
+    connector.setInputParameters(parameters(null, false));
+
+    Map<String, Object> results = connector.execute();
+
+    assertThat(results.get(OUTPUT_JOB_STATUS)).isEqualTo("PENDING");
+    assertThat(results.get(OUTPUT_ERROR_MESSAGE)).isEqualTo("HTTP 503");
+    assertThat(createdFiles(results)).containsOnlyKeys("doc1");
+    verify(outbox, never()).await(anyString(), any());
+  }
+
+  @Test
+  void should_validate_without_drive_nor_credentials_inputs() throws Exception {
+    connector.setInputParameters(Map.of(GoogleDriveUploadStatus.INPUT_NAME_JOB_ID, JOB_ID));
+
+    connector.validateInputParameters();
+  }
+
+  @Test
+  void should_require_job_id() {
+    connector.setInputParameters(Map.of(GoogleDriveUploadStatus.INPUT_NAME_WAIT_TIMEOUT, 30));
+
+    assertThatThrownBy(() -> connector.validateInputParameters())
+        .isInstanceOf(ConnectorValidationException.class)
+        .hasMessageContaining("jobID");
+  }
+
+  @Test
+  void should_fail_when_job_failed_and_fail_on_error() throws Exception {
+    when(outbox.getJob(JOB_ID))
+        .thenReturn(job("{\"id\":\"" + JOB_ID + "\",\"state\":\"FAILED\",\"error\":\"HTTP 403\"}"));
+    connector.setInputParameters(parameters(null, true));
+
+    assertThatThrownBy(() -> connector.execute())
+        .isInstanceOf(ConnectorException.class)
+        .hasMessageContaining("HTTP 403");
+  }
+
+  /** Created file list output, each entry checked against its expected type. */
+  private static Map<String, UploadedFile> createdFiles(Map<String, Object> results) {
+    Map<String, UploadedFile> files = new LinkedHashMap<>();
+    ((Map<?, ?>) results.get(OUTPUT_CREATED_FILE_LIST))
+        .forEach((name, file) -> files.put((String) name, (UploadedFile) file));
+    return files;
+  }
+
+  private Map<String, Object> parameters(Integer waitTimeout, boolean failOnError) {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveUploadStatus.INPUT_NAME_JOB_ID, JOB_ID);
+    parameters.put(GoogleDriveUploadStatus.INPUT_NAME_WAIT_TIMEOUT, waitTimeout);
+    parameters.put(GoogleDriveUploadStatus.INPUT_NAME_FAIL_ON_ERROR, failOnError);
+    return parameters;
+  }
+}
@@ -2,26 +2,65 @@ package com.bonitasoft.presales.connector;
 
 import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_CREATED_FILE_LIST;
 import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_CREATED_FOLDER_ID;
+import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_FAILED_PERMISSIONS;
+import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_JOB_ID;
+import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_REUSED_DOCUMENTS;
+import static com.bonitasoft.presales.connector.GoogleDriveUpload.OUTPUT_UPLOADED_DOCUMENTS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.bonitasoft.presales.gdrive.BatchResult;
+import com.bonitasoft.presales.gdrive.GDriveUtils;
+import com.bonitasoft.presales.gdrive.OutboxJob;
+import com.bonitasoft.presales.gdrive.UploadMemoryBudget;
+import com.bonitasoft.presales.gdrive.UploadOutbox;
+import com.bonitasoft.presales.gdrive.ZipStreamContent;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.AbstractInputStreamContent;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.Permission;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.bonitasoft.engine.api.APIAccessor;
 import org.bonitasoft.engine.api.ProcessAPI;
 import org.bonitasoft.engine.bpm.document.Document;
 import org.bonitasoft.engine.connector.ConnectorException;
 import org.bonitasoft.engine.connector.ConnectorValidationException;
 import org.bonitasoft.engine.connector.EngineExecutionContext;
+import org.bonitasoft.engine.search.SearchOptions;
+import org.bonitasoft.engine.search.impl.SearchResultImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -44,6 +83,7 @@ class GoogleDriveUploadTest {
   public static final String DOCUMENT2_CONTENT_FILE_NAME = "myDocument2.txt";
 
   public static final long PROCESS_INSTANCE_ID = 1234L;
+  public static final String DRIVE_ID = "0AMtuQGpj1EgnUk9PVA";
   GoogleDriveUpload connector;
 
   @Mock(lenient = true)
@@ -61,17 +101,29 @@ class GoogleDriveUploadTest {
   @Mock(lenient = true)
   private ProcessAPI processAPI;
 
+  @Mock private GDriveUtils gDriveUtils;
+
+  @Mock private BatchResult<Permission> grantedPermission;
+
+  @Mock private BatchResult<Permission> failedPermission;
+
+  @Captor private ArgumentCaptor<List<Permission>> permissions;
+
+  @Captor private ArgumentCaptor<Map<String, String>> tags;
+
   @BeforeEach
   public void setUp() throws Exception {
     when(document.getName()).thenReturn(DOCUMENT_NAME);
     when(document.getContentStorageId()).thenReturn(DOCUMENT_CONTENT_ID);
     when(document.getContentMimeType()).thenReturn(DOCUMENT_CONTENT_TYPE);
     when(document.getContentFileName()).thenReturn(DOCUMENT_CONTENT_FILE_NAME);
+    when(document.getIndex()).thenReturn(-1);
 
     when(document2.getName()).thenReturn(DOCUMENT2_NAME);
     when(document2.getContentStorageId()).thenReturn(DOCUMENT2_CONTENT_ID);
     when(document2.getContentMimeType()).thenReturn(DOCUMENT2_CONTENT_TYPE);
     when(document2.getContentFileName()).thenReturn(DOCUMENT2_CONTENT_FILE_NAME);
+    when(document2.getIndex()).thenReturn(-1);
 
     when(apiAccessor.getProcessAPI()).thenReturn(processAPI);
     when(engineExecutionContext.getProcessInstanceId()).thenReturn(PROCESS_INSTANCE_ID);
@@ -83,6 +135,8 @@ class GoogleDriveUploadTest {
     when(processAPI.getLastDocument(PROCESS_INSTANCE_ID, DOCUMENT2_NAME)).thenReturn(document2);
     when(processAPI.getDocumentContent(DOCUMENT2_CONTENT_ID))
         .thenReturn("Document2 Content".getBytes(StandardCharsets.UTF_8));
+    when(processAPI.searchDocuments(any()))
+        .thenReturn(new SearchResultImpl<>(2, Arrays.asList(document, document2)));
 
     connector = new GoogleDriveUpload();
     connector.setExecutionContext(engineExecutionContext);
@@ -93,12 +147,7 @@ class GoogleDriveUploadTest {
   void test_connector() throws ConnectorException, ConnectorValidationException, IOException {
     java.io.File credentialFile = loadCredentials();
     String credentials = Files.readString(credentialFile.toPath());
-    List<String> attachments = new ArrayList<>();
-    attachments.add(DOCUMENT_NAME);
-    attachments.add(DOCUMENT2_NAME);
-    Map<String, Object> parameters = new HashMap<>();
-    parameters.put(GoogleDriveUpload.INPUT_NAME_DRIVE_ID, "0AMtuQGpj1EgnUk9PVA");
-    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, attachments);
+    Map<String, Object> parameters = baseParameters();
     parameters.put(GoogleDriveUpload.INPUT_NAME_CREDENTIALS_JSON, credentials);
     parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
     parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, TEST_FOLDER_NAME);
@@ -108,7 +157,7 @@ class GoogleDriveUploadTest {
     connector.connect();
 
     Map<String, Object> results = connector.execute();
-    Map<String, File> created = (Map<String, File>) results.get(OUTPUT_CREATED_FILE_LIST);
+    Map<String, UploadedFile> created = createdFiles(results);
     String folderId = (String) results.get(OUTPUT_CREATED_FOLDER_ID);
 
     assertThat(folderId).as("should have created a folder").isNotNull();
@@ -125,6 +174,406 @@ class GoogleDriveUploadTest {
     connector.cleanup(folderId);
   }
 
+  @Test
+  void should_upload_attachments_in_order_without_local_files() throws Exception {
+    when(gDriveUtils.createFolder(any(), eq(DRIVE_ID), isNull(), eq(TEST_FOLDER_NAME), any()))
+        .thenReturn(new File().setId("folderId"));
+    when(gDriveUtils.createOrCopyFile(
+            any(),
+            eq(DRIVE_ID),
+            eq("folderId"),
+            anyString(),
+            any(AbstractInputStreamContent.class),
+            anyString(),
+            anyString(),
+            any()))
+        .thenAnswer(
+            invocation -> {
+              String fileName = invocation.getArgument(3);
+              // first attachment is the slowest one
+              if (fileName.equals(DOCUMENT_CONTENT_FILE_NAME)) {
+                Thread.sleep(100);
+              }
+              return new File().setId(fileName + "-id");
+            });
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, TEST_FOLDER_NAME);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_MAX_PARALLEL_UPLOADS, 2);
+
+    Map<String, Object> results = execute(parameters);
+
+    Map<String, UploadedFile> created = createdFiles(results);
+    assertThat(created.keySet()).containsExactly(DOCUMENT_NAME, DOCUMENT2_NAME);
+    assertThat(created.get(DOCUMENT_NAME).getId()).isEqualTo(DOCUMENT_CONTENT_FILE_NAME + "-id");
+    assertThat(results.get(OUTPUT_CREATED_FOLDER_ID)).isEqualTo("folderId");
+    assertThat(new java.io.File(DOCUMENT_CONTENT_FILE_NAME))
+        .as("should not write document to disk")
+        .doesNotExist();
+  }
+
+  @Test
+  void should_only_return_requested_file_fields() throws Exception {
+    when(gDriveUtils.createOrCopyFile(
+            any(),
+            eq(DRIVE_ID),
+            isNull(),
+            anyString(),
+            any(AbstractInputStreamContent.class),
+            eq("5b0d9ea2b396ef02f64ae2599afb7197"),
+            eq("id, name"),
+            any()))
+        .thenReturn(new File().setId("file-id").setName("file.txt"));
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, Arrays.asList(DOCUMENT_NAME));
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FILE_FIELDS, "name");
+
+    Map<String, Object> results = execute(parameters);
+
+    assertThat(createdFiles(results).get(DOCUMENT_NAME).getFields())
+        .containsOnlyKeys("id", "name")
+        .containsEntry("id", "file-id");
+  }
+
+  @Test
+  void should_reuse_unchanged_files_and_revise_changed_ones() throws Exception {
+    Map<String, File> existingFiles = new HashMap<>();
+    // md5 of "Document Content"
+    existingFiles.put(
+        DOCUMENT_CONTENT_FILE_NAME,
+        new File().setId("unchanged-id").setMd5Checksum("5b0d9ea2b396ef02f64ae2599afb7197"));
+    existingFiles.put(
+        DOCUMENT2_CONTENT_FILE_NAME, new File().setId("changed-id").setMd5Checksum("outdated"));
+    when(gDriveUtils.resolveOrCreatePath(any(), eq(DRIVE_ID), isNull(), eq("Customers/42")))
+        .thenReturn("folderId");
+    doCallRealMethod().when(gDriveUtils).inFolderPath(any(), any(), any(), any(), any());
+    when(gDriveUtils.findFilesByName(
+            any(), eq(DRIVE_ID), eq("folderId"), anyCollection(), anyString()))
+        .thenReturn(existingFiles);
+    when(gDriveUtils.updateFileContent(
+            any(),
+            eq("changed-id"),
+            eq(DOCUMENT2_CONTENT_FILE_NAME),
+            any(AbstractInputStreamContent.class),
+            anyString(),
+            tags.capture()))
+        .thenReturn(new File().setId("changed-id"));
+    when(document2.getVersion()).thenReturn("3");
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_PATH, "Customers/42");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_SKIP_UNCHANGED_FILES, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_IDEMPOTENT_UPLOAD, true);
+
+    Map<String, Object> results = execute(parameters);
+
+    Map<String, UploadedFile> created = createdFiles(results);
+    assertThat(created.get(DOCUMENT_NAME).getId()).isEqualTo("unchanged-id");
+    assertThat(created.get(DOCUMENT2_NAME).getId()).isEqualTo("changed-id");
+    assertThat(strings(results, OUTPUT_REUSED_DOCUMENTS)).containsExactly(DOCUMENT_NAME);
+    assertThat(strings(results, OUTPUT_UPLOADED_DOCUMENTS)).containsExactly(DOCUMENT2_NAME);
+    // the revision is tagged so that a replay finds it
+    assertThat(tags.getValue())
+        .containsEntry(GoogleDriveUpload.TAG_DOCUMENT_NAME, DOCUMENT2_NAME)
+        .containsEntry(GoogleDriveUpload.TAG_DOCUMENT_VERSION, "3");
+    verify(gDriveUtils, never())
+        .createOrCopyFile(
+            any(),
+            anyString(),
+            any(),
+            anyString(),
+            any(AbstractInputStreamContent.class),
+            anyString(),
+            anyString(),
+            any());
+  }
+
+  @Test
+  void should_bundle_attachments_in_a_single_zip() throws Exception {
+    List<String> entryNames = new ArrayList<>();
+    when(gDriveUtils.createFile(
+            any(),
+            eq(DRIVE_ID),
+            isNull(),
+            eq("case.zip"),
+            any(ZipStreamContent.class),
+            eq(GDriveUtils.DEFAULT_CREATED_FILE_FIELDS)))
+        .thenAnswer(
+            invocation -> {
+              ZipStreamContent content = invocation.getArgument(4);
+              try (ZipInputStream zip = new ZipInputStream(content.getInputStream())) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                  entryNames.add(entry.getName());
+                }
+              }
+              return new File().setId("zip-id");
+            });
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_BUNDLE_AS_ZIP, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ZIP_FILE_NAME, "case.zip");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_COMPRESSION_LEVEL, 9);
+
+    Map<String, Object> results = execute(parameters);
+
+    assertThat(entryNames).containsExactly(DOCUMENT_CONTENT_FILE_NAME, DOCUMENT2_CONTENT_FILE_NAME);
+    assertThat(createdFiles(results)).containsOnlyKeys("case.zip");
+    assertThat(strings(results, OUTPUT_UPLOADED_DOCUMENTS))
+        .containsExactly(DOCUMENT_NAME, DOCUMENT2_NAME);
+  }
+
+  @Test
+  void should_give_back_zip_entry_memory_when_upload_fails_midway() throws Exception {
+    // larger than the pipe buffer once zipped, so that the writer blocks when the upload stops
+    byte[] large = new byte[1024 * 1024];
+    new Random(0).nextBytes(large);
+    when(processAPI.getDocumentContent(DOCUMENT_CONTENT_ID)).thenReturn(large);
+    when(gDriveUtils.createFile(
+            any(), eq(DRIVE_ID), isNull(), anyString(), any(ZipStreamContent.class), anyString()))
+        .thenAnswer(
+            invocation -> {
+              ZipStreamContent content = invocation.getArgument(4);
+              content.getInputStream().read(new byte[1024]);
+              throw new IOException("connection reset");
+            });
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_BUNDLE_AS_ZIP, true);
+
+    assertThatThrownBy(() -> execute(parameters)).isInstanceOf(ConnectorException.class);
+
+    await()
+        .atMost(Duration.ofSeconds(5))
+        .until(() -> UploadMemoryBudget.getShared().getBytesInFlight() == 0);
+  }
+
+  @Test
+  void should_queue_attachments_in_outbox_when_async() throws Exception {
+    UploadOutbox outbox = mock(UploadOutbox.class);
+    UploadOutbox.Submission submission = mock(UploadOutbox.Submission.class);
+    when(outbox.prepare(any(OutboxJob.class), eq("{}"))).thenReturn(submission);
+    when(submission.submit()).thenReturn("job-id");
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, TEST_FOLDER_NAME);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ASYNC, true);
+    connector.outbox = outbox;
+
+    Map<String, Object> results = execute(parameters);
+
+    assertThat(results.get(OUTPUT_JOB_ID)).isEqualTo("job-id");
+    assertThat(createdFiles(results)).isEmpty();
+    verify(submission)
+        .addDocument(
+            DOCUMENT_NAME,
+            DOCUMENT_CONTENT_FILE_NAME,
+            DOCUMENT_CONTENT_TYPE,
+            "Document Content".getBytes(StandardCharsets.UTF_8),
+            null);
+    verify(submission)
+        .addDocument(
+            DOCUMENT2_NAME,
+            DOCUMENT2_CONTENT_FILE_NAME,
+            DOCUMENT2_CONTENT_TYPE,
+            "Document2 Content".getBytes(StandardCharsets.UTF_8),
+            null);
+  }
+
+  @Test
+  void should_grant_permissions_on_created_folder() throws Exception {
+    when(gDriveUtils.createFolder(any(), eq(DRIVE_ID), isNull(), eq(TEST_FOLDER_NAME), any()))
+        .thenReturn(new File().setId("folder-id"));
+    when(gDriveUtils.createOrCopyFile(
+            any(), any(), any(), anyString(), any(), anyString(), anyString(), any()))
+        .thenReturn(new File().setId("file-id"));
+    when(failedPermission.getKey()).thenReturn("folder-id/team.example.com");
+    when(failedPermission.getError())
+        .thenReturn(new GoogleJsonError().set("message", "Invalid domain"));
+    when(grantedPermission.isSuccess()).thenReturn(true);
+    when(gDriveUtils.grantPermissions(
+            any(), eq(Collections.singletonList("folder-id")), permissions.capture(), eq(true)))
+        .thenReturn(Arrays.asList(grantedPermission, failedPermission));
+    Map<String, Object> rowAsMap = new HashMap<>();
+    rowAsMap.put("domain", "team.example.com");
+    rowAsMap.put("role", "reader");
+    rowAsMap.put("type", "domain");
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, Arrays.asList(DOCUMENT_NAME));
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, TEST_FOLDER_NAME);
+    parameters.put(
+        GoogleDriveUpload.INPUT_NAME_PERMISSIONS,
+        Arrays.asList(
+            Arrays.asList(" alice@example.com ", "writer", ""),
+            Arrays.asList("", "", ""),
+            rowAsMap));
+    parameters.put(GoogleDriveUpload.INPUT_NAME_SEND_NOTIFICATION_EMAIL, true);
+
+    Map<String, Object> results = execute(parameters);
+
+    assertThat(permissions.getValue())
+        .extracting(
+            Permission::getType,
+            Permission::getRole,
+            Permission::getEmailAddress,
+            Permission::getDomain)
+        .containsExactly(
+            tuple("user", "writer", "alice@example.com", null),
+            tuple("domain", "reader", null, "team.example.com"));
+    assertThat(strings(results, OUTPUT_FAILED_PERMISSIONS))
+        .containsExactly("folder-id/team.example.com: Invalid domain");
+  }
+
+  @Test
+  void should_not_grant_permissions_when_none_given() throws Exception {
+    when(gDriveUtils.createOrCopyFile(
+            any(), any(), any(), anyString(), any(), anyString(), anyString(), any()))
+        .thenReturn(new File().setId("file-id"));
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, Arrays.asList(DOCUMENT_NAME));
+
+    Map<String, Object> results = execute(parameters);
+
+    verify(gDriveUtils, never()).grantPermissions(any(), anyList(), anyList(), anyBoolean());
+    assertThat(strings(results, OUTPUT_FAILED_PERMISSIONS)).isEmpty();
+  }
+
+  @Test
+  void should_reject_unknown_grantee_type() {
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(
+        GoogleDriveUpload.INPUT_NAME_PERMISSIONS,
+        Arrays.asList(Arrays.asList("alice@example.com", "writer", "person")));
+    connector.setInputParameters(parameters);
+
+    assertThatThrownBy(() -> connector.validateInputParameters())
+        .isInstanceOf(ConnectorValidationException.class)
+        .hasMessageContaining("person");
+  }
+
+  @Test
+  void should_resolve_document_names_with_one_search() throws Exception {
+    when(gDriveUtils.createOrCopyFile(
+            any(), any(), any(), anyString(), any(), anyString(), anyString(), any()))
+        .thenReturn(new File().setId("file-id"));
+    ArgumentCaptor<SearchOptions> search = ArgumentCaptor.forClass(SearchOptions.class);
+    when(processAPI.searchDocuments(search.capture()))
+        .thenReturn(new SearchResultImpl<>(1, Arrays.asList(document)));
+
+    Map<String, Object> results = execute(baseParameters());
+
+    verify(processAPI, times(1)).searchDocuments(any());
+    assertThat(search.getValue().getFilters())
+        .extracting(filter -> filter.getValue())
+        .contains(PROCESS_INSTANCE_ID, DOCUMENT_NAME, DOCUMENT2_NAME);
+    verify(processAPI, never()).getLastDocument(PROCESS_INSTANCE_ID, DOCUMENT_NAME);
+    // the search did not return the second document, it is looked up by name
+    verify(processAPI).getLastDocument(PROCESS_INSTANCE_ID, DOCUMENT2_NAME);
+    assertThat(createdFiles(results)).containsOnlyKeys(DOCUMENT_NAME, DOCUMENT2_NAME);
+  }
+
+  @Test
+  void should_only_upload_documents_missing_from_previous_run() throws Exception {
+    when(document.getVersion()).thenReturn("1");
+    when(document2.getVersion()).thenReturn("2");
+    Map<String, String> folderTags = new HashMap<>();
+    folderTags.put(GoogleDriveUpload.TAG_PROCESS_INSTANCE_ID, "1234");
+    folderTags.put(GoogleDriveUpload.TAG_FOLDER, "true");
+    Map<String, String> documentTags = new HashMap<>();
+    documentTags.put(GoogleDriveUpload.TAG_PROCESS_INSTANCE_ID, "1234");
+    documentTags.put(GoogleDriveUpload.TAG_DOCUMENT_NAME, DOCUMENT_NAME);
+    documentTags.put(GoogleDriveUpload.TAG_DOCUMENT_VERSION, "1");
+    when(gDriveUtils.findFilesByAppProperties(
+            any(),
+            eq(DRIVE_ID),
+            eq(Collections.singletonMap(GoogleDriveUpload.TAG_PROCESS_INSTANCE_ID, "1234")),
+            anyString()))
+        .thenReturn(
+            Arrays.asList(
+                new File()
+                    .setId("folder-id")
+                    .setName(TEST_FOLDER_NAME)
+                    .setParents(Arrays.asList(DRIVE_ID))
+                    .setAppProperties(folderTags),
+                new File()
+                    .setId("file-id")
+                    .setParents(Arrays.asList("folder-id"))
+                    .setAppProperties(documentTags)));
+    when(gDriveUtils.createOrCopyFile(
+            any(),
+            eq(DRIVE_ID),
+            eq("folder-id"),
+            eq(DOCUMENT2_CONTENT_FILE_NAME),
+            any(),
+            anyString(),
+            anyString(),
+            tags.capture()))
+        .thenReturn(new File().setId("file2-id"));
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_FOLDER_NAME, TEST_FOLDER_NAME);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_IDEMPOTENT_UPLOAD, true);
+
+    Map<String, Object> results = execute(parameters);
+
+    verify(gDriveUtils, never()).createFolder(any(), any(), any(), any(), any());
+    verify(processAPI, never()).getDocumentContent(DOCUMENT_CONTENT_ID);
+    assertThat(tags.getValue())
+        .containsEntry(GoogleDriveUpload.TAG_PROCESS_INSTANCE_ID, "1234")
+        .containsEntry(GoogleDriveUpload.TAG_DOCUMENT_NAME, DOCUMENT2_NAME)
+        .containsEntry(GoogleDriveUpload.TAG_DOCUMENT_VERSION, "2");
+    assertThat(results.get(OUTPUT_CREATED_FOLDER_ID)).isEqualTo("folder-id");
+    assertThat(strings(results, OUTPUT_REUSED_DOCUMENTS)).containsExactly(DOCUMENT_NAME);
+    assertThat(strings(results, OUTPUT_UPLOADED_DOCUMENTS)).containsExactly(DOCUMENT2_NAME);
+    assertThat(createdFiles(results).get(DOCUMENT_NAME).getId()).isEqualTo("file-id");
+  }
+
+  @Test
+  void should_reject_async_zip_upload() {
+    Map<String, Object> parameters = baseParameters();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_BUNDLE_AS_ZIP, true);
+    parameters.put(GoogleDriveUpload.INPUT_NAME_ASYNC, true);
+    connector.setInputParameters(parameters);
+
+    assertThatThrownBy(() -> connector.validateInputParameters())
+        .isInstanceOf(ConnectorValidationException.class)
+        .hasMessageContaining("bundleAsZip");
+  }
+
+  /** Inputs uploading both documents to the root of the drive, each test overrides its own. */
+  private static Map<String, Object> baseParameters() {
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put(GoogleDriveUpload.INPUT_NAME_DRIVE_ID, DRIVE_ID);
+    parameters.put(
+        GoogleDriveUpload.INPUT_NAME_ATTACHMENTS, Arrays.asList(DOCUMENT_NAME, DOCUMENT2_NAME));
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREDENTIALS_JSON, "{}");
+    parameters.put(GoogleDriveUpload.INPUT_NAME_CREATE_FOLDER, false);
+    return parameters;
+  }
+
+  /** Validates the inputs and runs the connector against the mocked Drive utils. */
+  private Map<String, Object> execute(Map<String, Object> parameters) throws Exception {
+    connector.setInputParameters(parameters);
+    connector.validateInputParameters();
+    connector.gDriveUtils = gDriveUtils;
+    return connector.execute();
+  }
+
+  /** Created file list output, each entry checked against its expected type. */
+  private static Map<String, UploadedFile> createdFiles(Map<String, Object> results) {
+    Map<String, UploadedFile> files = new LinkedHashMap<>();
+    ((Map<?, ?>) results.get(OUTPUT_CREATED_FILE_LIST))
+        .forEach((name, file) -> files.put((String) name, (UploadedFile) file));
+    return files;
+  }
+
+  /** List output of strings, each element checked against its expected type. */
+  private static List<String> strings(Map<String, Object> results, String output) {
+    List<String> strings = new ArrayList<>();
+    for (Object value : (List<?>) results.get(output)) {
+      strings.add((String) value);
+    }
+    return strings;
+  }
+
   private java.io.File loadCredentials() throws IOException {
     var credentialFile =
         new java.io.File(System.getProperty("user.home") + SERVICE_ACCOUNT_CREDENTIALS);
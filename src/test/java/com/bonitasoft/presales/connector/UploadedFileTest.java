@@ -0,0 +1,57 @@
+package com.bonitasoft.presales.connector;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.User;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class UploadedFileTest {
+
+  @Test
+  void should_parse_top_level_names_of_field_mask() {
+    assertThat(UploadedFile.fieldNames("id, owners(emailAddress,displayName),capabilities/canEdit"))
+        .containsExactly("id", "owners", "capabilities");
+  }
+
+  @Test
+  void should_keep_only_requested_fields() {
+    File file =
+        new File()
+            .setId("id")
+            .setName("name.txt")
+            .setWebViewLink("link")
+            .setMd5Checksum("md5")
+            .setOwners(List.of(new User().setEmailAddress("owner@example.com")));
+
+    UploadedFile uploaded =
+        UploadedFile.of(file, UploadedFile.fieldNames("id,owners(emailAddress)"));
+
+    assertThat(uploaded.getFields()).containsOnlyKeys("id", "owners");
+    assertThat(uploaded.getId()).isEqualTo("id");
+    assertThat(uploaded.getWebViewLink()).isNull();
+    assertThat(uploaded.get("owners")).asList().hasSize(1);
+  }
+
+  @Test
+  void should_be_serializable() throws Exception {
+    UploadedFile uploaded =
+        UploadedFile.of(
+            new File().setId("id").setWebViewLink("link").setSize(42L),
+            UploadedFile.fieldNames("id,webViewLink,size"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(uploaded);
+    }
+    try (ObjectInputStream input =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertThat(input.readObject()).isEqualTo(uploaded);
+    }
+  }
+}
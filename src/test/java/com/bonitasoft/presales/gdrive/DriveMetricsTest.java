@@ -0,0 +1,101 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+class DriveMetricsTest {
+
+  private final DriveMetrics metrics = new DriveMetrics(false);
+
+  @Test
+  void shouldRecordLatencyAndInFlightRequests() throws Exception {
+    String result =
+        metrics.record(
+            "create file",
+            () -> {
+              assertThat(metrics.getRequestsInFlight()).isEqualTo(1);
+              return "done";
+            });
+    assertThatThrownBy(
+            () ->
+                metrics.record(
+                    "create file",
+                    () -> {
+                      throw new IOException("boom");
+                    }))
+        .isInstanceOf(IOException.class);
+
+    assertThat(result).isEqualTo("done");
+    assertThat(metrics.getRequestsInFlight()).isZero();
+    OperationStats stats = metrics.getOperationStats().get("create file");
+    assertThat(stats.getCount()).isEqualTo(2);
+    assertThat(stats.getErrorCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldEstimatePercentilesFromBuckets() {
+    OperationStats stats = new OperationStats();
+    for (int i = 0; i < 98; i++) {
+      stats.record(TimeUnit.MILLISECONDS.toNanos(20), true);
+    }
+    stats.record(TimeUnit.MILLISECONDS.toNanos(400), true);
+    stats.record(TimeUnit.MILLISECONDS.toNanos(1_500), true);
+
+    assertThat(stats.getP50Millis()).isEqualTo(25);
+    assertThat(stats.getP95Millis()).isEqualTo(25);
+    assertThat(stats.getP99Millis()).isEqualTo(500);
+    assertThat(stats.getMaxMillis()).isEqualTo(1_500);
+  }
+
+  @Test
+  void shouldComputeUploadThroughput() {
+    metrics.recordUpload(1_000_000, TimeUnit.SECONDS.toNanos(2));
+
+    assertThat(metrics.getBytesUploaded()).isEqualTo(1_000_000);
+    assertThat(metrics.getUploadThroughputBytesPerSecond()).isEqualTo(500_000);
+  }
+
+  @Test
+  void shouldPublishToMicrometer() throws Exception {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MicrometerMetrics.bind(metrics, registry);
+
+    metrics.record("list folder", () -> null);
+    metrics.recordRetry();
+    metrics.recordConnectorExecution("GoogleDriveUpload", 1_000, false);
+
+    assertThat(registry.get("gdrive.requests").tag("operation", "list folder").timer().count())
+        .isEqualTo(1);
+    assertThat(registry.get("gdrive.retries").functionCounter().count()).isEqualTo(1);
+    assertThat(
+            registry
+                .get("gdrive.connector.executions")
+                .tag("connector", "GoogleDriveUpload")
+                .tag("outcome", "error")
+                .timer()
+                .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void shouldExposeSharedMetricsThroughJmx() throws Exception {
+    DriveMetrics.getInstance().record("jmx test", () -> null);
+
+    assertThat(
+            ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(
+                    new ObjectName(
+                        DriveMetrics.JMX_DOMAIN
+                            + ":type=Operation,name="
+                            + ObjectName.quote("jmx test")),
+                    "Count"))
+        .isEqualTo(1L);
+  }
+}
@@ -0,0 +1,84 @@
+package com.bonitasoft.presales.gdrive;
+
+import static com.bonitasoft.presales.gdrive.GDriveUtils.getAllScopes;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.services.drive.Drive;
+import java.time.Duration;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class DriveServiceRegistryTest {
+
+  private static final String CLIENT_EMAIL = "connector@test-project.iam.gserviceaccount.com";
+
+  @Test
+  void shouldReuseDriveServiceForSameCredentialsAndScopes() throws Exception {
+    DriveServiceRegistry registry = new DriveServiceRegistry(Duration.ofMinutes(5));
+    String credentials = TestCredentials.serviceAccountJson(CLIENT_EMAIL);
+
+    Drive first = registry.getDriveService(credentials, getAllScopes());
+    Drive second = registry.getDriveService(credentials, getAllScopes());
+
+    assertThat(second).as("should reuse cached client").isSameAs(first);
+    assertThat(registry.size()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldBuildDistinctDriveServicePerScopes() throws Exception {
+    DriveServiceRegistry registry = new DriveServiceRegistry(Duration.ofMinutes(5));
+    String credentials = TestCredentials.serviceAccountJson(CLIENT_EMAIL);
+
+    Drive all = registry.getDriveService(credentials, getAllScopes());
+    Drive readOnly =
+        registry.getDriveService(
+            credentials,
+            Collections.singletonList("https://www.googleapis.com/auth/drive.readonly"));
+
+    assertThat(readOnly).as("should not share client across scopes").isNotSameAs(all);
+    assertThat(registry.size()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldEvictClientWhenCredentialsChange() throws Exception {
+    DriveServiceRegistry registry = new DriveServiceRegistry(Duration.ofMinutes(5));
+
+    Drive old =
+        registry.getDriveService(TestCredentials.serviceAccountJson(CLIENT_EMAIL), getAllScopes());
+    Drive rotated =
+        registry.getDriveService(TestCredentials.serviceAccountJson(CLIENT_EMAIL), getAllScopes());
+
+    assertThat(rotated).isNotSameAs(old);
+    assertThat(registry.size()).as("should drop client of rotated credentials").isEqualTo(1);
+  }
+
+  @Test
+  void shouldEvictIdleClients() throws Exception {
+    DriveServiceRegistry registry = new DriveServiceRegistry(Duration.ZERO);
+    registry.getDriveService(TestCredentials.serviceAccountJson(CLIENT_EMAIL), getAllScopes());
+    Thread.sleep(5);
+
+    registry.evictIdle();
+
+    assertThat(registry.size()).isZero();
+  }
+
+  @Test
+  void shouldKeepLeasedClientUntilLeaseIsClosed() throws Exception {
+    DriveServiceRegistry registry = new DriveServiceRegistry(Duration.ZERO);
+    DriveServiceRegistry.Lease lease =
+        registry.acquire(
+            TestCredentials.serviceAccountJson(CLIENT_EMAIL),
+            getAllScopes(),
+            DriveTransportSettings.fromSystemProperties());
+    Thread.sleep(5);
+
+    registry.evictIdle();
+    assertThat(registry.size()).as("should keep client of a running execution").isEqualTo(1);
+
+    lease.close();
+    Thread.sleep(5);
+    registry.evictIdle();
+    assertThat(registry.size()).isZero();
+  }
+}
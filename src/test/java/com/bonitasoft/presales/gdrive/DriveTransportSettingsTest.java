@@ -0,0 +1,110 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import java.time.Duration;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class DriveTransportSettingsTest {
+
+  @Test
+  void shouldShareTransportBetweenEqualSettings() throws Exception {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 5, 5, 1000, 2000, 30);
+    DriveTransportSettings same =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 5, 5, 1000, 2000, 30);
+
+    HttpTransport transport = settings.getTransport();
+
+    assertThat(transport).isInstanceOf(ApacheHttpTransport.class);
+    assertThat(same.getTransport()).as("should reuse pooled transport").isSameAs(transport);
+  }
+
+  @Test
+  void shouldShareTransportBetweenSettingsDifferingOnlyByTimeouts() throws Exception {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 6, 6, 1000, 2000, 30);
+
+    assertThat(settings.override(null, 3000, 4000).getTransport())
+        .isSameAs(settings.getTransport());
+  }
+
+  @Test
+  void shouldCloseTransportsNoLongerUsed() throws Exception {
+    DriveTransportSettings used =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 7, 7, 1000, 2000, 30);
+    DriveTransportSettings unused =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 8, 8, 1000, 2000, 30);
+    HttpTransport usedTransport = used.getTransport();
+    HttpTransport unusedTransport = unused.getTransport();
+    Thread.sleep(5);
+
+    DriveTransportSettings.closeUnusedTransports(
+        Collections.singletonList(used), Duration.ofMillis(1));
+
+    assertThat(used.getTransport()).isSameAs(usedTransport);
+    assertThat(unused.getTransport()).isNotSameAs(unusedTransport);
+  }
+
+  @Test
+  void shouldKeepLeasedTransportOpenUntilLeaseIsClosed() throws Exception {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 9, 9, 1000, 2000, 30);
+    DriveTransportSettings.TransportLease lease = settings.leaseTransport();
+    HttpTransport leasedTransport = settings.getTransport();
+    Thread.sleep(5);
+
+    // a long execution using the transport, idle for the registry
+    DriveTransportSettings.closeUnusedTransports(Collections.emptyList(), Duration.ofMillis(1));
+    assertThat(settings.getTransport()).isSameAs(leasedTransport);
+
+    lease.close();
+    lease.close();
+    Thread.sleep(5);
+    DriveTransportSettings.closeUnusedTransports(Collections.emptyList(), Duration.ofMillis(1));
+    assertThat(settings.getTransport()).isNotSameAs(leasedTransport);
+  }
+
+  @Test
+  void shouldCreateNetHttpTransport() throws Exception {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.NET_HTTP, 5, 5, 1000, 2000, 30);
+
+    assertThat(settings.getTransport()).isInstanceOf(NetHttpTransport.class);
+  }
+
+  @Test
+  void shouldOverrideOnlyProvidedValues() {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 5, 5, 1000, 2000, 30);
+
+    DriveTransportSettings overridden = settings.override(12, null, 4000);
+
+    assertThat(overridden.getMaxConnections()).isEqualTo(12);
+    assertThat(overridden.getMaxConnectionsPerRoute()).isEqualTo(12);
+    assertThat(overridden.getConnectTimeoutMillis()).isEqualTo(1000);
+    assertThat(overridden.getReadTimeoutMillis()).isEqualTo(4000);
+    assertThat(settings.getMaxConnections()).as("should not mutate original").isEqualTo(5);
+  }
+
+  @Test
+  void shouldApplyTimeoutsToRequests() throws Exception {
+    DriveTransportSettings settings =
+        new DriveTransportSettings(DriveTransportSettings.Type.APACHE, 5, 5, 1234, 5678, 30);
+
+    HttpRequest request =
+        settings
+            .getTransport()
+            .createRequestFactory(settings.withTimeouts(it -> {}))
+            .buildGetRequest(new GenericUrl("https://www.googleapis.com/drive/v3/files"));
+
+    assertThat(request.getConnectTimeout()).isEqualTo(1234);
+    assertThat(request.getReadTimeout()).isEqualTo(5678);
+  }
+}
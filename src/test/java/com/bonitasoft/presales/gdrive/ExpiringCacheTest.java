@@ -0,0 +1,39 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  void shouldExpireEntriesAfterTimeToLive() {
+    ExpiringCache<String, String> cache =
+        new ExpiringCache<>(10, Duration.ofSeconds(1), clock::get);
+    cache.put("a", "1");
+
+    clock.addAndGet(Duration.ofMillis(999).toNanos());
+    assertThat(cache.get("a")).isEqualTo("1");
+
+    clock.addAndGet(Duration.ofMillis(2).toNanos());
+    assertThat(cache.get("a")).isNull();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedEntry() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(2, Duration.ofMinutes(1), clock::get);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.get("a");
+
+    cache.put("c", "3");
+
+    assertThat(cache.get("a")).isEqualTo("1");
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isEqualTo("3");
+  }
+}
@@ -0,0 +1,121 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class FolderContentIteratorTest {
+
+  private final List<String> urls = new ArrayList<>();
+  private int unavailableResponses = 0;
+
+  @Test
+  void shouldIterateOverEveryPage() throws Exception {
+    Map<String, String> pages = new TreeMap<>();
+    pages.put("", "{\"nextPageToken\":\"p2\",\"files\":[{\"id\":\"1\"},{\"id\":\"2\"}]}");
+    pages.put("p2", "{\"nextPageToken\":\"p3\",\"files\":[]}");
+    pages.put("p3", "{\"files\":[{\"id\":\"3\"}]}");
+    Drive drive = driveServing(pages);
+
+    List<String> ids = new ArrayList<>();
+    try (FolderContentIterator iterator =
+        new GDriveUtils().iterateFolderContent(drive, "driveId", "folderId", 2, "id,name")) {
+      iterator.forEachRemaining(file -> ids.add(file.getId()));
+    }
+
+    assertThat(ids).containsExactly("1", "2", "3");
+    assertThat(urls).hasSize(3);
+    assertThat(urls.get(0))
+        .contains("pageSize=2", "fields=nextPageToken,files(id,name)", "'folderId' in parents");
+  }
+
+  @Test
+  void shouldReturnAllPagesFromFolderContent() throws Exception {
+    Map<String, String> pages = new TreeMap<>();
+    pages.put("", "{\"nextPageToken\":\"p2\",\"files\":[{\"id\":\"1\"}]}");
+    pages.put("p2", "{\"files\":[{\"id\":\"2\"}]}");
+
+    List<File> files =
+        GDriveUtils.getFolderContent(driveServing(pages), "driveId", null).getFiles();
+
+    assertThat(files).extracting(File::getId).containsExactly("1", "2");
+  }
+
+  @Test
+  void shouldRethrowListingFailure() throws Exception {
+    Drive drive = driveServing(new TreeMap<>());
+
+    try (FolderContentIterator iterator =
+        new GDriveUtils().iterateFolderContent(drive, "driveId", null, 10, "id")) {
+      assertThatThrownBy(iterator::hasNext).isInstanceOf(UncheckedIOException.class);
+    }
+  }
+
+  @Test
+  void shouldRetryListingWithRetryPolicyOfUtils() throws Exception {
+    Map<String, String> pages = new TreeMap<>();
+    pages.put("", "{\"files\":[{\"id\":\"1\"}]}");
+    unavailableResponses = 1;
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.setRetryPolicy(new RetryPolicy(2, 0, 0));
+
+    List<String> ids = new ArrayList<>();
+    try (FolderContentIterator iterator =
+        gDriveUtils.iterateFolderContent(driveServing(pages), "driveId", null, 10, "id")) {
+      iterator.forEachRemaining(file -> ids.add(file.getId()));
+    }
+
+    assertThat(ids).containsExactly("1");
+    assertThat(urls).hasSize(2);
+  }
+
+  /**
+   * Serves the page registered for the requested page token, 404 when there is none, after {@link
+   * #unavailableResponses} 503 responses.
+   */
+  private Drive driveServing(Map<String, String> pages) {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            String decoded = URLDecoder.decode(url, StandardCharsets.UTF_8);
+            urls.add(decoded);
+            String token = decoded.contains("pageToken=") ? decoded.split("pageToken=")[1] : "";
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                if (unavailableResponses > 0) {
+                  unavailableResponses--;
+                  return new MockLowLevelHttpResponse().setStatusCode(503);
+                }
+                String page = pages.get(token.split("&")[0]);
+                return page == null
+                    ? new MockLowLevelHttpResponse().setStatusCode(404)
+                    : new MockLowLevelHttpResponse()
+                        .setContentType("application/json")
+                        .setContent(page);
+              }
+            };
+          }
+        };
+    return new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+        .setApplicationName("test")
+        .build();
+  }
+}
@@ -0,0 +1,198 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.Permission;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsBatchTest {
+
+  private static final String BOUNDARY = "batch_boundary";
+
+  @Test
+  void shouldReportPerItemResultsOfBatchedDeletes() throws Exception {
+    List<String> batchBodies = new ArrayList<>();
+    Drive drive =
+        driveReplying(
+            batchBodies,
+            part("204 No Content", null),
+            part("404 Not Found", "{\"error\":{\"code\":404,\"message\":\"File not found\"}}"));
+
+    List<BatchResult<Void>> results =
+        new GDriveUtils().deleteFiles(drive, Arrays.asList("file1", "file2"));
+
+    assertThat(batchBodies).as("should send a single batch").hasSize(1);
+    assertThat(batchBodies.get(0)).contains("DELETE", "file1", "file2");
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).getKey()).isEqualTo("file1");
+    assertThat(results.get(0).isSuccess()).isTrue();
+    assertThat(results.get(1).getKey()).isEqualTo("file2");
+    assertThat(results.get(1).isSuccess()).isFalse();
+    assertThat(results.get(1).getError().getCode()).isEqualTo(404);
+  }
+
+  @Test
+  void shouldCreateFoldersInOneBatch() throws Exception {
+    List<String> batchBodies = new ArrayList<>();
+    Drive drive =
+        driveReplying(
+            batchBodies,
+            part("200 OK", "{\"id\":\"id1\",\"name\":\"a\"}"),
+            part("200 OK", "{\"id\":\"id2\",\"name\":\"b\"}"));
+
+    List<BatchResult<File>> results =
+        new GDriveUtils().createFolders(drive, "driveId", "parentId", Arrays.asList("a", "b"));
+
+    assertThat(batchBodies).hasSize(1);
+    assertThat(results).extracting(BatchResult::getKey).containsExactly("a", "b");
+    assertThat(results).extracting(it -> it.getValue().getId()).containsExactly("id1", "id2");
+  }
+
+  @Test
+  void shouldGrantEachPermissionInItsOwnBatch() throws Exception {
+    List<String> batchBodies = new ArrayList<>();
+    Drive drive =
+        driveReplying(
+            batchBodies,
+            part("200 OK", "{\"id\":\"perm1\"}"),
+            part("200 OK", "{\"id\":\"perm2\"}"));
+
+    List<BatchResult<Permission>> results =
+        new GDriveUtils()
+            .grantPermissions(
+                drive,
+                Arrays.asList("file1", "file2"),
+                Arrays.asList(
+                    new Permission()
+                        .setType("user")
+                        .setRole("writer")
+                        .setEmailAddress("alice@example.com"),
+                    new Permission().setType("domain").setRole("reader").setDomain("example.com")),
+                false);
+
+    assertThat(batchBodies).as("one batch per permission, not per file").hasSize(2);
+    assertThat(batchBodies.get(0))
+        .contains("file1/permissions", "file2/permissions", "sendNotificationEmail=false");
+    assertThat(batchBodies.get(1)).doesNotContain("sendNotificationEmail");
+    assertThat(results)
+        .extracting(BatchResult::getKey)
+        .containsExactly(
+            "file1/alice@example.com",
+            "file2/alice@example.com",
+            "file1/example.com",
+            "file2/example.com");
+    assertThat(results).allMatch(BatchResult::isSuccess);
+  }
+
+  @Test
+  void shouldSplitRequestsInBatchesOfHundred() throws Exception {
+    List<String> batchBodies = new ArrayList<>();
+    Drive drive = driveReplying(batchBodies);
+
+    new GDriveUtils().deleteFiles(drive, Collections.nCopies(150, "fileId"));
+
+    assertThat(batchBodies).hasSize(2);
+  }
+
+  @Test
+  void shouldDeleteBatchesInParallelKeepingResultOrder() throws Exception {
+    List<String> batchBodies = Collections.synchronizedList(new ArrayList<>());
+    Drive drive = driveReplying(batchBodies);
+    List<String> fileIds = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      fileIds.add("file" + i);
+    }
+
+    List<BatchResult<Void>> results = new GDriveUtils().deleteFiles(drive, fileIds, 3);
+
+    assertThat(batchBodies).hasSize(3);
+    assertThat(results).extracting(BatchResult::getKey).containsExactlyElementsOf(fileIds);
+    assertThat(results).allMatch(BatchResult::isSuccess);
+  }
+
+  @Test
+  void shouldTakeOneRateLimiterTokenPerBatchedRequest() throws Exception {
+    RateLimiter rateLimiter = new RateLimiter(1000, () -> 0L);
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.rateLimiter = rateLimiter;
+    Drive drive = driveReplying(new ArrayList<>(), rateLimiter.throttling(request -> {}));
+
+    gDriveUtils.deleteFiles(drive, Collections.nCopies(150, "fileId"));
+
+    int tokensLeft = 0;
+    while (rateLimiter.reserve() == 0) {
+      tokensLeft++;
+    }
+    assertThat(tokensLeft).as("150 requests in 2 HTTP calls").isEqualTo(850);
+  }
+
+  private static String part(String status, String json) {
+    return "HTTP/1.1 "
+        + status
+        + "\r\n"
+        + (json == null ? "\r\n" : "Content-Type: application/json\r\n\r\n" + json + "\r\n");
+  }
+
+  /** Replies to every batch with the given parts, or with 204 for each request when empty. */
+  private static Drive driveReplying(List<String> batchBodies, String... parts) {
+    return driveReplying(batchBodies, null, parts);
+  }
+
+  private static Drive driveReplying(
+      List<String> batchBodies, HttpRequestInitializer initializer, String... parts) {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() throws IOException {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                getStreamingContent().writeTo(body);
+                String request = body.toString(StandardCharsets.UTF_8);
+                batchBodies.add(request);
+                List<String> responses = new ArrayList<>(Arrays.asList(parts));
+                if (responses.isEmpty()) {
+                  int count = request.split("(?i)content-id").length - 1;
+                  responses.addAll(Collections.nCopies(count, part("204 No Content", null)));
+                }
+                StringBuilder content = new StringBuilder();
+                for (int i = 0; i < responses.size(); i++) {
+                  content
+                      .append("--")
+                      .append(BOUNDARY)
+                      .append("\r\nContent-Type: application/http\r\n")
+                      .append("Content-ID: <response-")
+                      .append(i + 1)
+                      .append(">\r\n\r\n")
+                      .append(responses.get(i));
+                }
+                content.append("--").append(BOUNDARY).append("--\r\n");
+                return new MockLowLevelHttpResponse()
+                    .setContentType("multipart/mixed; boundary=" + BOUNDARY)
+                    .setContent(content.toString());
+              }
+            };
+          }
+        };
+    return new Drive.Builder(transport, GsonFactory.getDefaultInstance(), initializer)
+        .setApplicationName("test")
+        .build();
+  }
+}
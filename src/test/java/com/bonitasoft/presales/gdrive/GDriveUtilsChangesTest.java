@@ -0,0 +1,79 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsChangesTest {
+
+  private final List<String> urls = new ArrayList<>();
+  private Drive drive;
+
+  @BeforeEach
+  void setUp() {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            String decoded = URLDecoder.decode(url, StandardCharsets.UTF_8);
+            urls.add(decoded);
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                String content;
+                if (decoded.contains("/changes/startPageToken")) {
+                  content = "{\"startPageToken\":\"10\"}";
+                } else if (decoded.contains("pageToken=10")) {
+                  content =
+                      "{\"nextPageToken\":\"11\",\"changes\":"
+                          + "[{\"fileId\":\"a\",\"file\":{\"id\":\"a\",\"name\":\"a.txt\"}}]}";
+                } else {
+                  content =
+                      "{\"newStartPageToken\":\"12\",\"changes\":"
+                          + "[{\"fileId\":\"b\",\"removed\":true}]}";
+                }
+                return new MockLowLevelHttpResponse()
+                    .setContentType("application/json")
+                    .setContent(content);
+              }
+            };
+          }
+        };
+    drive =
+        new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+  }
+
+  @Test
+  void shouldGetStartPageTokenOfDrive() throws Exception {
+    assertThat(new GDriveUtils().getStartPageToken(drive, "driveId")).isEqualTo("10");
+    assertThat(urls.get(0)).contains("driveId=driveId");
+  }
+
+  @Test
+  void shouldListChangesOfEveryPage() throws Exception {
+    ChangeList changes = new GDriveUtils().listChanges(drive, "driveId", "10", "id,name");
+
+    assertThat(changes.getChanges()).extracting(Change::getFileId).containsExactly("a", "b");
+    assertThat(changes.getNewStartPageToken()).isEqualTo("12");
+    assertThat(urls).hasSize(2);
+    assertThat(urls.get(0))
+        .contains("driveId=driveId", "changes(changeType,fileId,removed,time,file(id,name))");
+    assertThat(urls.get(1)).contains("pageToken=11");
+  }
+}
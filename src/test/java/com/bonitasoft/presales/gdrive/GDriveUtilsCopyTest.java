@@ -0,0 +1,110 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsCopyTest {
+
+  private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+  private static final String CONTENT_MD5 = GDriveUtils.md5Hex(CONTENT);
+
+  private final List<String> requests = new ArrayList<>();
+  private volatile int copyStatus = 200;
+  private volatile String copyMd5 = CONTENT_MD5;
+  private int uploads;
+  private GDriveUtils gDriveUtils;
+  private Drive drive;
+
+  @BeforeEach
+  void setUp() {
+    GDriveUtils.UPLOADED_CONTENT.clear();
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            requests.add(method + " " + url.replaceAll("\\?.*", ""));
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                MockLowLevelHttpResponse response =
+                    new MockLowLevelHttpResponse().setContentType("application/json");
+                if (url.contains("/copy")) {
+                  return copyStatus == 200
+                      ? response.setContent("{\"id\":\"copy\",\"md5Checksum\":\"" + copyMd5 + "\"}")
+                      : response
+                          .setStatusCode(copyStatus)
+                          .setContent("{\"error\":{\"code\":" + copyStatus + "}}");
+                }
+                if (method.equals("DELETE")) {
+                  return response.setStatusCode(204);
+                }
+                uploads++;
+                return response.setContent("{\"id\":\"upload" + uploads + "\"}");
+              }
+            };
+          }
+        };
+    drive =
+        new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+    gDriveUtils = new GDriveUtils();
+    gDriveUtils.setRetryPolicy(new RetryPolicy(1, 0, 0));
+  }
+
+  private File createOrCopy(String folderId) throws Exception {
+    return gDriveUtils.createOrCopyFile(
+        drive,
+        "driveId",
+        folderId,
+        "file.txt",
+        new ByteArrayContent("text/plain", CONTENT),
+        CONTENT_MD5,
+        "id");
+  }
+
+  @Test
+  void shouldCopyContentUploadedBefore() throws Exception {
+    assertThat(createOrCopy("folder1").getId()).isEqualTo("upload1");
+
+    File copy = createOrCopy("folder2");
+
+    assertThat(copy.getId()).isEqualTo("copy");
+    assertThat(requests)
+        .containsExactly(
+            "POST https://www.googleapis.com/upload/drive/v3/files",
+            "POST https://www.googleapis.com/drive/v3/files/upload1/copy");
+  }
+
+  @Test
+  void shouldUploadWhenSourceIsGone() throws Exception {
+    createOrCopy("folder1");
+    copyStatus = 404;
+
+    assertThat(createOrCopy("folder2").getId()).isEqualTo("upload2");
+    assertThat(GDriveUtils.UPLOADED_CONTENT.get(CONTENT_MD5)).isEqualTo("upload2");
+  }
+
+  @Test
+  void shouldDeleteCopyAndUploadWhenSourceContentChanged() throws Exception {
+    createOrCopy("folder1");
+    copyMd5 = "changed";
+
+    assertThat(createOrCopy("folder2").getId()).isEqualTo("upload2");
+    assertThat(requests).contains("DELETE https://www.googleapis.com/drive/v3/files/copy");
+  }
+}
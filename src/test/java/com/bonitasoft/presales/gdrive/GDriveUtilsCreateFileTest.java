@@ -0,0 +1,68 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsCreateFileTest {
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private GDriveUtils gDriveUtils;
+  private Drive drive;
+
+  @BeforeEach
+  void setUp() {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                if (requests.incrementAndGet() == 1) {
+                  return new MockLowLevelHttpResponse()
+                      .setStatusCode(429)
+                      .setContentType("application/json")
+                      .setContent("{\"error\":{\"code\":429,\"message\":\"Rate Limit Exceeded\"}}");
+                }
+                return new MockLowLevelHttpResponse()
+                    .setContentType("application/json")
+                    .setContent("{\"id\":\"fileId\"}");
+              }
+            };
+          }
+        };
+    drive =
+        new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+    gDriveUtils = new GDriveUtils();
+    gDriveUtils.setRetryPolicy(new RetryPolicy(2, 0, 0));
+  }
+
+  @Test
+  void shouldSendNewUploadWhenCreateIsRateLimited() throws Exception {
+    File file =
+        gDriveUtils.createFile(
+            drive,
+            "driveId",
+            "folderId",
+            "file.txt",
+            new ByteArrayContent("text/plain", "content".getBytes(StandardCharsets.UTF_8)));
+
+    assertThat(file.getId()).isEqualTo("fileId");
+    assertThat(requests).hasValue(2);
+  }
+}
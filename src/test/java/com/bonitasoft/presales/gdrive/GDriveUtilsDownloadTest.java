@@ -0,0 +1,107 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsDownloadTest {
+
+  private final byte[] fileContent = new byte[1000];
+  private final List<String> ranges = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean ignoreRanges = new AtomicBoolean();
+
+  GDriveUtilsDownloadTest() {
+    new Random(42).nextBytes(fileContent);
+  }
+
+  @Test
+  void shouldDownloadBigFileWithConcurrentRanges() throws Exception {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.setDownloadSettings(new DownloadSettings(300, 500));
+
+    byte[] content = gDriveUtils.downloadFileContent(drive(), "fileId", fileContent.length, 4);
+
+    assertThat(content).isEqualTo(fileContent);
+    assertThat(ranges)
+        .containsExactlyInAnyOrder(
+            "bytes=0-299", "bytes=300-599", "bytes=600-899", "bytes=900-999");
+  }
+
+  @Test
+  void shouldDownloadSmallFileInOneRequest() throws Exception {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.setDownloadSettings(new DownloadSettings(300, 5000));
+
+    byte[] content = gDriveUtils.downloadFileContent(drive(), "fileId", fileContent.length, 4);
+
+    assertThat(content).isEqualTo(fileContent);
+    assertThat(ranges).containsExactly("none");
+  }
+
+  @Test
+  void shouldStreamFileContent() throws Exception {
+    try (InputStream content = new GDriveUtils().downloadFile(drive(), "fileId")) {
+      assertThat(content.readAllBytes()).isEqualTo(fileContent);
+    }
+    assertThat(ranges).containsExactly("none");
+  }
+
+  @Test
+  void shouldFailWhenRangeIsIgnored() {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.setDownloadSettings(new DownloadSettings(300, 500));
+    gDriveUtils.setRetryPolicy(new RetryPolicy(1, 0, 0));
+    ignoreRanges.set(true);
+
+    assertThatThrownBy(
+            () -> gDriveUtils.downloadFileContent(drive(), "fileId", fileContent.length, 2))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("HTTP 200");
+  }
+
+  /** Serves the file content, honouring the Range header unless told to ignore it. */
+  private Drive drive() {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                String range = getFirstHeaderValue("range");
+                ranges.add(range == null ? "none" : range);
+                MockLowLevelHttpResponse response =
+                    new MockLowLevelHttpResponse().setContentType("application/octet-stream");
+                if (range == null || ignoreRanges.get()) {
+                  return response.setContent(fileContent);
+                }
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(bounds[0]);
+                int end = Integer.parseInt(bounds[1]);
+                return response
+                    .setStatusCode(206)
+                    .setContent(Arrays.copyOfRange(fileContent, start, end + 1));
+              }
+            };
+          }
+        };
+    return new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+        .setApplicationName("test")
+        .build();
+  }
+}
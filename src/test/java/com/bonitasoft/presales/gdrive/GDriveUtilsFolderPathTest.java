@@ -0,0 +1,140 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GDriveUtilsFolderPathTest {
+
+  private final List<String> requests = new ArrayList<>();
+  private Drive drive;
+
+  @BeforeEach
+  void setUp() {
+    GDriveUtils.FOLDER_IDS.clear();
+    // "Customers" already exists, every other folder gets created
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          int created = 0;
+
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            requests.add(method + " " + URLDecoder.decode(url, StandardCharsets.UTF_8));
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                MockLowLevelHttpResponse response =
+                    new MockLowLevelHttpResponse().setContentType("application/json");
+                if (method.equals("GET")) {
+                  boolean exists = requests.get(requests.size() - 1).contains("'Customers'");
+                  return response.setContent(
+                      exists ? "{\"files\":[{\"id\":\"customers\"}]}" : "{\"files\":[]}");
+                }
+                return response.setContent("{\"id\":\"created" + ++created + "\"}");
+              }
+            };
+          }
+        };
+    drive =
+        new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+  }
+
+  @Test
+  void shouldCreateOnlyMissingFolders() throws Exception {
+    String folderId =
+        new GDriveUtils().resolveOrCreatePath(drive, "driveId", null, "/Customers/42/ 2024 /");
+
+    assertThat(folderId).isEqualTo("created2");
+    assertThat(requests).hasSize(5);
+    assertThat(requests.get(0)).startsWith("GET").contains("'driveId' in parents", "'Customers'");
+    assertThat(requests.get(1)).startsWith("GET").contains("'customers' in parents", "'42'");
+    assertThat(requests.get(2)).startsWith("POST");
+    assertThat(requests.get(3)).startsWith("GET").contains("'created1' in parents", "'2024'");
+    assertThat(requests.get(4)).startsWith("POST");
+  }
+
+  @Test
+  void shouldResolveKnownPathWithoutApiCall() throws Exception {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.resolveOrCreatePath(drive, "driveId", null, "Customers/42");
+    requests.clear();
+
+    String folderId = gDriveUtils.resolveOrCreatePath(drive, "driveId", null, "Customers/42");
+
+    assertThat(folderId).isEqualTo("created1");
+    assertThat(requests).isEmpty();
+  }
+
+  @Test
+  void shouldResolvePathAgainWhenCachedFolderWasDeleted() throws Exception {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.resolveOrCreatePath(drive, "driveId", null, "Customers/42");
+    requests.clear();
+    List<String> folderIds = new ArrayList<>();
+
+    gDriveUtils.inFolderPath(
+        drive,
+        "driveId",
+        null,
+        "Customers/42",
+        folderId -> {
+          folderIds.add(folderId);
+          if (folderId.equals("created1")) {
+            throw new HttpResponseException.Builder(404, "Not Found", new HttpHeaders())
+                .setMessage("404 Not Found\nFile not found: created1.")
+                .build();
+          }
+        });
+
+    assertThat(folderIds).containsExactly("created1", "created2");
+    assertThat(requests).hasSize(3);
+    assertThat(requests.get(0)).startsWith("GET").contains("'driveId' in parents", "'Customers'");
+    assertThat(requests.get(1)).startsWith("GET").contains("'customers' in parents", "'42'");
+    assertThat(requests.get(2)).startsWith("POST");
+  }
+
+  @Test
+  void shouldNotResolvePathAgainWhenAnotherFileIsNotFound() throws Exception {
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.resolveOrCreatePath(drive, "driveId", null, "Customers/42");
+    requests.clear();
+
+    assertThatThrownBy(
+            () ->
+                gDriveUtils.inFolderPath(
+                    drive,
+                    "driveId",
+                    null,
+                    "Customers/42",
+                    folderId -> {
+                      throw new HttpResponseException.Builder(404, "Not Found", new HttpHeaders())
+                          .setMessage("404 Not Found\nFile not found: template.")
+                          .build();
+                    }))
+        .isInstanceOf(HttpResponseException.class);
+    assertThat(requests).isEmpty();
+    assertThat(GDriveUtils.FOLDER_IDS.size()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldEscapeQuotesInFolderNames() {
+    assertThat(GDriveUtils.escapeQueryValue("O'Neil\\")).isEqualTo("O\\'Neil\\\\");
+  }
+}
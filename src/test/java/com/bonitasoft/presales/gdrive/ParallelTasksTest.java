@@ -0,0 +1,102 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ParallelTasksTest {
+
+  @Test
+  void shouldReturnResultsInTaskOrder() throws Exception {
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      int value = i;
+      tasks.add(
+          () -> {
+            // later tasks finish first
+            Thread.sleep(10L * (10 - value));
+            return value;
+          });
+    }
+
+    List<Integer> results = ParallelTasks.runAll(tasks, 4);
+
+    assertThat(results).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+  }
+
+  @Test
+  void shouldNotExceedParallelism() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      tasks.add(
+          () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            return 0;
+          });
+    }
+
+    ParallelTasks.runAll(tasks, 3);
+
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  void shouldCancelRemainingTasksOnFirstFailure() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    tasks.add(
+        () -> {
+          started.countDown();
+          try {
+            Thread.sleep(10_000);
+          } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw e;
+          }
+          return 0;
+        });
+    tasks.add(
+        () -> {
+          // fail once the slow task is running, a task cancelled before it starts is never
+          // interrupted
+          started.await();
+          throw new IOException("upload failed");
+        });
+
+    assertThatThrownBy(() -> ParallelTasks.runAll(tasks, 2))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IOException.class);
+    assertThat(interrupted.await(5, TimeUnit.SECONDS)).as("should cancel slow task").isTrue();
+  }
+
+  @Test
+  void shouldRunSequentiallyWithoutParallelism() throws Exception {
+    List<String> threads = new ArrayList<>();
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      int value = i;
+      tasks.add(
+          () -> {
+            threads.add(Thread.currentThread().getName());
+            return value;
+          });
+    }
+
+    assertThat(ParallelTasks.runAll(tasks, 1)).containsExactly(0, 1, 2);
+    assertThat(threads).containsOnly(Thread.currentThread().getName());
+  }
+}
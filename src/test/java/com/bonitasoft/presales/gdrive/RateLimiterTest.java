@@ -0,0 +1,54 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  void shouldAllowBurstThenSpreadRequests() {
+    RateLimiter rateLimiter = new RateLimiter(10, clock::get);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(rateLimiter.reserve()).as("burst of one second").isZero();
+    }
+    assertThat(rateLimiter.reserve()).isEqualTo(100_000_000L);
+    assertThat(rateLimiter.reserve()).isEqualTo(200_000_000L);
+  }
+
+  @Test
+  void shouldRefillOverTime() {
+    RateLimiter rateLimiter = new RateLimiter(10, clock::get);
+    for (int i = 0; i < 10; i++) {
+      rateLimiter.reserve();
+    }
+
+    clock.addAndGet(500_000_000L);
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(rateLimiter.reserve()).isZero();
+    }
+    assertThat(rateLimiter.reserve()).isPositive();
+  }
+
+  @Test
+  void shouldTakeSeveralTokensAtOnce() {
+    RateLimiter rateLimiter = new RateLimiter(10, clock::get);
+
+    assertThat(rateLimiter.reserve(10)).isZero();
+    assertThat(rateLimiter.reserve(5)).isEqualTo(500_000_000L);
+  }
+
+  @Test
+  void shouldNotLimitWhenDisabled() {
+    RateLimiter rateLimiter = new RateLimiter(0, clock::get);
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(rateLimiter.reserve()).isZero();
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ResumableUploadsTest {
+
+  private static final int CHUNK = 256 * 1024;
+  private static final int LENGTH = 2 * CHUNK + 1000;
+
+  @Test
+  void shouldResumeFromLastAcknowledgedOffsetAfterServerError() throws Exception {
+    List<String> contentRanges = new ArrayList<>();
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          int chunkRequests = 0;
+
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                if (method.equals("POST")) {
+                  return response.addHeader(
+                      "Location", "https://upload.test/files?uploadType=resumable&upload_id=42");
+                }
+                String contentRange = getFirstHeaderValue("Content-Range");
+                contentRanges.add(contentRange);
+                if (contentRange.startsWith("bytes */")) {
+                  // status query after the failure: only the first chunk was received
+                  return response.setStatusCode(308).addHeader("Range", "bytes=0-" + (CHUNK - 1));
+                }
+                chunkRequests++;
+                if (chunkRequests == 2) {
+                  return response.setStatusCode(503);
+                }
+                if (contentRange.endsWith("/" + LENGTH) && !contentRange.contains("*")) {
+                  long end = Long.parseLong(contentRange.replaceAll(".*-(\\d+)/.*", "$1"));
+                  if (end == LENGTH - 1) {
+                    return response
+                        .setContentType("application/json")
+                        .setContent("{\"id\":\"fileId\"}");
+                  }
+                  return response.setStatusCode(308).addHeader("Range", "bytes=0-" + end);
+                }
+                return response.setStatusCode(500);
+              }
+            };
+          }
+        };
+    Drive drive =
+        new Drive.Builder(
+                transport, GsonFactory.getDefaultInstance(), ResumableUploads.withRetries(it -> {}))
+            .setApplicationName("test")
+            .build();
+    GDriveUtils gDriveUtils = new GDriveUtils();
+    gDriveUtils.setUploadSettings(new UploadSettings(CHUNK, 0));
+
+    File file =
+        gDriveUtils.createFile(
+            drive,
+            "driveId",
+            "folderId",
+            "big.bin",
+            new ByteArrayContent("application/octet-stream", new byte[LENGTH]));
+
+    assertThat(file.getId()).isEqualTo("fileId");
+    assertThat(contentRanges)
+        .containsExactly(
+            "bytes 0-" + (CHUNK - 1) + "/" + LENGTH,
+            "bytes " + CHUNK + "-" + (2 * CHUNK - 1) + "/" + LENGTH,
+            "bytes */" + LENGTH,
+            "bytes " + CHUNK + "-" + (2 * CHUNK - 1) + "/" + LENGTH,
+            "bytes " + 2 * CHUNK + "-" + (LENGTH - 1) + "/" + LENGTH);
+  }
+
+  @Test
+  void shouldRoundChunkSizeToUploadGranularity() {
+    UploadSettings settings = new UploadSettings(CHUNK + 1000, 10);
+
+    assertThat(settings.getChunkSize()).isEqualTo(CHUNK);
+    assertThat(settings.isResumable(-1)).as("unknown length").isTrue();
+    assertThat(settings.isResumable(9)).isFalse();
+    assertThat(settings.isResumable(10)).isTrue();
+  }
+}
@@ -0,0 +1,99 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+  private final List<Long> sleeps = new ArrayList<>();
+  private final RetryPolicy retryPolicy = new RetryPolicy(4, 100, 1000, sleeps::add);
+
+  @Test
+  void shouldRetryRateLimitedCallHonoringRetryAfter() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+
+    String result =
+        retryPolicy.execute(
+            "create file",
+            false,
+            () -> {
+              if (calls.incrementAndGet() == 1) {
+                throw httpError(429, "3");
+              }
+              return "done";
+            });
+
+    assertThat(result).isEqualTo("done");
+    assertThat(sleeps).containsExactly(3000L);
+  }
+
+  @Test
+  void shouldNotRetryServerErrorOfNonIdempotentCall() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                retryPolicy.execute(
+                    "create folder",
+                    false,
+                    () -> {
+                      calls.incrementAndGet();
+                      throw httpError(503, null);
+                    }))
+        .isInstanceOf(HttpResponseException.class);
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRetryIdempotentCallWithGrowingBackoffUntilMaxAttempts() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                retryPolicy.execute(
+                    "list folder",
+                    true,
+                    () -> {
+                      calls.incrementAndGet();
+                      throw new SocketTimeoutException("read timed out");
+                    }))
+        .isInstanceOf(SocketTimeoutException.class);
+    assertThat(calls.get()).isEqualTo(4);
+    assertThat(sleeps).hasSize(3);
+    // 100, 200, 400 ms with +/- 50% jitter
+    assertThat(sleeps.get(0)).isBetween(50L, 150L);
+    assertThat(sleeps.get(2)).isBetween(200L, 600L);
+  }
+
+  @Test
+  void shouldNotRetryClientErrors() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(
+            () ->
+                retryPolicy.execute(
+                    "delete file",
+                    true,
+                    () -> {
+                      calls.incrementAndGet();
+                      throw httpError(404, null);
+                    }))
+        .isInstanceOf(HttpResponseException.class);
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  private static IOException httpError(int status, String retryAfter) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setRetryAfter(retryAfter);
+    return new HttpResponseException.Builder(status, "error", headers).build();
+  }
+}
@@ -0,0 +1,212 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ServiceAccountPoolTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private ServiceAccountPool.Member first;
+  private ServiceAccountPool.Member second;
+  private ServiceAccountPool pool;
+
+  @BeforeEach
+  void setUp() {
+    first = new ServiceAccountPool.Member("first@project.iam.gserviceaccount.com");
+    second = new ServiceAccountPool.Member("second@project.iam.gserviceaccount.com");
+    pool = new ServiceAccountPool(Arrays.asList(first, second), Duration.ofSeconds(30), now::get);
+  }
+
+  @AfterEach
+  void tearDown() {
+    ServiceAccountPool.clear();
+  }
+
+  private static Drive rateLimitedDrive(ServiceAccountPool.Member member, String retryAfter) {
+    return drive(
+        member,
+        new MockLowLevelHttpResponse()
+            .setStatusCode(429)
+            .addHeader("Retry-After", retryAfter)
+            .setContentType("application/json")
+            .setContent("{\"error\":{\"code\":429,\"message\":\"User rate limit exceeded\"}}"));
+  }
+
+  private static Drive forbiddenDrive(ServiceAccountPool.Member member, String reason) {
+    return drive(
+        member,
+        new MockLowLevelHttpResponse()
+            .setStatusCode(403)
+            .setContentType("application/json")
+            .setContent(
+                "{\"error\":{\"code\":403,\"errors\":[{\"reason\":\""
+                    + reason
+                    + "\"}],\"message\":\"Forbidden\"}}"));
+  }
+
+  private static Drive drive(ServiceAccountPool.Member member, MockLowLevelHttpResponse response) {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() {
+                return response;
+              }
+            };
+          }
+        };
+    return new Drive.Builder(
+            transport, GsonFactory.getDefaultInstance(), member.observing(request -> {}))
+        .setApplicationName("test")
+        .build();
+  }
+
+  @Test
+  void shouldPickAccountsInTurn() {
+    assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(first);
+    assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(second);
+    assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(first);
+  }
+
+  @Test
+  void shouldPickLeastLoadedAccount() throws Exception {
+    ServiceAccountPool.Lease lease = pool.acquire(ServiceAccountPool.Selection.LEAST_LOADED);
+    assertThat(lease.getClientEmail()).isEqualTo(first.getClientEmail());
+
+    // the round robin turn points at the first account again, which is still leased
+    pool.select(ServiceAccountPool.Selection.ROUND_ROBIN);
+    assertThat(pool.acquire(ServiceAccountPool.Selection.LEAST_LOADED).getClientEmail())
+        .isEqualTo(second.getClientEmail());
+    assertThat(first.getLeases()).isEqualTo(1);
+    assertThat(second.getLeases()).isEqualTo(1);
+
+    lease.close();
+    lease.close();
+    assertThat(first.getLeases()).isZero();
+  }
+
+  @Test
+  void shouldLeaveRateLimitedAccountOutUntilCooldownEnds() {
+    Drive drive = rateLimitedDrive(first, "60");
+
+    assertThatThrownBy(() -> drive.files().get("fileId").execute())
+        .isInstanceOf(GoogleJsonResponseException.class);
+
+    assertThat(first.getRateLimitedCount()).isEqualTo(1);
+    assertThat(first.isCoolingDown()).isTrue();
+    for (int i = 0; i < 4; i++) {
+      assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(second);
+      assertThat(pool.select(ServiceAccountPool.Selection.LEAST_LOADED)).isSameAs(second);
+    }
+
+    // Retry-After is longer than the cooldown of the pool
+    now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+    assertThat(first.isCoolingDown()).isTrue();
+    now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+    assertThat(first.isCoolingDown()).isFalse();
+    assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(first);
+  }
+
+  @Test
+  void shouldLeaveAccountOutOnUserRateLimitForbiddenError() {
+    Drive drive = forbiddenDrive(first, "userRateLimitExceeded");
+
+    assertThatThrownBy(() -> drive.files().get("fileId").execute())
+        .isInstanceOfSatisfying(
+            GoogleJsonResponseException.class,
+            // the body peeked by the pool is still parsed into the error
+            e ->
+                assertThat(e.getDetails().getErrors().get(0).getReason())
+                    .isEqualTo("userRateLimitExceeded"));
+
+    assertThat(first.getRateLimitedCount()).isEqualTo(1);
+    assertThat(first.isCoolingDown()).isTrue();
+  }
+
+  @Test
+  void shouldKeepAccountOnOtherForbiddenError() {
+    Drive drive = forbiddenDrive(first, "insufficientFilePermissions");
+
+    assertThatThrownBy(() -> drive.files().get("fileId").execute())
+        .isInstanceOf(GoogleJsonResponseException.class);
+
+    assertThat(first.getRateLimitedCount()).isZero();
+    assertThat(first.isCoolingDown()).isFalse();
+  }
+
+  @Test
+  void shouldPickAccountBackTheSoonestWhenAllAreRateLimited() {
+    second.onRateLimited("120");
+    first.onRateLimited(null);
+
+    assertThat(pool.select(ServiceAccountPool.Selection.LEAST_LOADED)).isSameAs(first);
+    assertThat(pool.select(ServiceAccountPool.Selection.ROUND_ROBIN)).isSameAs(first);
+  }
+
+  @Test
+  void shouldEvictPoolLeftUnusedLongerThanIdleTimeout() throws Exception {
+    ServiceAccountPool.register("pool", "keys", pool);
+    ServiceAccountPool.Lease lease = pool.acquire(ServiceAccountPool.Selection.LEAST_LOADED);
+
+    // a leased account keeps the pool
+    now.addAndGet(TimeUnit.MINUTES.toNanos(31));
+    ServiceAccountPool.evictIdle(Duration.ofMinutes(30));
+    assertThat(ServiceAccountPool.size()).isEqualTo(1);
+
+    lease.close();
+    now.addAndGet(TimeUnit.MINUTES.toNanos(29));
+    ServiceAccountPool.evictIdle(Duration.ofMinutes(30));
+    assertThat(ServiceAccountPool.size()).isEqualTo(1);
+
+    now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+    ServiceAccountPool.evictIdle(Duration.ofMinutes(30));
+    assertThat(ServiceAccountPool.size()).isZero();
+  }
+
+  @Test
+  void shouldEvictPoolBuiltWithPreviousKeysOfAnAccount() {
+    ServiceAccountPool.register("pool", "keys", pool);
+    ServiceAccountPool other =
+        new ServiceAccountPool(
+            Arrays.asList(new ServiceAccountPool.Member("other@project.iam.gserviceaccount.com")),
+            Duration.ofSeconds(30),
+            now::get);
+    ServiceAccountPool.register("other", "other keys", other);
+    assertThat(ServiceAccountPool.size()).isEqualTo(2);
+
+    ServiceAccountPool rotated =
+        new ServiceAccountPool(
+            Arrays.asList(new ServiceAccountPool.Member(first.getClientEmail())),
+            Duration.ofSeconds(30),
+            now::get);
+    ServiceAccountPool.register("rotated", "rotated keys", rotated);
+
+    // the pool of the other account is kept
+    assertThat(ServiceAccountPool.size()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldTellPoolFromSingleAccountCredentials() {
+    assertThat(ServiceAccountPool.isPool(" [{\"type\":\"service_account\"}]")).isTrue();
+    assertThat(ServiceAccountPool.isPool("{\"type\":\"service_account\"}")).isFalse();
+    assertThat(ServiceAccountPool.isPool(null)).isFalse();
+  }
+}
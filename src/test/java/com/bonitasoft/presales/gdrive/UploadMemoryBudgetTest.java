@@ -0,0 +1,168 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class UploadMemoryBudgetTest {
+
+  @Test
+  void shouldHoldBytesUntilLeaseIsClosed() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(100, Duration.ofSeconds(1));
+
+    try (UploadMemoryBudget.Lease lease = budget.load(() -> new byte[40])) {
+      assertThat(lease.getContent()).hasSize(40);
+      assertThat(budget.getBytesInFlight()).isEqualTo(40);
+      assertThat(budget.getUtilization()).isEqualTo(0.4);
+    }
+
+    assertThat(budget.getBytesInFlight()).isZero();
+    assertThat(budget.getWaitCount()).isZero();
+  }
+
+  @Test
+  void shouldWaitForRunningUploadsOnceBudgetIsUsed() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(100, Duration.ofSeconds(10));
+    // a single document larger than the budget is let through
+    UploadMemoryBudget.Lease first = budget.load(() -> new byte[150]);
+    AtomicBoolean loaded = new AtomicBoolean();
+
+    CompletableFuture<UploadMemoryBudget.Lease> second =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return budget.load(
+                    () -> {
+                      loaded.set(true);
+                      return new byte[10];
+                    });
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    await().atMost(Duration.ofSeconds(5)).until(() -> budget.getWaitCount() == 1);
+    assertThat(loaded).isFalse();
+    first.close();
+
+    second.get(5, TimeUnit.SECONDS).close();
+    assertThat(loaded).isTrue();
+    assertThat(budget.getBytesInFlight()).isZero();
+  }
+
+  @Test
+  void shouldLoadConcurrentlyWhileUnderBudget() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(100, Duration.ofSeconds(10));
+    // the next loads reserve the size of this one
+    budget.load(() -> new byte[10]).close();
+    CountDownLatch bothLoading = new CountDownLatch(2);
+    UploadMemoryBudget.ContentLoader<InterruptedException> loader =
+        () -> {
+          bothLoading.countDown();
+          // only returns when the other load has started too
+          assertThat(bothLoading.await(5, TimeUnit.SECONDS)).isTrue();
+          return new byte[80];
+        };
+
+    CompletableFuture<UploadMemoryBudget.Lease> first = loadAsync(budget, loader);
+    CompletableFuture<UploadMemoryBudget.Lease> second = loadAsync(budget, loader);
+
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    // exceeded by the contents larger than estimated
+    assertThat(budget.getBytesInFlight()).isEqualTo(160);
+    assertThat(budget.getWaitCount()).isZero();
+  }
+
+  @Test
+  void shouldReserveBudgetForLoadsOfConcurrentConnectors() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(100, Duration.ofSeconds(10));
+    AtomicInteger loading = new AtomicInteger();
+    AtomicInteger maxLoading = new AtomicInteger();
+    AtomicLong maxInFlight = new AtomicLong();
+    UploadMemoryBudget.ContentLoader<InterruptedException> loader =
+        () -> {
+          maxLoading.accumulateAndGet(loading.incrementAndGet(), Math::max);
+          Thread.sleep(20);
+          loading.decrementAndGet();
+          return new byte[40];
+        };
+
+    // a burst of connectors starting with nothing held
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<CompletableFuture<Void>> connectors = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      connectors.add(
+          CompletableFuture.runAsync(
+              () -> {
+                try (UploadMemoryBudget.Lease lease = budget.load(loader)) {
+                  maxInFlight.accumulateAndGet(budget.getBytesInFlight(), Math::max);
+                  Thread.sleep(20);
+                } catch (IOException | InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+              },
+              executor));
+    }
+    try {
+      CompletableFuture.allOf(connectors.toArray(new CompletableFuture[0]))
+          .get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+
+    // the first load reserves the whole budget, the next ones 40 bytes each
+    assertThat(maxLoading.get()).isLessThanOrEqualTo(2);
+    assertThat(maxInFlight.get()).isLessThanOrEqualTo(100);
+    assertThat(budget.getBytesInFlight()).isZero();
+  }
+
+  private static CompletableFuture<UploadMemoryBudget.Lease> loadAsync(
+      UploadMemoryBudget budget, UploadMemoryBudget.ContentLoader<InterruptedException> loader) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return budget.load(loader);
+          } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+  }
+
+  @Test
+  void shouldFailWhenBudgetIsNotReleasedInTime() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(100, Duration.ofMillis(50));
+    UploadMemoryBudget.Lease held = budget.load(() -> new byte[100]);
+
+    assertThatThrownBy(() -> budget.load(() -> new byte[1]))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("memory budget");
+    held.close();
+    held.close();
+    assertThat(budget.getBytesInFlight()).isZero();
+  }
+
+  @Test
+  void shouldNotWaitWhenDisabled() throws Exception {
+    UploadMemoryBudget budget = new UploadMemoryBudget(0, Duration.ZERO);
+
+    budget.load(() -> new byte[1_000]);
+    budget.load(() -> new byte[1_000]);
+
+    assertThat(budget.getBytesInFlight()).isEqualTo(2_000);
+    assertThat(budget.getUtilization()).isZero();
+  }
+}
@@ -0,0 +1,290 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UploadOutboxTest {
+
+  private static final String CREDENTIALS = "{\"private_key\":\"secret\"}";
+
+  @TempDir Path directory;
+
+  private final AtomicInteger folderRequests = new AtomicInteger();
+  private final AtomicInteger uploadRequests = new AtomicInteger();
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+  /** Upload requests answered with a 503, by request number. */
+  private volatile int failingUpload = -1;
+
+  private Drive drive;
+  private GDriveUtils gDriveUtils;
+  private UploadOutbox outbox;
+
+  @BeforeEach
+  void setUp() {
+    MockHttpTransport transport =
+        new MockHttpTransport() {
+          @Override
+          public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+              @Override
+              public LowLevelHttpResponse execute() throws IOException {
+                requests.add(
+                    URLDecoder.decode(url, StandardCharsets.UTF_8) + " " + getContentAsString());
+                String content;
+                if (url.contains("/upload/")) {
+                  int request = uploadRequests.incrementAndGet();
+                  if (request == failingUpload || failingUpload == 0) {
+                    return new MockLowLevelHttpResponse()
+                        .setStatusCode(503)
+                        .setContentType("application/json")
+                        .setContent("{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}");
+                  }
+                  content =
+                      "{\"id\":\"file" + request + "\",\"webViewLink\":\"link" + request + "\"}";
+                } else {
+                  folderRequests.incrementAndGet();
+                  content = "{\"id\":\"folderId\"}";
+                }
+                return new MockLowLevelHttpResponse()
+                    .setContentType("application/json")
+                    .setContent(content);
+              }
+            };
+          }
+        };
+    drive =
+        new Drive.Builder(transport, GsonFactory.getDefaultInstance(), null)
+            .setApplicationName("test")
+            .build();
+    gDriveUtils = new GDriveUtils();
+    gDriveUtils.setRetryPolicy(new RetryPolicy(1, 0, 0));
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    if (outbox != null) {
+      outbox.shutdown();
+    }
+  }
+
+  private UploadOutbox newOutbox(int maxAttempts, UploadOutbox.DriveProvider driveProvider) {
+    return new UploadOutbox(
+        directory,
+        2,
+        maxAttempts,
+        Duration.ofMillis(10),
+        Duration.ofHours(1),
+        driveProvider,
+        gDriveUtils);
+  }
+
+  private String submit(UploadOutbox outbox, int documentCount) throws Exception {
+    UploadOutbox.Submission submission =
+        outbox.prepare(new OutboxJob("driveId", null, true, "folder"), CREDENTIALS);
+    for (int i = 0; i < documentCount; i++) {
+      submission.addDocument(
+          "document" + i,
+          "file" + i + ".txt",
+          "text/plain",
+          ("content" + i).getBytes(StandardCharsets.UTF_8),
+          null);
+    }
+    return submission.submit();
+  }
+
+  @Test
+  void shouldUploadDocumentsInBackground() throws Exception {
+    outbox = newOutbox(3, credentials -> drive);
+
+    String jobId = submit(outbox, 2);
+    OutboxJob job = outbox.await(jobId, Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.DONE);
+    assertThat(job.getFolderId()).isEqualTo("folderId");
+    assertThat(job.getItems())
+        .extracting(OutboxJob.Item::getDocumentName, OutboxJob.Item::getFileId)
+        .containsExactly(tuple("document0", "file1"), tuple("document1", "file2"));
+    try (Stream<Path> files = Files.list(directory.resolve(jobId))) {
+      assertThat(files).extracting(path -> path.getFileName().toString()).containsOnly("job.json");
+    }
+    assertThat(directory.resolve(jobId).resolve("job.json")).content().doesNotContain("secret");
+  }
+
+  @Test
+  void shouldCreateFilesWithFieldsAndAppPropertiesOfJob() throws Exception {
+    outbox = newOutbox(1, credentials -> drive);
+    OutboxJob job = new OutboxJob("driveId", null, true, "folder");
+    job.setFileFields("id, name");
+    job.setFolderAppProperties(Collections.singletonMap("bonitaFolder", "true"));
+    UploadOutbox.Submission submission = outbox.prepare(job, CREDENTIALS);
+    submission.addDocument(
+        "document",
+        "file.txt",
+        "text/plain",
+        "content".getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap("bonitaDocumentName", "document"));
+
+    job = outbox.await(submission.submit(), Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.DONE);
+    assertThat(job.getFileFields()).isEqualTo("id, name");
+    assertThat(job.getItems().get(0).getFile().getId()).isEqualTo("file1");
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(0)).contains("\"bonitaFolder\":\"true\"");
+    assertThat(requests.get(1)).contains("fields=id, name", "\"bonitaDocumentName\":\"document\"");
+  }
+
+  @Test
+  void shouldResumeAfterLastUploadedFileWhenRetried() throws Exception {
+    failingUpload = 2;
+    outbox = newOutbox(3, credentials -> drive);
+
+    OutboxJob job = outbox.await(submit(outbox, 2), Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.DONE);
+    assertThat(job.getAttempts()).isEqualTo(2);
+    assertThat(job.getItems())
+        .extracting(OutboxJob.Item::getFileId)
+        .containsExactly("file1", "file3");
+    assertThat(folderRequests).hasValue(1);
+    assertThat(uploadRequests).hasValue(3);
+  }
+
+  @Test
+  void shouldFailJobAfterMaxAttempts() throws Exception {
+    failingUpload = 0;
+    outbox = newOutbox(2, credentials -> drive);
+
+    OutboxJob job = outbox.await(submit(outbox, 1), Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.FAILED);
+    assertThat(job.getAttempts()).isEqualTo(2);
+    assertThat(job.getError()).contains("503");
+  }
+
+  @Test
+  void shouldReturnPendingJobWhenWaitTimesOut() throws Exception {
+    outbox =
+        newOutbox(
+            1,
+            credentials -> {
+              try {
+                Thread.sleep(2_000);
+              } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+              }
+              return drive;
+            });
+
+    OutboxJob job = outbox.await(submit(outbox, 1), Duration.ofMillis(100));
+
+    assertThat(job.isFinished()).isFalse();
+  }
+
+  @Test
+  void shouldNeverWriteCredentialsToDisk() throws Exception {
+    outbox =
+        newOutbox(
+            1,
+            credentials -> {
+              throw new IOException("offline");
+            });
+
+    OutboxJob job = outbox.await(submit(outbox, 1), Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.FAILED);
+    try (Stream<Path> files = Files.walk(directory)) {
+      assertThat(files.filter(Files::isRegularFile))
+          .allSatisfy(file -> assertThat(file).content().doesNotContain("secret"));
+    }
+  }
+
+  @Test
+  void shouldRequireOutboxDirectory() {
+    System.clearProperty(UploadOutbox.DIRECTORY_PROPERTY);
+
+    assertThatThrownBy(UploadOutbox::getInstance)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining(UploadOutbox.DIRECTORY_PROPERTY);
+  }
+
+  @Test
+  void shouldRecoverUnfinishedJobsOnStart() throws Exception {
+    UploadOutbox stopped =
+        new UploadOutbox(
+            directory,
+            1,
+            10,
+            Duration.ofHours(1),
+            Duration.ofHours(1),
+            credentials -> {
+              throw new IOException("offline");
+            },
+            gDriveUtils);
+    String jobId = submit(stopped, 1);
+    await()
+        .atMost(Duration.ofSeconds(10))
+        .until(
+            () ->
+                stopped.getJob(jobId).getState() == OutboxJob.State.PENDING
+                    && stopped.getJob(jobId).getAttempts() == 1);
+    stopped.shutdown();
+
+    outbox = newOutbox(3, credentials -> drive);
+    // the credentials were only held by the stopped outbox
+    assertThat(outbox.await(jobId, Duration.ofMillis(200)).getState())
+        .isEqualTo(OutboxJob.State.PENDING);
+    outbox.registerCredentials(CREDENTIALS);
+    OutboxJob job = outbox.await(jobId, Duration.ofSeconds(10));
+
+    assertThat(job.getState()).isEqualTo(OutboxJob.State.DONE);
+    assertThat(job.getAttempts()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldPurgeFinishedJobsAfterRetention() throws Exception {
+    outbox =
+        new UploadOutbox(
+            directory, 1, 1, Duration.ZERO, Duration.ZERO, credentials -> drive, gDriveUtils);
+    String jobId = submit(outbox, 1);
+    outbox.await(jobId, Duration.ofSeconds(10));
+    Thread.sleep(5);
+
+    outbox.purge();
+
+    assertThat(directory.resolve(jobId)).doesNotExist();
+  }
+
+  @Test
+  void shouldRejectJobIdOutsideOfOutbox() {
+    outbox = newOutbox(1, credentials -> drive);
+
+    assertThatThrownBy(() -> outbox.getJob("../job")).isInstanceOf(IllegalArgumentException.class);
+  }
+}
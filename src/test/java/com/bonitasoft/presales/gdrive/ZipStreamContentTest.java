@@ -0,0 +1,103 @@
+package com.bonitasoft.presales.gdrive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+
+class ZipStreamContentTest {
+
+  @Test
+  void shouldZipEntriesWhileReading() throws Exception {
+    ZipStreamContent content =
+        new ZipStreamContent(Deflater.BEST_COMPRESSION)
+            .addEntry("a.txt", () -> stream("first"))
+            .addEntry("a.txt", () -> stream("second"))
+            .addEntry("b", () -> stream("third"));
+
+    Map<String, String> entries = unzip(content.getInputStream());
+
+    assertThat(entries)
+        .containsExactly(
+            Map.entry("a.txt", "first"), Map.entry("a (2).txt", "second"), Map.entry("b", "third"));
+    assertThat(content.getLength()).isEqualTo(-1);
+    assertThat(content.retrySupported()).isFalse();
+  }
+
+  @Test
+  void shouldFailReadingWhenEntryCannotBeOpened() {
+    ZipStreamContent content =
+        new ZipStreamContent(Deflater.NO_COMPRESSION)
+            .addEntry("a.txt", () -> stream("first"))
+            .addEntry(
+                "b.txt",
+                () -> {
+                  throw new IOException("document not found");
+                });
+
+    assertThatThrownBy(() -> unzip(content.getInputStream()))
+        .isInstanceOf(IOException.class)
+        .hasRootCauseMessage("document not found");
+  }
+
+  @Test
+  void shouldStopWriterWhenClosedBeforeEndOfArchive() throws Exception {
+    AtomicBoolean entryClosed = new AtomicBoolean();
+    // larger than the pipe buffer, so that the writer blocks once the upload stops reading
+    byte[] large = new byte[4 * ZipStreamContent.PIPE_BUFFER_SIZE];
+    ZipStreamContent content =
+        new ZipStreamContent(Deflater.NO_COMPRESSION)
+            .addEntry(
+                "large.bin",
+                () ->
+                    new ByteArrayInputStream(large) {
+                      @Override
+                      public void close() {
+                        entryClosed.set(true);
+                      }
+                    });
+    InputStream stream = content.getInputStream();
+    assertThat(stream.read(new byte[1024])).isPositive();
+
+    // the upload failed midway without closing the stream
+    content.close();
+
+    await().atMost(Duration.ofSeconds(5)).untilTrue(entryClosed);
+  }
+
+  @Test
+  void shouldRejectInvalidCompressionLevel() {
+    assertThatThrownBy(() -> new ZipStreamContent(10)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Map<String, String> unzip(InputStream in) throws IOException {
+    Map<String, String> entries = new LinkedHashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(in)) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+      }
+      // drain the central directory so that a late failure is reported
+      zip.transferTo(OutputStream.nullOutputStream());
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return entries;
+  }
+}